@@ -0,0 +1,197 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker;
+
+import com.netifi.broker.loadbalancer.LoadBalancer;
+import com.netifi.broker.loadbalancer.LoadBalancers;
+import com.netifi.broker.rsocket.WeightedRSocket;
+import io.rsocket.AbstractRSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the connection selection path with an increasing number of caller threads. The snapshot
+ * based selection should scale linearly, while the monitor based baseline (the previous
+ * implementation) flattens out as soon as callers start to contend.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(
+    value = 1 // , jvmArgsAppend = {"-Dio.netty.leakDetection.level=advanced"}
+    )
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+public class SelectRSocketPerf {
+
+  @Benchmark
+  @Threads(1)
+  public WeightedRSocket snapshot1(Pool pool) {
+    return pool.selectSnapshot();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public WeightedRSocket snapshot4(Pool pool) {
+    return pool.selectSnapshot();
+  }
+
+  @Benchmark
+  @Threads(16)
+  public WeightedRSocket snapshot16(Pool pool) {
+    return pool.selectSnapshot();
+  }
+
+  @Benchmark
+  @Threads(32)
+  public WeightedRSocket snapshot32(Pool pool) {
+    return pool.selectSnapshot();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public WeightedRSocket locked1(Pool pool) {
+    return pool.selectLocked();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public WeightedRSocket locked4(Pool pool) {
+    return pool.selectLocked();
+  }
+
+  @Benchmark
+  @Threads(16)
+  public WeightedRSocket locked16(Pool pool) {
+    return pool.selectLocked();
+  }
+
+  @Benchmark
+  @Threads(32)
+  public WeightedRSocket locked32(Pool pool) {
+    return pool.selectLocked();
+  }
+
+  @State(Scope.Benchmark)
+  public static class Pool {
+    @Param({"8", "64"})
+    public int poolSize;
+
+    LoadBalancer loadBalancer = LoadBalancers.weighted();
+    volatile WeightedRSocket[] snapshot;
+    List<WeightedRSocket> members;
+    int missed;
+
+    @Setup
+    public void setup() {
+      WeightedRSocket[] sockets = new WeightedRSocket[poolSize];
+      for (int i = 0; i < poolSize; i++) {
+        sockets[i] = new StaticWeightedRSocket(i % 4, 100.0 + i);
+      }
+      snapshot = sockets;
+      members = Collections.synchronizedList(new ArrayList<>(Arrays.asList(sockets)));
+    }
+
+    WeightedRSocket selectSnapshot() {
+      return loadBalancer.select(snapshot);
+    }
+
+    // mirrors the previous selection path: read the pool and the change counter under the monitor,
+    // select, and confirm nothing changed under the monitor again. Copying the synchronized list
+    // stands in for the per-element synchronized reads the old code did.
+    WeightedRSocket selectLocked() {
+      WeightedRSocket rSocket;
+      int r;
+      for (; ; ) {
+        WeightedRSocket[] _m;
+        synchronized (this) {
+          r = missed;
+          _m = members.toArray(new WeightedRSocket[0]);
+        }
+
+        rSocket = loadBalancer.select(_m);
+
+        synchronized (this) {
+          if (r == missed) {
+            break;
+          }
+        }
+      }
+      return rSocket;
+    }
+  }
+
+  public static class StaticWeightedRSocket extends AbstractRSocket implements WeightedRSocket {
+    private final int pending;
+    private final double latency;
+
+    public StaticWeightedRSocket(int pending, double latency) {
+      this.pending = pending;
+      this.latency = latency;
+    }
+
+    @Override
+    public double medianLatency() {
+      return latency;
+    }
+
+    @Override
+    public double lowerQuantileLatency() {
+      return 100.0;
+    }
+
+    @Override
+    public double higherQuantileLatency() {
+      return 120.0;
+    }
+
+    @Override
+    public double peakLatency() {
+      return latency;
+    }
+
+    @Override
+    public double interArrivalTime() {
+      return 1.0;
+    }
+
+    @Override
+    public int pending() {
+      return pending;
+    }
+
+    @Override
+    public long lastTimeUsedMillis() {
+      return 0;
+    }
+
+    @Override
+    public double predictedLatency() {
+      return latency;
+    }
+
+    @Override
+    public double errorPercentage() {
+      return 1.0;
+    }
+
+    @Override
+    public double availability() {
+      return 1.0;
+    }
+  }
+}
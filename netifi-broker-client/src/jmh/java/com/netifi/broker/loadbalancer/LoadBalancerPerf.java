@@ -0,0 +1,56 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.loadbalancer;
+
+import com.netifi.broker.SelectRSocketPerf.StaticWeightedRSocket;
+import com.netifi.broker.rsocket.WeightedRSocket;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.Throughput)
+@Fork(
+    value = 1 // , jvmArgsAppend = {"-Dio.netty.leakDetection.level=advanced"}
+    )
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@Threads(4)
+public class LoadBalancerPerf {
+
+  @Benchmark
+  public WeightedRSocket select(Input input) {
+    return input.loadBalancer.select(input.members);
+  }
+
+  @State(Scope.Benchmark)
+  public static class Input {
+    @Param({"weighted", "leastPending", "roundRobin", "peakEwma"})
+    public String strategy;
+
+    @Param({"8", "64"})
+    public int poolSize;
+
+    LoadBalancer loadBalancer;
+    WeightedRSocket[] members;
+
+    @Setup
+    public void setup() {
+      loadBalancer = LoadBalancers.fromName(strategy);
+      members = new WeightedRSocket[poolSize];
+      for (int i = 0; i < poolSize; i++) {
+        members[i] = new StaticWeightedRSocket(i % 4, 100.0 + i);
+      }
+    }
+  }
+}
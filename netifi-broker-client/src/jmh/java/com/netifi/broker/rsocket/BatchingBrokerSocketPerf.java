@@ -0,0 +1,129 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.rsocket;
+
+import com.netifi.broker.frames.GroupFlyweight;
+import com.netifi.common.tags.Tags;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.rsocket.AbstractRSocket;
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import io.rsocket.RSocketFactory;
+import io.rsocket.transport.netty.client.TcpClientTransport;
+import io.rsocket.transport.netty.server.CloseableChannel;
+import io.rsocket.transport.netty.server.TcpServerTransport;
+import io.rsocket.util.ByteBufPayload;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.openjdk.jmh.annotations.*;
+import reactor.core.publisher.Mono;
+
+/**
+ * End to end throughput of small fire and forget messages over a loopback TCP connection, sent one
+ * frame per message or in batches. Every invocation sends {@code MESSAGES} messages of {@code
+ * messageSize} bytes along a group route and waits until the receiving side unwrapped all of them.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(
+    value = 1 // , jvmArgsAppend = {"-Dio.netty.leakDetection.level=advanced"}
+    )
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@State(Scope.Benchmark)
+public class BatchingBrokerSocketPerf {
+  static final int MESSAGES = 1000;
+
+  @Param({"16", "256"})
+  public int messageSize;
+
+  final AtomicLong received = new AtomicLong();
+  CloseableChannel server;
+  RSocket client;
+  BrokerSocket unbatched;
+  BrokerSocket batched;
+  byte[] message;
+  long sent;
+
+  @Setup
+  public void setup() {
+    RSocket handler =
+        new AbstractRSocket() {
+          @Override
+          public Mono<Void> fireAndForget(Payload payload) {
+            payload.release();
+            received.incrementAndGet();
+            return Mono.empty();
+          }
+        };
+    server =
+        RSocketFactory.receive()
+            .acceptor((setup, sendingSocket) -> Mono.just(new UnwrappingRSocket(handler)))
+            .transport(TcpServerTransport.create("localhost", 0))
+            .start()
+            .block();
+    client =
+        RSocketFactory.connect()
+            .transport(TcpClientTransport.create(server.address()))
+            .start()
+            .block();
+
+    ByteBuf route = GroupFlyweight.encodeRoute("group", Tags.empty());
+    unbatched =
+        new DefaultBrokerSocket(
+            payload -> {
+              ByteBuf data = payload.sliceData().retain();
+              ByteBuf metadata =
+                  GroupFlyweight.encode(ByteBufAllocator.DEFAULT, route, payload.sliceMetadata());
+              payload.release();
+              return ByteBufPayload.create(data, metadata);
+            },
+            () -> client);
+    batched =
+        new BatchingBrokerSocket(unbatched, route, () -> client, 128, Duration.ofMillis(1));
+    message = new byte[messageSize];
+  }
+
+  @TearDown
+  public void teardown() {
+    client.dispose();
+    server.dispose();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(MESSAGES)
+  public long unbatched() {
+    return send(unbatched);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(MESSAGES)
+  public long batched() {
+    return send(batched);
+  }
+
+  private long send(BrokerSocket socket) {
+    for (int i = 0; i < MESSAGES; i++) {
+      socket.fireAndForget(ByteBufPayload.create(message)).subscribe();
+    }
+    sent += MESSAGES;
+    while (received.get() < sent) {
+      LockSupport.parkNanos(1_000);
+    }
+    return sent;
+  }
+}
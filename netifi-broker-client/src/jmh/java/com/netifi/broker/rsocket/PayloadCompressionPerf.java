@@ -0,0 +1,95 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.rsocket;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * CPU cost of compressing and decompressing payload data of various sizes. The data is a JSON like
+ * document of repeated field names with random values, the {@code Ratio} state reports the bytes
+ * saved per compressed payload as the {@code savedBytes} counter.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(
+    value = 1 // , jvmArgsAppend = {"-Dio.netty.leakDetection.level=advanced"}
+    )
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@State(Scope.Thread)
+public class PayloadCompressionPerf {
+  static final ByteBufAllocator ALLOCATOR = new UnpooledByteBufAllocator(false);
+
+  @Param({"1024", "16384", "131072", "262144"})
+  public int payloadSize;
+
+  ByteBuf data;
+  ByteBuf compressed;
+
+  @Setup
+  public void setup() {
+    StringBuilder document = new StringBuilder("[");
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    while (document.length() < payloadSize) {
+      document
+          .append("{\"id\":")
+          .append(random.nextLong())
+          .append(",\"name\":\"user-")
+          .append(random.nextInt(1000))
+          .append("\",\"region\":\"us-east-")
+          .append(random.nextInt(4))
+          .append("\",\"score\":")
+          .append(random.nextDouble())
+          .append("},");
+    }
+    byte[] bytes = document.toString().getBytes(StandardCharsets.UTF_8);
+    data = Unpooled.wrappedBuffer(bytes, 0, payloadSize);
+    compressed = PayloadCompression.compress(ALLOCATOR, data);
+  }
+
+  @Benchmark
+  public int compress(Ratio ratio) {
+    ByteBuf byteBuf = PayloadCompression.compress(ALLOCATOR, data);
+    int length = byteBuf.readableBytes();
+    ratio.savedBytes += payloadSize - length;
+    byteBuf.release();
+    return length;
+  }
+
+  @Benchmark
+  public int decompress() {
+    ByteBuf byteBuf = PayloadCompression.decompress(ALLOCATOR, compressed);
+    int length = byteBuf.readableBytes();
+    byteBuf.release();
+    return length;
+  }
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Ratio {
+    public long savedBytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      savedBytes = 0;
+    }
+  }
+}
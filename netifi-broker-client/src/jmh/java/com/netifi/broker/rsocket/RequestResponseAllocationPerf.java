@@ -0,0 +1,133 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.rsocket;
+
+import com.netifi.common.stats.LatencySketch;
+import io.netty.buffer.Unpooled;
+import io.rsocket.AbstractRSocket;
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import io.rsocket.util.EmptyPayload;
+import org.openjdk.jmh.annotations.*;
+import org.reactivestreams.Subscription;
+import reactor.core.CoreSubscriber;
+import reactor.core.publisher.Mono;
+
+/**
+ * Per-request overhead of a request-response on a connected pool member. Run it with the gc
+ * profiler (the default of the jmh task) and compare gc.alloc.rate.norm: the fast path goes to the
+ * live connection through a single accounting operator, the baseline waits on the connection sink
+ * with a flatMap and peeks at the cancel and the outcome as the previous implementation did.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(
+    value = 1 // , jvmArgsAppend = {"-Dio.netty.leakDetection.level=advanced"}
+    )
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+public class RequestResponseAllocationPerf {
+
+  @Benchmark
+  public Object fastPath(Input input) {
+    input.socket.requestResponse(EmptyPayload.INSTANCE).subscribe(input.subscriber);
+    return input.subscriber.value;
+  }
+
+  @Benchmark
+  public Object flatMapBaseline(Input input) {
+    WeightedReconnectingRSocket socket = input.socket;
+    socket
+        .getRSocket()
+        .flatMap(
+            source -> {
+              long start = socket.start();
+              return source
+                  .requestResponse(EmptyPayload.INSTANCE)
+                  .doOnCancel(() -> socket.stop(start))
+                  .doOnSuccessOrError(
+                      (p, t) -> {
+                        long now = socket.stop(start);
+                        socket.record(now - start);
+                        socket.recordError(t == null ? 1.0 : 0.0);
+                      });
+            })
+        .subscribe(input.subscriber);
+    return input.subscriber.value;
+  }
+
+  @State(Scope.Thread)
+  public static class Input {
+    WeightedReconnectingRSocket socket;
+    LastValueSubscriber subscriber = new LastValueSubscriber();
+
+    @Setup
+    public void setup() {
+      socket =
+          new WeightedReconnectingRSocket(
+              null,
+              () -> null,
+              () -> true,
+              () -> null,
+              false,
+              0,
+              0,
+              0,
+              0,
+              Unpooled.EMPTY_BUFFER,
+              null,
+              null,
+              new LatencySketch(),
+              0.5,
+              0.8,
+              500);
+      socket.resetMono();
+      socket.setRSocket(new ConstantRSocket());
+    }
+  }
+
+  /** Answers every request with the same pre-built response, so only the client path allocates. */
+  static class ConstantRSocket extends AbstractRSocket {
+    private final Mono<Payload> response = Mono.just(EmptyPayload.INSTANCE);
+
+    @Override
+    public Mono<Payload> requestResponse(Payload payload) {
+      return response;
+    }
+  }
+
+  /** Reusable subscriber, the responses complete synchronously. */
+  static class LastValueSubscriber implements CoreSubscriber<Payload> {
+    Object value;
+
+    @Override
+    public void onSubscribe(Subscription s) {
+      s.request(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void onNext(Payload payload) {
+      value = payload;
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      value = t;
+    }
+
+    @Override
+    public void onComplete() {}
+  }
+}
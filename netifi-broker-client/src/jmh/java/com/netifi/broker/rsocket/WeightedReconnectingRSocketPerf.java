@@ -0,0 +1,150 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.rsocket;
+
+import com.netifi.common.stats.Ewma;
+import com.netifi.common.stats.FrugalQuantile;
+import com.netifi.common.stats.LatencySketch;
+import com.netifi.common.stats.Median;
+import com.netifi.common.stats.Quantile;
+import io.netty.buffer.Unpooled;
+import io.rsocket.util.Clock;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Contention benchmark for the per-request accounting of a pool member: every invocation does the
+ * bookkeeping of one request-response (start, stop, record latency and outcome) and a selection
+ * read of the predicted latency, from 8 threads against the same connection.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(
+    value = 1 // , jvmArgsAppend = {"-Dio.netty.leakDetection.level=advanced"}
+    )
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@Threads(8)
+public class WeightedReconnectingRSocketPerf {
+
+  @Benchmark
+  public double lockFree(Input input) {
+    WeightedReconnectingRSocket socket = input.socket;
+    long start = socket.start();
+    long now = socket.stop(start);
+    socket.record(now - start);
+    socket.recordError(1.0);
+    return socket.predictedLatency();
+  }
+
+  @Benchmark
+  public double synchronizedBaseline(Input input) {
+    SynchronizedAccounting accounting = input.accounting;
+    long start = accounting.start();
+    long now = accounting.stop(start);
+    accounting.record(now - start);
+    accounting.recordError(1.0);
+    return accounting.predictedLatency();
+  }
+
+  @State(Scope.Benchmark)
+  public static class Input {
+    WeightedReconnectingRSocket socket;
+    SynchronizedAccounting accounting;
+
+    @Setup
+    public void setup() {
+      socket =
+          new WeightedReconnectingRSocket(
+              null,
+              () -> null,
+              () -> true,
+              () -> null,
+              false,
+              0,
+              0,
+              0,
+              0,
+              Unpooled.EMPTY_BUFFER,
+              null,
+              null,
+              new LatencySketch(),
+              0.5,
+              0.8,
+              500);
+      accounting = new SynchronizedAccounting();
+    }
+  }
+
+  /** The request accounting as it was before, with every method synchronized on the socket. */
+  static class SynchronizedAccounting {
+    private final Quantile lowerQuantile = new FrugalQuantile(0.5);
+    private final Quantile higherQuantile = new FrugalQuantile(0.8);
+    private final Median median = new Median();
+    private final Ewma interArrivalTime = new Ewma(1, TimeUnit.MINUTES, 1_000_000);
+    private final Ewma errorPercentage = new Ewma(5, TimeUnit.SECONDS, 1.0);
+    private int pending;
+    private long errorStamp;
+    private long stamp = Clock.now();
+    private long stamp0 = stamp;
+    private long duration;
+
+    synchronized double predictedLatency() {
+      long now = Clock.now();
+      long elapsed = Math.max(now - stamp, 1L);
+
+      double prediction = median.estimation();
+      if (prediction == 0.0) {
+        return pending == 0 ? 0.0 : Long.MAX_VALUE >> 12;
+      } else if (pending == 0 && elapsed > 500 * interArrivalTime.value()) {
+        median.insert(0.0);
+        return median.estimation();
+      } else {
+        double predicted = prediction * pending;
+        double instant = duration + (now - stamp0) * pending;
+        return predicted < instant ? instant / pending : prediction;
+      }
+    }
+
+    synchronized long start() {
+      long now = Clock.now();
+      interArrivalTime.insert(now - stamp);
+      duration += Math.max(0, now - stamp0) * pending;
+      pending += 1;
+      stamp = now;
+      stamp0 = now;
+      return now;
+    }
+
+    synchronized long stop(long timestamp) {
+      long now = Clock.now();
+      duration += Math.max(0, now - stamp0) * pending - (now - timestamp);
+      pending -= 1;
+      stamp0 = now;
+      return now;
+    }
+
+    synchronized void record(double roundTripTime) {
+      median.insert(roundTripTime);
+      lowerQuantile.insert(roundTripTime);
+      higherQuantile.insert(roundTripTime);
+    }
+
+    synchronized void recordError(double value) {
+      errorPercentage.insert(value);
+      errorStamp = Clock.now();
+    }
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker;
+
+import com.netifi.broker.rsocket.WeightedRSocket;
+
+/**
+ * Decides when the adaptive pool of a {@link DefaultBrokerService} grows or retires a connection.
+ * The pool grows while its connections carry more than {@link #HIGH_PENDING} pending requests each
+ * on average, or while every connection predicts a latency above its higher latency quantile, which
+ * is when requests start to queue. It retires one connection at a time that has been idle for the
+ * idle timeout and has no open streams, as long as the others would still carry less than {@link
+ * #LOW_PENDING} pending requests each.
+ */
+final class AdaptivePoolSize {
+  static final int HIGH_PENDING = 16;
+  static final int LOW_PENDING = 4;
+  static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60_000;
+
+  private final int minSize;
+  private final int maxSize;
+  private final long idleTimeoutMillis;
+
+  AdaptivePoolSize(int minSize, int maxSize, long idleTimeoutMillis) {
+    this.minSize = minSize;
+    this.maxSize = maxSize;
+    this.idleTimeoutMillis = idleTimeoutMillis;
+  }
+
+  int minSize() {
+    return minSize;
+  }
+
+  boolean shouldGrow(WeightedRSocket[] members) {
+    final int size = members.length;
+    if (size == 0 || size >= maxSize) {
+      return false;
+    }
+
+    long pending = 0;
+    boolean queueing = true;
+    for (WeightedRSocket member : members) {
+      pending += member.pending();
+      double higherQuantile = member.higherQuantileLatency();
+      if (higherQuantile <= 0.0 || member.predictedLatency() <= higherQuantile) {
+        queueing = false;
+      }
+    }
+
+    return queueing || pending > (long) HIGH_PENDING * size;
+  }
+
+  /**
+   * @param members the current members of the pool
+   * @param nowMillis the current time, in the clock of {@link WeightedRSocket#lastTimeUsedMillis()}
+   * @return the index of the member to retire, or -1 if the pool should keep all of them
+   */
+  int retirable(WeightedRSocket[] members, long nowMillis) {
+    final int size = members.length;
+    if (size <= minSize) {
+      return -1;
+    }
+
+    long pending = 0;
+    int idlest = -1;
+    long idlestLastUsed = Long.MAX_VALUE;
+    for (int i = 0; i < size; i++) {
+      WeightedRSocket member = members[i];
+      pending += member.pending();
+      long lastUsed = member.lastTimeUsedMillis();
+      if (member.pending() == 0
+          && member.activeStreams() == 0
+          && nowMillis - lastUsed > idleTimeoutMillis
+          && lastUsed < idlestLastUsed) {
+        idlest = i;
+        idlestLastUsed = lastUsed;
+      }
+    }
+
+    if (idlest < 0 || pending >= (long) LOW_PENDING * (size - 1)) {
+      return -1;
+    }
+    return idlest;
+  }
+}
@@ -17,10 +17,15 @@ package com.netifi.broker;
 
 import com.netifi.broker.discovery.DiscoveryStrategy;
 import com.netifi.broker.frames.DestinationSetupFlyweight;
+import com.netifi.broker.frames.FrameDictionary;
+import com.netifi.broker.frames.FrameHeaderFlyweight;
 import com.netifi.broker.info.Broker;
+import com.netifi.broker.loadbalancer.LoadBalancer;
+import com.netifi.broker.loadbalancer.OutlierEvent;
 import com.netifi.broker.rsocket.BrokerSocket;
 import com.netifi.broker.rsocket.NamedRSocketClientWrapper;
 import com.netifi.broker.rsocket.NamedRSocketServiceWrapper;
+import com.netifi.broker.rsocket.PayloadCompression;
 import com.netifi.broker.rsocket.transport.BrokerAddressSelectors;
 import com.netifi.common.tags.Tag;
 import com.netifi.common.tags.Tags;
@@ -44,6 +49,7 @@ import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.net.UnknownHostException;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
@@ -52,6 +58,7 @@ import java.util.function.Supplier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.publisher.MonoProcessor;
 import reactor.netty.tcp.TcpClient;
@@ -73,6 +80,7 @@ public class BrokerClient implements Closeable {
   private final String destination;
   private final Tags tags;
   private final BrokerService brokerService;
+  private final int readyConnections;
   private MonoProcessor<Void> onClose;
   private RequestHandlingRSocket requestHandlingRSocket;
 
@@ -84,6 +92,10 @@ public class BrokerClient implements Closeable {
       String group,
       String destination,
       short additionalFlags,
+      short frameMinorVersion,
+      boolean frameDictionary,
+      boolean compression,
+      int compressionThreshold,
       Tags tags,
       boolean keepalive,
       long tickPeriodSeconds,
@@ -95,6 +107,14 @@ public class BrokerClient implements Closeable {
       RequestHandlingRSocket responder,
       boolean responderRequiresUnwrapping,
       int poolSize,
+      int minPoolSize,
+      int apertureSize,
+      boolean warmUp,
+      int readyConnections,
+      int maxPendingRequests,
+      Duration maxConnectionWait,
+      Supplier<LoadBalancer> loadBalancer,
+      boolean outlierEjection,
       Supplier<Tracer> tracerSupplier,
       DiscoveryStrategy discoveryStrategy) {
     this.accesskey = accessKey;
@@ -103,6 +123,7 @@ public class BrokerClient implements Closeable {
     this.tags = tags;
     this.onClose = MonoProcessor.create();
     this.requestHandlingRSocket = responder;
+    this.readyConnections = readyConnections;
     this.brokerService =
         new DefaultBrokerService(
             seedAddresses,
@@ -113,6 +134,13 @@ public class BrokerClient implements Closeable {
             addressSelector,
             clientTransportFactory,
             poolSize,
+            minPoolSize,
+            apertureSize,
+            warmUp,
+            maxPendingRequests,
+            maxConnectionWait,
+            loadBalancer.get(),
+            outlierEjection,
             keepalive,
             tickPeriodSeconds,
             ackTimeoutSeconds,
@@ -121,6 +149,9 @@ public class BrokerClient implements Closeable {
             accessToken,
             connectionIdSeed,
             additionalFlags,
+            frameMinorVersion,
+            frameDictionary ? new FrameDictionary() : null,
+            compression ? new PayloadCompression(compressionThreshold) : null,
             tags,
             tracerSupplier.get(),
             discoveryStrategy);
@@ -155,6 +186,12 @@ public class BrokerClient implements Closeable {
     return UUID.randomUUID().toString();
   }
 
+  private static short frameMinorVersion(boolean compactFrames) {
+    return compactFrames
+        ? FrameHeaderFlyweight.COMPACT_MINOR_VERSION
+        : FrameHeaderFlyweight.MINOR_VERSION;
+  }
+
   @Override
   public void dispose() {
     requestHandlingRSocket.dispose();
@@ -248,6 +285,61 @@ public class BrokerClient implements Closeable {
     return brokerService.shard(group, shardKey, tags);
   }
 
+  /**
+   * Returns a group socket that sends fire and forget messages in batches, which greatly raises
+   * the throughput of small messages. Only use it against brokers that route {@link
+   * com.netifi.broker.frames.FrameType#BATCH} frames.
+   *
+   * @param maxBatchSize the most messages sent in a single batch
+   * @param maxBatchDelay the longest a message waits for its batch to fill up
+   */
+  public BrokerSocket batchingGroupServiceSocket(
+      String group, Tags tags, int maxBatchSize, Duration maxBatchDelay) {
+    Objects.requireNonNull(group);
+    Objects.requireNonNull(tags);
+    Objects.requireNonNull(maxBatchDelay);
+    return brokerService.batchingGroup(group, tags, maxBatchSize, maxBatchDelay);
+  }
+
+  public BrokerSocket batchingBroadcastServiceSocket(
+      String group, Tags tags, int maxBatchSize, Duration maxBatchDelay) {
+    Objects.requireNonNull(group);
+    Objects.requireNonNull(tags);
+    Objects.requireNonNull(maxBatchDelay);
+    return brokerService.batchingBroadcast(group, tags, maxBatchSize, maxBatchDelay);
+  }
+
+  public BrokerSocket batchingShardServiceSocket(
+      String group, ByteBuf shardKey, Tags tags, int maxBatchSize, Duration maxBatchDelay) {
+    Objects.requireNonNull(group);
+    Objects.requireNonNull(tags);
+    Objects.requireNonNull(maxBatchDelay);
+    return brokerService.batchingShard(group, shardKey, tags, maxBatchSize, maxBatchDelay);
+  }
+
+  /**
+   * Returns a group socket that hedges request response interactions: a request that takes longer
+   * than 95% of the recent ones on its connection is sent once more over another connection, and
+   * the first response wins. At most 5% of the requests are hedged. Only use it for requests that
+   * are safe to handle twice.
+   *
+   * @param hedgeDelay the delay before hedging while a connection has no latencies to go by yet
+   */
+  public BrokerSocket hedgingGroupServiceSocket(String group, Tags tags, Duration hedgeDelay) {
+    Objects.requireNonNull(group);
+    Objects.requireNonNull(tags);
+    Objects.requireNonNull(hedgeDelay);
+    return brokerService.hedgingGroup(group, tags, hedgeDelay);
+  }
+
+  public BrokerSocket hedgingShardServiceSocket(
+      String group, ByteBuf shardKey, Tags tags, Duration hedgeDelay) {
+    Objects.requireNonNull(group);
+    Objects.requireNonNull(tags);
+    Objects.requireNonNull(hedgeDelay);
+    return brokerService.hedgingShard(group, shardKey, tags, hedgeDelay);
+  }
+
   public BrokerSocket groupNamedRSocket(String name, String group) {
     return NamedRSocketClientWrapper.wrap(
         Objects.requireNonNull(name), groupServiceSocket(group, Tags.empty()));
@@ -288,6 +380,34 @@ public class BrokerClient implements Closeable {
     return brokerService.selectRSocket();
   }
 
+  /**
+   * Completes once the configured number of {@link CommonBuilder#readyConnections(int)
+   * readyConnections} to the broker are established, opening them if needed. Useful to gate a
+   * readiness check on, so that no traffic arrives before the client can send any.
+   *
+   * @return a {@link Mono} emitting this client once it is ready
+   */
+  public Mono<BrokerClient> ready() {
+    return brokerService.ready(readyConnections).thenReturn(this);
+  }
+
+  /**
+   * @return the number of requests waiting for a broker connection, only tracked when {@link
+   *     CommonBuilder#maxPendingRequests(int)} or {@link CommonBuilder#maxConnectionWait(Duration)}
+   *     bound them
+   */
+  public int pendingRequests() {
+    return brokerService.pendingRequests();
+  }
+
+  /**
+   * @return the ejection, probing and restoration of broker connections, only published when
+   *     {@link CommonBuilder#outlierEjection(boolean)} is enabled
+   */
+  public Flux<OutlierEvent> outlierEvents() {
+    return brokerService.outlierEvents();
+  }
+
   public long getAccesskey() {
     return accesskey;
   }
@@ -305,11 +425,23 @@ public class BrokerClient implements Closeable {
     String group = DefaultBuilderConfig.getGroup();
     String destination = DefaultBuilderConfig.getDestination();
     short additionalFlags = DefaultBuilderConfig.getAdditionalConnectionFlags();
+    short frameMinorVersion = frameMinorVersion(DefaultBuilderConfig.getCompactFrames());
+    boolean frameDictionary = DefaultBuilderConfig.getFrameDictionary();
+    boolean compression = DefaultBuilderConfig.getCompression();
+    int compressionThreshold = DefaultBuilderConfig.getCompressionThreshold();
     Tags tags = DefaultBuilderConfig.getTags();
     String accessToken = DefaultBuilderConfig.getAccessToken();
     byte[] accessTokenBytes = new byte[20];
     String connectionIdSeed = DefaultBuilderConfig.getConnectionId();
     int poolSize = Runtime.getRuntime().availableProcessors() * 2;
+    int minPoolSize = DefaultBuilderConfig.getMinPoolSize();
+    int apertureSize = DefaultBuilderConfig.getApertureSize();
+    boolean warmUp = DefaultBuilderConfig.getWarmUp();
+    int readyConnections = DefaultBuilderConfig.getReadyConnections();
+    int maxPendingRequests = DefaultBuilderConfig.getMaxPendingRequests();
+    Duration maxConnectionWait = DefaultBuilderConfig.getMaxConnectionWait();
+    Supplier<LoadBalancer> loadBalancer = DefaultBuilderConfig.getLoadBalancer();
+    boolean outlierEjection = DefaultBuilderConfig.getOutlierEjection();
     Supplier<Tracer> tracerSupplier = () -> null;
     boolean keepalive = DefaultBuilderConfig.getKeepAlive();
     long tickPeriodSeconds = DefaultBuilderConfig.getTickPeriodSeconds();
@@ -352,6 +484,179 @@ public class BrokerClient implements Closeable {
       return (SELF) this;
     }
 
+    /**
+     * Lets the connection pool adapt to the load, between {@code minPoolSize} and {@link
+     * #poolSize(int) poolSize} connections. A connection is added while the pooled ones build up
+     * pending requests, and one that stayed idle for a minute is retired once its in-flight
+     * requests completed. By default, the pool grows to {@code poolSize} and stays there.
+     *
+     * @param minPoolSize the number of connections the pool keeps when idle, or 0 for a static pool
+     * @return the initial builder.
+     */
+    public SELF minPoolSize(int minPoolSize) {
+      this.minPoolSize = minPoolSize;
+      return (SELF) this;
+    }
+
+    /**
+     * Only connects to a stable subset of {@code apertureSize} brokers of the cluster, chosen from
+     * the group and {@link #destination(String) destination} of the client so that every broker
+     * serves an even share of the clients. A client only gets the same subset after a restart if
+     * its destination is set, the default destination is random. By default, a client may connect
+     * to every broker.
+     *
+     * @param apertureSize the number of brokers to connect to, or 0 for all of them
+     * @return the initial builder.
+     */
+    public SELF apertureSize(int apertureSize) {
+      this.apertureSize = apertureSize;
+      return (SELF) this;
+    }
+
+    /**
+     * Opens all {@link #poolSize(int) poolSize} connections in parallel when the client is built.
+     * By default, the first connection is opened by the first request and the rest of the pool
+     * over the following seconds.
+     *
+     * @param warmUp whether to open the whole pool eagerly
+     * @return the initial builder.
+     */
+    public SELF warmUp(boolean warmUp) {
+      this.warmUp = warmUp;
+      return (SELF) this;
+    }
+
+    /**
+     * Sets how many connections must be established before {@link BrokerClient#ready()}
+     * completes. Defaults to 1.
+     *
+     * @param readyConnections the number of established connections, at most the pool size
+     * @return the initial builder.
+     */
+    public SELF readyConnections(int readyConnections) {
+      this.readyConnections = readyConnections;
+      return (SELF) this;
+    }
+
+    /**
+     * Bounds the requests that wait for a broker connection while the client reconnects. Requests
+     * beyond it fail right away with a {@link
+     * com.netifi.broker.rsocket.NoAvailableConnectionException}. By default, any number of
+     * requests wait.
+     *
+     * @param maxPendingRequests the most requests waiting for a connection, or 0 for no bound
+     * @return the initial builder.
+     */
+    public SELF maxPendingRequests(int maxPendingRequests) {
+      this.maxPendingRequests = maxPendingRequests;
+      return (SELF) this;
+    }
+
+    /**
+     * Bounds how long a request waits for a broker connection while the client reconnects, it then
+     * fails with a {@link com.netifi.broker.rsocket.NoAvailableConnectionException}. By default,
+     * requests wait until a connection is established.
+     *
+     * @param maxConnectionWait the longest a request waits for a connection
+     * @return the initial builder.
+     */
+    public SELF maxConnectionWait(Duration maxConnectionWait) {
+      this.maxConnectionWait = maxConnectionWait;
+      return (SELF) this;
+    }
+
+    /**
+     * Encodes group, broadcast and shard frames with varint length prefixes, which makes the
+     * routing header of small requests noticeably smaller. Only enable this against brokers that
+     * support {@link FrameHeaderFlyweight#COMPACT_MINOR_VERSION}.
+     *
+     * @param compactFrames whether to send compact frames
+     * @return the initial builder.
+     */
+    public SELF compactFrames(boolean compactFrames) {
+      this.frameMinorVersion = frameMinorVersion(compactFrames);
+      return (SELF) this;
+    }
+
+    /**
+     * Replaces repeated groups, tag keys and tag values of routing frames with short references
+     * into a dictionary that is pushed to each broker connection before it is used, and announces
+     * it with {@link DestinationSetupFlyweight#FLAG_DICTIONARY}. References are only sent on
+     * connections whose broker announced the same flag back, brokers that predate it get routes
+     * written out in full.
+     *
+     * @param frameDictionary whether to send dictionary references
+     * @return the initial builder.
+     */
+    public SELF frameDictionary(boolean frameDictionary) {
+      this.frameDictionary = frameDictionary;
+      return (SELF) this;
+    }
+
+    /**
+     * Compresses the data of routed payloads larger than the {@link #compressionThreshold(int)
+     * compression threshold}, and announces that this client can read compressed data with {@link
+     * DestinationSetupFlyweight#FLAG_COMPRESSION}. Payloads are only compressed on connections
+     * whose broker announced the same flag back, brokers that predate it get them as is.
+     *
+     * @param compression whether to compress payload data
+     * @return the initial builder.
+     */
+    public SELF compression(boolean compression) {
+      this.compression = compression;
+      return (SELF) this;
+    }
+
+    /**
+     * @param compressionThreshold the size, in bytes, from which payload data is compressed,
+     *     defaults to {@link PayloadCompression#DEFAULT_THRESHOLD}
+     * @return the initial builder.
+     */
+    public SELF compressionThreshold(int compressionThreshold) {
+      this.compressionThreshold = compressionThreshold;
+      return (SELF) this;
+    }
+
+    /**
+     * Sets the strategy used to pick a broker connection from the pool for each request. The
+     * instance is shared by every client built from this builder, use {@link
+     * #loadBalancer(Supplier)} for strategies that keep state about their pool.
+     *
+     * @param loadBalancer the load balancer, see {@link
+     *     com.netifi.broker.loadbalancer.LoadBalancers}
+     * @return the initial builder.
+     */
+    public SELF loadBalancer(LoadBalancer loadBalancer) {
+      Objects.requireNonNull(loadBalancer);
+      this.loadBalancer = () -> loadBalancer;
+      return (SELF) this;
+    }
+
+    /**
+     * Sets the strategy used to pick a broker connection from the pool for each request, created
+     * once for every client built from this builder.
+     *
+     * @param loadBalancer creates the load balancer, e.g. {@code LoadBalancers::weighted}
+     * @return the initial builder.
+     */
+    public SELF loadBalancer(Supplier<LoadBalancer> loadBalancer) {
+      this.loadBalancer = Objects.requireNonNull(loadBalancer);
+      return (SELF) this;
+    }
+
+    /**
+     * Takes broker connections with a low success rate or a far higher latency than the rest of the
+     * pool out of the selection for a while, and then probes them back in gradually. Defaults to
+     * false.
+     *
+     * @param outlierEjection whether to eject outlying connections
+     * @return the initial builder.
+     */
+    public SELF outlierEjection(boolean outlierEjection) {
+      this.outlierEjection = outlierEjection;
+      return (SELF) this;
+    }
+
     public SELF tracerSupplier(Supplier<Tracer> tracerSupplier) {
       this.tracerSupplier = tracerSupplier;
       return (SELF) this;
@@ -625,6 +930,10 @@ public class BrokerClient implements Closeable {
                     group,
                     destination,
                     additionalFlags,
+                    frameMinorVersion,
+                    frameDictionary,
+                    compression,
+                    compressionThreshold,
                     tags,
                     keepalive,
                     tickPeriodSeconds,
@@ -636,6 +945,14 @@ public class BrokerClient implements Closeable {
                     responder,
                     responderRequiresUnwrapping,
                     poolSize,
+                    minPoolSize,
+                    apertureSize,
+                    warmUp,
+                    readyConnections,
+                    maxPendingRequests,
+                    maxConnectionWait,
+                    loadBalancer,
+                    outlierEjection,
                     tracerSupplier,
                     discoveryStrategy);
             brokerClient.onClose.doFinally(s -> BROKERCLIENT.remove(netifiKey)).subscribe();
@@ -716,6 +1033,10 @@ public class BrokerClient implements Closeable {
                     group,
                     destination,
                     additionalFlags,
+                    frameMinorVersion,
+                    frameDictionary,
+                    compression,
+                    compressionThreshold,
                     tags,
                     keepalive,
                     tickPeriodSeconds,
@@ -727,6 +1048,14 @@ public class BrokerClient implements Closeable {
                     responder,
                     responderRequiresUnwrapping,
                     poolSize,
+                    minPoolSize,
+                    apertureSize,
+                    warmUp,
+                    readyConnections,
+                    maxPendingRequests,
+                    maxConnectionWait,
+                    loadBalancer,
+                    outlierEjection,
                     tracerSupplier,
                     discoveryStrategy);
             brokerClient.onClose.doFinally(s -> BROKERCLIENT.remove(netifiKey)).subscribe();
@@ -767,6 +1096,10 @@ public class BrokerClient implements Closeable {
                     group,
                     destination,
                     additionalFlags,
+                    frameMinorVersion,
+                    frameDictionary,
+                    compression,
+                    compressionThreshold,
                     tags,
                     keepalive,
                     tickPeriodSeconds,
@@ -778,6 +1111,14 @@ public class BrokerClient implements Closeable {
                     responder,
                     responderRequiresUnwrapping,
                     poolSize,
+                    minPoolSize,
+                    apertureSize,
+                    warmUp,
+                    readyConnections,
+                    maxPendingRequests,
+                    maxConnectionWait,
+                    loadBalancer,
+                    outlierEjection,
                     tracerSupplier,
                     discoveryStrategy);
             brokerClient.onClose.doFinally(s -> BROKERCLIENT.remove(netifiKey)).subscribe();
@@ -805,12 +1146,24 @@ public class BrokerClient implements Closeable {
     private long tickPeriodSeconds = DefaultBuilderConfig.getTickPeriodSeconds();
     private long ackTimeoutSeconds = DefaultBuilderConfig.getAckTimeoutSeconds();
     private int missedAcks = DefaultBuilderConfig.getMissedAcks();
+    private short frameMinorVersion = frameMinorVersion(DefaultBuilderConfig.getCompactFrames());
+    private boolean frameDictionary = DefaultBuilderConfig.getFrameDictionary();
+    private boolean compression = DefaultBuilderConfig.getCompression();
+    private int compressionThreshold = DefaultBuilderConfig.getCompressionThreshold();
     private DiscoveryStrategy discoveryStrategy = null;
     private Function<Broker, InetSocketAddress> addressSelector =
         BrokerAddressSelectors.TCP_ADDRESS; // Default
 
     private Function<SocketAddress, ClientTransport> clientTransportFactory = null;
     private int poolSize = Runtime.getRuntime().availableProcessors() * 2;
+    private int minPoolSize = DefaultBuilderConfig.getMinPoolSize();
+    private int apertureSize = DefaultBuilderConfig.getApertureSize();
+    private boolean warmUp = DefaultBuilderConfig.getWarmUp();
+    private int readyConnections = DefaultBuilderConfig.getReadyConnections();
+    private int maxPendingRequests = DefaultBuilderConfig.getMaxPendingRequests();
+    private Duration maxConnectionWait = DefaultBuilderConfig.getMaxConnectionWait();
+    private Supplier<LoadBalancer> loadBalancer = DefaultBuilderConfig.getLoadBalancer();
+    private boolean outlierEjection = DefaultBuilderConfig.getOutlierEjection();
     private Supplier<Tracer> tracerSupplier = () -> null;
 
     public static Builder fromCustomizableBuilder(CustomizableBuilder customizableBuilder) {
@@ -825,11 +1178,23 @@ public class BrokerClient implements Closeable {
       builder.connectionIdSeed = customizableBuilder.connectionIdSeed;
       builder.destination = customizableBuilder.destination;
       builder.discoveryStrategy = customizableBuilder.discoveryStrategy;
+      builder.frameMinorVersion = customizableBuilder.frameMinorVersion;
+      builder.frameDictionary = customizableBuilder.frameDictionary;
+      builder.compression = customizableBuilder.compression;
+      builder.compressionThreshold = customizableBuilder.compressionThreshold;
       builder.group = customizableBuilder.group;
       builder.host = customizableBuilder.host;
       builder.inetAddress = customizableBuilder.inetAddress;
       builder.missedAcks = customizableBuilder.missedAcks;
       builder.poolSize = customizableBuilder.poolSize;
+      builder.minPoolSize = customizableBuilder.minPoolSize;
+      builder.apertureSize = customizableBuilder.apertureSize;
+      builder.warmUp = customizableBuilder.warmUp;
+      builder.readyConnections = customizableBuilder.readyConnections;
+      builder.maxPendingRequests = customizableBuilder.maxPendingRequests;
+      builder.maxConnectionWait = customizableBuilder.maxConnectionWait;
+      builder.loadBalancer = customizableBuilder.loadBalancer;
+      builder.outlierEjection = customizableBuilder.outlierEjection;
       builder.port = customizableBuilder.port;
       builder.seedAddresses = customizableBuilder.seedAddresses;
       builder.tags = customizableBuilder.tags;
@@ -854,6 +1219,52 @@ public class BrokerClient implements Closeable {
       return this;
     }
 
+    public Builder minPoolSize(int minPoolSize) {
+      this.minPoolSize = minPoolSize;
+      return this;
+    }
+
+    public Builder apertureSize(int apertureSize) {
+      this.apertureSize = apertureSize;
+      return this;
+    }
+
+    public Builder warmUp(boolean warmUp) {
+      this.warmUp = warmUp;
+      return this;
+    }
+
+    public Builder readyConnections(int readyConnections) {
+      this.readyConnections = readyConnections;
+      return this;
+    }
+
+    public Builder maxPendingRequests(int maxPendingRequests) {
+      this.maxPendingRequests = maxPendingRequests;
+      return this;
+    }
+
+    public Builder maxConnectionWait(Duration maxConnectionWait) {
+      this.maxConnectionWait = maxConnectionWait;
+      return this;
+    }
+
+    public Builder loadBalancer(LoadBalancer loadBalancer) {
+      Objects.requireNonNull(loadBalancer);
+      this.loadBalancer = () -> loadBalancer;
+      return this;
+    }
+
+    public Builder loadBalancer(Supplier<LoadBalancer> loadBalancer) {
+      this.loadBalancer = Objects.requireNonNull(loadBalancer);
+      return this;
+    }
+
+    public Builder outlierEjection(boolean outlierEjection) {
+      this.outlierEjection = outlierEjection;
+      return this;
+    }
+
     public Builder sslDisabled(boolean sslDisabled) {
       this.sslDisabled = sslDisabled;
       return this;
@@ -874,6 +1285,26 @@ public class BrokerClient implements Closeable {
       return this;
     }
 
+    public Builder compactFrames(boolean compactFrames) {
+      this.frameMinorVersion = frameMinorVersion(compactFrames);
+      return this;
+    }
+
+    public Builder frameDictionary(boolean frameDictionary) {
+      this.frameDictionary = frameDictionary;
+      return this;
+    }
+
+    public Builder compression(boolean compression) {
+      this.compression = compression;
+      return this;
+    }
+
+    public Builder compressionThreshold(int compressionThreshold) {
+      this.compressionThreshold = compressionThreshold;
+      return this;
+    }
+
     public Builder missedAcks(int missedAcks) {
       this.missedAcks = missedAcks;
       return this;
@@ -1016,11 +1447,23 @@ public class BrokerClient implements Closeable {
       builder.connectionIdSeed = this.connectionIdSeed;
       builder.destination = this.destination;
       builder.discoveryStrategy = this.discoveryStrategy;
+      builder.frameMinorVersion = this.frameMinorVersion;
+      builder.frameDictionary = this.frameDictionary;
+      builder.compression = this.compression;
+      builder.compressionThreshold = this.compressionThreshold;
       builder.group = this.group;
       builder.host = this.host;
       builder.inetAddress = this.inetAddress;
       builder.missedAcks = this.missedAcks;
       builder.poolSize = this.poolSize;
+      builder.minPoolSize = this.minPoolSize;
+      builder.apertureSize = this.apertureSize;
+      builder.warmUp = this.warmUp;
+      builder.readyConnections = this.readyConnections;
+      builder.maxPendingRequests = this.maxPendingRequests;
+      builder.maxConnectionWait = this.maxConnectionWait;
+      builder.loadBalancer = this.loadBalancer;
+      builder.outlierEjection = this.outlierEjection;
       builder.port = this.port;
       builder.seedAddresses = this.seedAddresses;
       builder.tags = this.tags;
@@ -1113,6 +1556,10 @@ public class BrokerClient implements Closeable {
                     group,
                     destination,
                     (short) 0,
+                    frameMinorVersion,
+                    frameDictionary,
+                    compression,
+                    compressionThreshold,
                     tags,
                     keepalive,
                     tickPeriodSeconds,
@@ -1124,6 +1571,14 @@ public class BrokerClient implements Closeable {
                     new RequestHandlingRSocket(),
                     true,
                     poolSize,
+                    minPoolSize,
+                    apertureSize,
+                    warmUp,
+                    readyConnections,
+                    maxPendingRequests,
+                    maxConnectionWait,
+                    loadBalancer,
+                    outlierEjection,
                     tracerSupplier,
                     discoveryStrategy);
             brokerClient.onClose.doFinally(s -> BROKERCLIENT.remove(netifiKey)).subscribe();
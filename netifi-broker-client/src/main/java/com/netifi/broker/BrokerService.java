@@ -16,59 +16,227 @@
 package com.netifi.broker;
 
 import com.netifi.broker.frames.BroadcastFlyweight;
+import com.netifi.broker.frames.DestinationSetupFlyweight;
+import com.netifi.broker.frames.FrameDictionary;
+import com.netifi.broker.frames.FrameHeaderFlyweight;
 import com.netifi.broker.frames.GroupFlyweight;
 import com.netifi.broker.frames.ShardFlyweight;
+import com.netifi.broker.loadbalancer.OutlierEvent;
+import com.netifi.broker.rsocket.BatchingBrokerSocket;
 import com.netifi.broker.rsocket.BrokerSocket;
 import com.netifi.broker.rsocket.DefaultBrokerSocket;
+import com.netifi.broker.rsocket.HedgingBrokerSocket;
+import com.netifi.broker.rsocket.PayloadCompression;
 import com.netifi.common.tags.Tags;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.rsocket.Payload;
 import io.rsocket.RSocket;
 import io.rsocket.util.ByteBufPayload;
+import java.time.Duration;
+import java.util.function.Function;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+/**
+ * The group, broadcast and shard sockets encode their route once when they are created, every
+ * payload then only has its metadata wrapped into that route. Routes are encoded in the {@link
+ * #frameMinorVersion() frame version} of the service. If the service has a {@link #dictionary()
+ * dictionary}, the route is also encoded referring to its entries, and that one is sent over the
+ * connections whose broker announced {@link DestinationSetupFlyweight#FLAG_DICTIONARY}. Their
+ * payload data is compressed by the {@link #compression() compression} of the service, if it has
+ * one.
+ */
 interface BrokerService {
-  default BrokerSocket group(CharSequence group, Tags tags) {
+  default DefaultBrokerSocket group(CharSequence group, Tags tags) {
+    FrameDictionary dictionary = dictionary();
+    return group(
+        GroupFlyweight.encodeRoute(frameMinorVersion(), group, tags),
+        dictionary == null
+            ? null
+            : GroupFlyweight.encodeRoute(frameMinorVersion(), group, tags, dictionary));
+  }
+
+  /** @param route a route from {@link GroupFlyweight#encodeRoute} */
+  default DefaultBrokerSocket group(ByteBuf route) {
+    return group(route, null);
+  }
+
+  /**
+   * @param route a route from {@link GroupFlyweight#encodeRoute} written out in full
+   * @param referenceRoute the same route referring to the dictionary, or {@code null}
+   */
+  default DefaultBrokerSocket group(ByteBuf route, ByteBuf referenceRoute) {
+    Function<ByteBuf, Function<Payload, Payload>> routing =
+        r ->
+            payload -> {
+              ByteBuf data = payload.sliceData().retain();
+              ByteBuf metadata =
+                  GroupFlyweight.encode(ByteBufAllocator.DEFAULT, r, payload.sliceMetadata());
+              Payload wrappedPayload = ByteBufPayload.create(data, metadata);
+              payload.release();
+              return wrappedPayload;
+            };
     return new DefaultBrokerSocket(
-        payload -> {
-          ByteBuf data = payload.sliceData().retain();
-          ByteBuf metadataToWrap = payload.sliceMetadata();
-          ByteBuf metadata =
-              GroupFlyweight.encode(ByteBufAllocator.DEFAULT, group, metadataToWrap, tags);
-          Payload wrappedPayload = ByteBufPayload.create(data, metadata);
-          payload.release();
-          return wrappedPayload;
-        },
-        this::selectRSocket);
-  }
-
-  default BrokerSocket broadcast(CharSequence group, Tags tags) {
+        routing.apply(route),
+        referenceRoute == null ? null : routing.apply(referenceRoute),
+        this::selectRSocket,
+        compression());
+  }
+
+  default DefaultBrokerSocket broadcast(CharSequence group, Tags tags) {
+    FrameDictionary dictionary = dictionary();
+    return broadcast(
+        BroadcastFlyweight.encodeRoute(frameMinorVersion(), group, tags),
+        dictionary == null
+            ? null
+            : BroadcastFlyweight.encodeRoute(frameMinorVersion(), group, tags, dictionary));
+  }
+
+  /** @param route a route from {@link BroadcastFlyweight#encodeRoute} */
+  default DefaultBrokerSocket broadcast(ByteBuf route) {
+    return broadcast(route, null);
+  }
+
+  /**
+   * @param route a route from {@link BroadcastFlyweight#encodeRoute} written out in full
+   * @param referenceRoute the same route referring to the dictionary, or {@code null}
+   */
+  default DefaultBrokerSocket broadcast(ByteBuf route, ByteBuf referenceRoute) {
+    Function<ByteBuf, Function<Payload, Payload>> routing =
+        r ->
+            payload -> {
+              ByteBuf data = payload.sliceData().retain();
+              ByteBuf metadata =
+                  BroadcastFlyweight.encode(ByteBufAllocator.DEFAULT, r, payload.sliceMetadata());
+              Payload wrappedPayload = ByteBufPayload.create(data, metadata);
+              payload.release();
+              return wrappedPayload;
+            };
     return new DefaultBrokerSocket(
-        payload -> {
-          ByteBuf data = payload.sliceData().retain();
-          ByteBuf metadataToWrap = payload.sliceMetadata();
-          ByteBuf metadata =
-              BroadcastFlyweight.encode(ByteBufAllocator.DEFAULT, group, metadataToWrap, tags);
-          Payload wrappedPayload = ByteBufPayload.create(data, metadata);
-          payload.release();
-          return wrappedPayload;
-        },
-        this::selectRSocket);
-  }
-
-  default BrokerSocket shard(CharSequence group, ByteBuf shardKey, Tags tags) {
+        routing.apply(route),
+        referenceRoute == null ? null : routing.apply(referenceRoute),
+        this::selectRSocket,
+        compression());
+  }
+
+  default DefaultBrokerSocket shard(CharSequence group, ByteBuf shardKey, Tags tags) {
+    FrameDictionary dictionary = dictionary();
+    return shard(
+        ShardFlyweight.encodeRoute(frameMinorVersion(), group, shardKey, tags),
+        dictionary == null
+            ? null
+            : ShardFlyweight.encodeRoute(frameMinorVersion(), group, shardKey, tags, dictionary));
+  }
+
+  /** @param route a route from {@link ShardFlyweight#encodeRoute} */
+  default DefaultBrokerSocket shard(ByteBuf route) {
+    return shard(route, null);
+  }
+
+  /**
+   * @param route a route from {@link ShardFlyweight#encodeRoute} written out in full
+   * @param referenceRoute the same route referring to the dictionary, or {@code null}
+   */
+  default DefaultBrokerSocket shard(ByteBuf route, ByteBuf referenceRoute) {
+    Function<ByteBuf, Function<Payload, Payload>> routing =
+        r ->
+            payload -> {
+              ByteBuf data = payload.sliceData().retain();
+              ByteBuf metadata =
+                  ShardFlyweight.encode(ByteBufAllocator.DEFAULT, r, payload.sliceMetadata());
+              Payload wrappedPayload = ByteBufPayload.create(data, metadata);
+              payload.release();
+              return wrappedPayload;
+            };
     return new DefaultBrokerSocket(
-        payload -> {
-          ByteBuf data = payload.sliceData().retain();
-          ByteBuf metadataToWrap = payload.sliceMetadata();
-          ByteBuf metadata =
-              ShardFlyweight.encode(
-                  ByteBufAllocator.DEFAULT, group, metadataToWrap, shardKey, tags);
-          Payload wrappedPayload = ByteBufPayload.create(data, metadata);
-          payload.release();
-          return wrappedPayload;
-        },
-        this::selectRSocket);
+        routing.apply(route),
+        referenceRoute == null ? null : routing.apply(referenceRoute),
+        this::selectRSocket,
+        compression());
+  }
+
+  /**
+   * Same as {@link #group(CharSequence, Tags)}, but fire and forget messages are sent in batches of
+   * up to {@code maxBatchSize} messages, waiting at most {@code maxBatchDelay} for a batch to fill.
+   * Batches are sent with the route written out in full, as it only comes once per batch.
+   */
+  default BrokerSocket batchingGroup(
+      CharSequence group, Tags tags, int maxBatchSize, Duration maxBatchDelay) {
+    ByteBuf route = GroupFlyweight.encodeRoute(frameMinorVersion(), group, tags);
+    return new BatchingBrokerSocket(
+        group(route), route, this::selectRSocket, maxBatchSize, maxBatchDelay);
+  }
+
+  default BrokerSocket batchingBroadcast(
+      CharSequence group, Tags tags, int maxBatchSize, Duration maxBatchDelay) {
+    ByteBuf route = BroadcastFlyweight.encodeRoute(frameMinorVersion(), group, tags);
+    return new BatchingBrokerSocket(
+        broadcast(route), route, this::selectRSocket, maxBatchSize, maxBatchDelay);
+  }
+
+  default BrokerSocket batchingShard(
+      CharSequence group, ByteBuf shardKey, Tags tags, int maxBatchSize, Duration maxBatchDelay) {
+    ByteBuf route = ShardFlyweight.encodeRoute(frameMinorVersion(), group, shardKey, tags);
+    return new BatchingBrokerSocket(
+        shard(route), route, this::selectRSocket, maxBatchSize, maxBatchDelay);
+  }
+
+  /**
+   * Same as {@link #group(CharSequence, Tags)}, but a request response is sent once more over
+   * another connection when it takes longer than most of the requests before it, or {@code
+   * hedgeDelay} until there are enough of them to tell.
+   */
+  default BrokerSocket hedgingGroup(CharSequence group, Tags tags, Duration hedgeDelay) {
+    return new HedgingBrokerSocket(group(group, tags), this::selectRSocket, hedgeDelay);
+  }
+
+  default BrokerSocket hedgingShard(
+      CharSequence group, ByteBuf shardKey, Tags tags, Duration hedgeDelay) {
+    return new HedgingBrokerSocket(shard(group, shardKey, tags), this::selectRSocket, hedgeDelay);
+  }
+
+  /**
+   * @return {@link FrameHeaderFlyweight#MINOR_VERSION}, or {@link
+   *     FrameHeaderFlyweight#COMPACT_MINOR_VERSION} when compact frames were opted into
+   */
+  default short frameMinorVersion() {
+    return FrameHeaderFlyweight.MINOR_VERSION;
+  }
+
+  /**
+   * @return the dictionary shared by the connections of this service, or {@code null} if routes are
+   *     written out in full
+   */
+  default FrameDictionary dictionary() {
+    return null;
+  }
+
+  /** @return the compression of routed payload data, or {@code null} if it is sent as is */
+  default PayloadCompression compression() {
+    return null;
+  }
+
+  /**
+   * @return the number of requests waiting for a broker connection, which is only tracked when
+   *     their number or wait is bounded
+   */
+  default int pendingRequests() {
+    return 0;
+  }
+
+  /** @return the ejection and restoration of pool members, empty unless outliers are ejected */
+  default Flux<OutlierEvent> outlierEvents() {
+    return Flux.empty();
+  }
+
+  /**
+   * @param minConnections the number of pooled connections that must be established
+   * @return a {@link Mono} that completes once {@code minConnections} connections are established,
+   *     opening them if the pool is still smaller than that
+   */
+  default Mono<Void> ready(int minConnections) {
+    return Mono.empty();
   }
 
   RSocket selectRSocket();
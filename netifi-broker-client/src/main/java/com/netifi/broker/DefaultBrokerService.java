@@ -18,19 +18,27 @@ package com.netifi.broker;
 import com.google.protobuf.Empty;
 import com.netifi.broker.discovery.DiscoveryStrategy;
 import com.netifi.broker.frames.DestinationSetupFlyweight;
+import com.netifi.broker.frames.FrameDictionary;
 import com.netifi.broker.info.Broker;
 import com.netifi.broker.info.BrokerInfoServiceClient;
 import com.netifi.broker.info.Event;
 import com.netifi.broker.info.Id;
+import com.netifi.broker.loadbalancer.LoadBalancer;
+import com.netifi.broker.loadbalancer.OutlierEjection;
+import com.netifi.broker.loadbalancer.OutlierEvent;
+import com.netifi.broker.loadbalancer.WeightedLoadBalancer;
+import com.netifi.broker.rsocket.PayloadCompression;
+import com.netifi.broker.rsocket.PendingRequestLimit;
 import com.netifi.broker.rsocket.UnwrappingRSocket;
-import com.netifi.broker.rsocket.WeightedRSocket;
 import com.netifi.broker.rsocket.WeightedReconnectingRSocket;
+import com.netifi.broker.rsocket.transport.Aperture;
 import com.netifi.broker.rsocket.transport.BrokerAddressSelectors;
 import com.netifi.broker.rsocket.transport.WeightedClientTransportSupplier;
 import com.netifi.common.net.HostAndPort;
-import com.netifi.common.stats.FrugalQuantile;
-import com.netifi.common.stats.Quantile;
+import com.netifi.common.stats.LatencySketch;
+import com.netifi.common.tags.Tag;
 import com.netifi.common.tags.Tags;
+import com.netifi.common.time.Clock;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
@@ -47,8 +55,10 @@ import java.net.SocketAddress;
 import java.net.URI;
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -56,23 +66,22 @@ import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import reactor.core.Disposable;
+import reactor.core.Disposables;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.publisher.MonoProcessor;
 
 public class DefaultBrokerService implements BrokerService, Disposable {
   private static final Logger logger = LoggerFactory.getLogger(DefaultBrokerService.class);
-  private static final double EXP_FACTOR = 4.0;
-  private static final double DEFAULT_LOWER_QUANTILE = 0.5;
-  private static final double DEFAULT_HIGHER_QUANTILE = 0.8;
   private static final int INACTIVITY_FACTOR = 500;
-  private static final int EFFORT = 5;
+  private static final Duration RESIZE_INTERVAL = Duration.ofSeconds(5);
+  private static final Duration OUTLIER_CHECK_INTERVAL = Duration.ofSeconds(1);
+  private static final WeightedReconnectingRSocket[] EMPTY_MEMBERS =
+      new WeightedReconnectingRSocket[0];
 
-  private final Quantile lowerQuantile = new FrugalQuantile(DEFAULT_LOWER_QUANTILE);
-  private final Quantile higherQuantile = new FrugalQuantile(DEFAULT_HIGHER_QUANTILE);
   private final List<SocketAddress> seedAddresses;
-  private final List<WeightedClientTransportSupplier> suppliers;
-  private final List<WeightedReconnectingRSocket> members;
+  // brokers learnt from events are keyed by their id, seed brokers by their address
+  private final ConcurrentHashMap<Object, WeightedClientTransportSupplier> suppliers;
   private final RSocket requestHandlingRSocket;
   private final InetAddress localInetAddress;
   private final String group;
@@ -84,19 +93,40 @@ public class DefaultBrokerService implements BrokerService, Disposable {
   private final ByteBuf accessToken;
   private final String connectionIdSeed;
   private final short additionalSetupFlags;
+  private final short frameMinorVersion;
+  private final FrameDictionary dictionary;
+  private final PayloadCompression compression;
   private final Tags tags;
+  // the setup metadata of each connection id suffix, guarded by the service monitor
   private final List<ByteBuf> setupMetadata;
 
   private final Function<Broker, InetSocketAddress> addressSelector;
   private final Function<SocketAddress, ClientTransport> clientTransportFactory;
   private final int poolSize;
+  // null when every broker may be connected to
+  private final Aperture aperture;
+  private final LoadBalancer loadBalancer;
+  // null when every member of the pool is always eligible for selection
+  private final OutlierEjection outlierEjection;
   private final BrokerInfoServiceClient client;
   private final MonoProcessor<Void> onClose;
   private final long selectRefreshTimeout;
   private final long selectRefreshTimeoutDuration;
   private final DiscoveryStrategy discoveryStrategy;
-  private int missed = 0;
+  // null when requests wait for a connection without bound
+  private final PendingRequestLimit pendingRequestLimit;
+  // null when the pool has a static size
+  private final AdaptivePoolSize adaptivePoolSize;
+  // members removed from the pool, disposed once their in-flight requests completed
+  private final List<WeightedReconnectingRSocket> retiring = new ArrayList<>();
+  // the connection id suffix of each member, freed once it is retired and reused by the next one
+  private final Map<WeightedReconnectingRSocket, Integer> suffixes = new IdentityHashMap<>();
+  private final Deque<Integer> freeSuffixes = new ArrayDeque<>();
+  // incremented whenever the pool or the brokers change, selections retry if it moved under them
+  private final AtomicInteger missed = new AtomicInteger();
   private volatile int poolCount = 0;
+  // Immutable snapshot of the pool, replaced under the service monitor whenever a member is added
+  private volatile WeightedReconnectingRSocket[] members = EMPTY_MEMBERS;
   private volatile Disposable disposable;
 
   public DefaultBrokerService(
@@ -108,6 +138,13 @@ public class DefaultBrokerService implements BrokerService, Disposable {
       Function<Broker, InetSocketAddress> addressSelector,
       Function<SocketAddress, ClientTransport> clientTransportFactory,
       int poolSize,
+      int minPoolSize,
+      int apertureSize,
+      boolean warmUp,
+      int maxPendingRequests,
+      Duration maxConnectionWait,
+      LoadBalancer loadBalancer,
+      boolean outlierEjection,
       boolean keepalive,
       long tickPeriodSeconds,
       long ackTimeoutSeconds,
@@ -116,6 +153,9 @@ public class DefaultBrokerService implements BrokerService, Disposable {
       ByteBuf accessToken,
       String connectionIdSeed,
       short additionalSetupFlags,
+      short frameMinorVersion,
+      FrameDictionary dictionary,
+      PayloadCompression compression,
       Tags tags,
       Tracer tracer,
       DiscoveryStrategy discoveryStrategy) {
@@ -138,6 +178,7 @@ public class DefaultBrokerService implements BrokerService, Disposable {
     }
 
     Objects.requireNonNull(clientTransportFactory);
+    Objects.requireNonNull(loadBalancer);
 
     this.requestHandlingRSocket =
         responderRequiresUnwrapping
@@ -145,11 +186,22 @@ public class DefaultBrokerService implements BrokerService, Disposable {
             : requestHandlingRSocket;
     this.localInetAddress = localInetAddress;
     this.group = group;
-    this.members = Collections.synchronizedList(new ArrayList<>());
-    this.suppliers = Collections.synchronizedList(new ArrayList<>());
+    this.suppliers = new ConcurrentHashMap<>();
     this.addressSelector = addressSelector;
     this.clientTransportFactory = clientTransportFactory;
     this.poolSize = poolSize;
+    this.adaptivePoolSize =
+        minPoolSize > 0 && minPoolSize < poolSize
+            ? new AdaptivePoolSize(
+                minPoolSize, poolSize, AdaptivePoolSize.DEFAULT_IDLE_TIMEOUT_MILLIS)
+            : null;
+    this.pendingRequestLimit =
+        maxPendingRequests > 0 || maxConnectionWait != null
+            ? new PendingRequestLimit(maxPendingRequests, maxConnectionWait)
+            : null;
+    this.aperture = apertureSize > 0 ? new Aperture(apertureSize, apertureSeed(group, tags)) : null;
+    this.loadBalancer = loadBalancer;
+    this.outlierEjection = outlierEjection ? new OutlierEjection() : null;
     this.selectRefreshTimeout = System.currentTimeMillis();
     this.selectRefreshTimeoutDuration = 10_000;
     this.keepalive = keepalive;
@@ -159,7 +211,16 @@ public class DefaultBrokerService implements BrokerService, Disposable {
     this.accessKey = accessKey;
     this.accessToken = accessToken;
     this.connectionIdSeed = connectionIdSeed;
+    if (dictionary != null) {
+      additionalSetupFlags |= DestinationSetupFlyweight.FLAG_DICTIONARY;
+    }
+    if (compression != null) {
+      additionalSetupFlags |= DestinationSetupFlyweight.FLAG_COMPRESSION;
+    }
     this.additionalSetupFlags = additionalSetupFlags;
+    this.frameMinorVersion = frameMinorVersion;
+    this.dictionary = dictionary;
+    this.compression = compression;
     this.tags = tags;
     this.setupMetadata = new ArrayList<>();
     this.onClose = MonoProcessor.create();
@@ -173,16 +234,48 @@ public class DefaultBrokerService implements BrokerService, Disposable {
         new BrokerInfoServiceClient(group("com.netifi.broker.brokerServices", Tags.empty()));
     this.disposable = listenToBrokerEvents().subscribe();
 
+    if (warmUp) {
+      growPool(adaptivePoolSize == null ? poolSize : adaptivePoolSize.minSize());
+    }
+
+    Disposable.Composite tasks = Disposables.composite();
+    if (adaptivePoolSize != null) {
+      tasks.add(Flux.interval(RESIZE_INTERVAL).onBackpressureDrop().subscribe(i -> resizePool()));
+    }
+    if (this.outlierEjection != null) {
+      tasks.add(
+          Flux.interval(OUTLIER_CHECK_INTERVAL)
+              .onBackpressureDrop()
+              .subscribe(i -> checkOutliers()));
+    }
+
     onClose
         .doFinally(
             s -> {
               if (disposable != null) {
                 disposable.dispose();
               }
+              tasks.dispose();
+              disposeAllRetired();
             })
         .subscribe();
   }
 
+  /**
+   * The aperture is seeded with the group and destination of the client, so that a restarted client
+   * connects to the same brokers. The connection id seed would not do, it is random unless
+   * configured.
+   */
+  static String apertureSeed(String group, Tags tags) {
+    String destination = "";
+    for (Tag tag : tags) {
+      if ("com.netifi.destination".equals(tag.getKey())) {
+        destination = tag.getValue();
+      }
+    }
+    return group + ":" + destination;
+  }
+
   private void useDiscoveryStrategy() {
     Mono<List<InetSocketAddress>> discoveryNodes =
         discoveryStrategy
@@ -196,7 +289,7 @@ public class DefaultBrokerService implements BrokerService, Disposable {
             .doOnNext(
                 i -> {
                   synchronized (this) {
-                    missed++;
+                    missed.incrementAndGet();
                     seedAddresses.clear();
                     seedAddresses.addAll(i);
                   }
@@ -221,12 +314,22 @@ public class DefaultBrokerService implements BrokerService, Disposable {
     onClose.doFinally(s -> subscribe.dispose()).subscribe();
   }
 
-  private Supplier<Payload> createSetupPayloadSupplier(final String connectionIdSuffix) {
+  /**
+   * Connection id suffixes are numbered from 0 and their setup metadata is kept until the service
+   * is disposed, so a suffix freed by a retired connection is reused with the same connection id
+   * and metadata. Called with the service monitor held.
+   */
+  private Supplier<Payload> createSetupPayloadSupplier(final int connectionIdSuffix) {
+    if (connectionIdSuffix < setupMetadata.size()) {
+      final ByteBuf metadata = setupMetadata.get(connectionIdSuffix);
+      return () -> ByteBufPayload.create(Unpooled.EMPTY_BUFFER, Unpooled.copiedBuffer(metadata));
+    }
+
     final StringJoiner connectionId = new StringJoiner("-");
     if (connectionIdSeed != null) {
       connectionId.add(connectionIdSeed);
     }
-    connectionId.add(connectionIdSuffix);
+    connectionId.add(String.valueOf(connectionIdSuffix));
 
     final ByteBuf metadata =
         DestinationSetupFlyweight.encode(
@@ -243,24 +346,24 @@ public class DefaultBrokerService implements BrokerService, Disposable {
     return () -> ByteBufPayload.create(Unpooled.EMPTY_BUFFER, Unpooled.copiedBuffer(metadata));
   }
 
-  private synchronized void reconcileSuppliers(final Set<Broker> incomingBrokers) {
-    if (!suppliers.isEmpty()) {
-      Set<Broker> existingBrokers =
-          suppliers
-              .stream()
-              .map(WeightedClientTransportSupplier::getBroker)
-              .collect(Collectors.toSet());
-
-      Set<Broker> remove = new HashSet<>(existingBrokers);
-      remove.removeAll(incomingBrokers);
-      Set<Broker> add = new HashSet<>(incomingBrokers);
-      add.removeAll(existingBrokers);
+  /**
+   * Brings the brokers learnt from events in line with {@code incomingBrokers}, the whole cluster,
+   * after the event stream was resubscribed. Seed brokers are left as they are.
+   */
+  private void reconcileSuppliers(final Set<Broker> incomingBrokers) {
+    if (suppliers.isEmpty()) {
+      return;
+    }
 
-      for (Broker broker : remove) {
-        handleJoinEvent(broker);
-      }
+    final Set<Id> incomingBrokerIds = new HashSet<>(incomingBrokers.size());
+    for (Broker broker : incomingBrokers) {
+      incomingBrokerIds.add(broker.getBrokerId());
+      handleJoinEvent(broker);
+    }
 
-      for (Broker broker : add) {
+    for (WeightedClientTransportSupplier supplier : suppliers.values()) {
+      final Broker broker = supplier.getBroker();
+      if (broker.hasBrokerId() && !incomingBrokerIds.contains(broker.getBrokerId())) {
         handleLeaveEvent(broker);
       }
     }
@@ -308,9 +411,7 @@ public class DefaultBrokerService implements BrokerService, Disposable {
   }
 
   private void seedClientTransportSupplier() {
-    synchronized (this) {
-      missed++;
-    }
+    missed.incrementAndGet();
     seedAddresses
         .stream()
         .map(
@@ -361,10 +462,10 @@ public class DefaultBrokerService implements BrokerService, Disposable {
                     clientTransportFactory);
               }
             })
-        .forEach(suppliers::add);
+        .forEach(supplier -> suppliers.putIfAbsent(supplier.getSocketAddress(), supplier));
   }
 
-  private synchronized void handleBrokerEvent(final Event event) {
+  private void handleBrokerEvent(final Event event) {
     logger.info("received broker event {} - {}", event.getType(), event.toString());
     final Broker broker = event.getBroker();
     switch (event.getType()) {
@@ -379,54 +480,83 @@ public class DefaultBrokerService implements BrokerService, Disposable {
     }
   }
 
+  private Object key(final Broker broker) {
+    return broker.hasBrokerId() ? broker.getBrokerId() : addressSelector.apply(broker);
+  }
+
   private void handleJoinEvent(final Broker broker) {
-    final Id incomingBrokerId = broker.getBrokerId();
-    final Optional<WeightedClientTransportSupplier> first =
-        suppliers
-            .stream()
-            .filter(
-                supplier -> Objects.equals(supplier.getBroker().getBrokerId(), incomingBrokerId))
-            .findAny();
-
-    if (!first.isPresent()) {
-      logger.info("adding transport supplier to broker {}", broker);
-
-      final WeightedClientTransportSupplier s =
-          new WeightedClientTransportSupplier(broker, addressSelector, clientTransportFactory);
-      suppliers.add(s);
-
-      s.onClose()
-          .doFinally(
-              signalType -> {
-                logger.info("removing transport supplier to broker {}", broker);
-                suppliers.removeIf(
-                    supplier -> supplier.getBroker().getBrokerId().equals(broker.getBrokerId()));
-              })
-          .subscribe();
-
-      missed++;
-      createConnection();
+    final Object key = key(broker);
+    if (suppliers.containsKey(key)) {
+      return;
+    }
+
+    final WeightedClientTransportSupplier s =
+        new WeightedClientTransportSupplier(broker, addressSelector, clientTransportFactory);
+    final List<WeightedClientTransportSupplier> previousAperture =
+        aperture == null ? null : new ArrayList<>(aperture.select(supplierList()));
+    if (suppliers.putIfAbsent(key, s) != null) {
+      return;
+    }
+    logger.info("adding transport supplier to broker {}", broker);
+    missed.incrementAndGet();
+
+    if (previousAperture != null) {
+      moveConnectionsOutOf(previousAperture);
+    }
+
+    s.onClose()
+        .doFinally(
+            signalType -> {
+              logger.info("removing transport supplier to broker {}", broker);
+              if (suppliers.remove(key, s)) {
+                missed.incrementAndGet();
+              }
+            })
+        .subscribe();
+
+    createConnection(members.length);
+  }
+
+  /**
+   * Closes the connections to the brokers that are no longer in the aperture, so that they
+   * reconnect to the broker that took their place. Brokers that stay in the aperture keep theirs.
+   */
+  private void moveConnectionsOutOf(final List<WeightedClientTransportSupplier> previousAperture) {
+    final List<WeightedClientTransportSupplier> currentAperture = aperture.select(supplierList());
+    for (WeightedClientTransportSupplier supplier : previousAperture) {
+      if (!currentAperture.contains(supplier)) {
+        logger.info("moving connections to broker {} out of the aperture", supplier.getBroker());
+        supplier.closeConnections();
+      }
     }
   }
 
   private void handleLeaveEvent(final Broker broker) {
-    suppliers
-        .stream()
-        .filter(
-            supplier -> Objects.equals(supplier.getBroker().getBrokerId(), broker.getBrokerId()))
-        .findAny()
-        .ifPresent(
-            supplier -> {
-              logger.info("removing transport supplier to {}", broker);
-              supplier.dispose();
-              missed++;
-            });
+    final WeightedClientTransportSupplier supplier = suppliers.remove(key(broker));
+    if (supplier != null) {
+      logger.info("removing transport supplier to {}", broker);
+      missed.incrementAndGet();
+      supplier.dispose();
+    }
+  }
+
+  private List<WeightedClientTransportSupplier> supplierList() {
+    return new ArrayList<>(suppliers.values());
   }
 
+  // called with the service monitor held
   private WeightedReconnectingRSocket createWeightedReconnectingRSocket() {
+    final Integer free = freeSuffixes.poll();
+    final int suffix = free != null ? free : poolCount++;
+    final WeightedReconnectingRSocket rSocket = newWeightedReconnectingRSocket(suffix);
+    suffixes.put(rSocket, suffix);
+    return rSocket;
+  }
+
+  private WeightedReconnectingRSocket newWeightedReconnectingRSocket(final int suffix) {
     return WeightedReconnectingRSocket.newInstance(
         requestHandlingRSocket,
-        createSetupPayloadSupplier(String.valueOf(poolCount++)),
+        createSetupPayloadSupplier(suffix),
         this::isDisposed,
         this::selectClientTransportSupplier,
         keepalive,
@@ -435,15 +565,21 @@ public class DefaultBrokerService implements BrokerService, Disposable {
         missedAcks,
         accessKey,
         accessToken,
-        lowerQuantile,
-        higherQuantile,
+        dictionary,
+        pendingRequestLimit,
+        new LatencySketch(),
+        WeightedLoadBalancer.DEFAULT_LOWER_QUANTILE,
+        WeightedLoadBalancer.DEFAULT_HIGHER_QUANTILE,
         INACTIVITY_FACTOR);
   }
 
   @Override
   public void dispose() {
-    for (ByteBuf metadata : setupMetadata) {
-      ReferenceCountUtil.safeRelease(metadata);
+    synchronized (this) {
+      for (ByteBuf metadata : setupMetadata) {
+        ReferenceCountUtil.safeRelease(metadata);
+      }
+      setupMetadata.clear();
     }
     onClose.onComplete();
   }
@@ -453,150 +589,196 @@ public class DefaultBrokerService implements BrokerService, Disposable {
     return onClose.isDisposed();
   }
 
-  private synchronized void createConnection() {
-    if (members.size() < poolSize) {
-      missed++;
-      WeightedReconnectingRSocket rSocket = createWeightedReconnectingRSocket();
-      members.add(rSocket);
+  /**
+   * Opens connections until the pool holds {@code size} of them, instead of one at a time from
+   * the selection path. They all connect in parallel.
+   */
+  private synchronized void growPool(final int size) {
+    final WeightedReconnectingRSocket[] _m = members;
+    final int target = Math.min(size, poolSize);
+    if (_m.length >= target) {
+      return;
     }
+
+    missed.incrementAndGet();
+    WeightedReconnectingRSocket[] next = Arrays.copyOf(_m, target);
+    for (int i = _m.length; i < target; i++) {
+      next[i] = createWeightedReconnectingRSocket();
+    }
+    members = next;
   }
 
-  private boolean attemptInitialConnection = true;
+  @Override
+  public int pendingRequests() {
+    return pendingRequestLimit == null ? 0 : pendingRequestLimit.pending();
+  }
 
-  public RSocket selectRSocket() {
-    RSocket rSocket;
-    List<WeightedReconnectingRSocket> _m;
-    int r;
-    for (; ; ) {
-      final int size;
-      synchronized (this) {
-        r = missed;
-        _m = members;
+  @Override
+  public Mono<Void> ready(final int minConnections) {
+    return Mono.defer(
+        () -> {
+          final int target = Math.max(1, Math.min(minConnections, poolSize));
+          growPool(target);
+          Mono<Void> connected =
+              Flux.fromArray(members)
+                  .flatMap(WeightedReconnectingRSocket::connected)
+                  .take(target)
+                  .then();
+          return Mono.first(
+              connected,
+              onClose.then(Mono.error(new IllegalStateException("broker service is disposed"))));
+        });
+  }
 
-        int _s = _m.size();
+  private synchronized void createConnection(final int expectedSize) {
+    final WeightedReconnectingRSocket[] _m = members;
+    // another caller already grew the pool past the size observed on the selection path
+    if (_m.length != expectedSize || _m.length >= poolSize) {
+      return;
+    }
 
-        boolean _a = false;
-        if (attemptInitialConnection && _s == 0) {
-          attemptInitialConnection = false;
-          _a = true;
-        }
+    missed.incrementAndGet();
+    WeightedReconnectingRSocket rSocket = createWeightedReconnectingRSocket();
+    WeightedReconnectingRSocket[] next = Arrays.copyOf(_m, _m.length + 1);
+    next[_m.length] = rSocket;
+    members = next;
+  }
 
-        size =
-            _a
-                    || (_s < poolSize
-                        && (System.currentTimeMillis() - selectRefreshTimeout)
-                            > selectRefreshTimeoutDuration)
-                ? -1
-                : _s;
+  /**
+   * Adds a connection to the pool when it is under load, or retires one that has been idle, see
+   * {@link AdaptivePoolSize}. Retired connections are out of the selection right away, but only
+   * closed once their in-flight requests and open streams completed. Errors are logged, so that one
+   * bad tick doesn't stop the resizing for good.
+   */
+  private void resizePool() {
+    try {
+      disposeRetired();
+
+      final WeightedReconnectingRSocket[] _m = members;
+      if (adaptivePoolSize.shouldGrow(_m)) {
+        logger.debug("growing the connection pool to {} connections", _m.length + 1);
+        createConnection(_m.length);
+        return;
       }
 
-      switch (size) {
-        case -1:
-          createConnection();
-          continue;
-        case 1:
-          rSocket = _m.get(0);
-          break;
-        case 2:
-          {
-            WeightedReconnectingRSocket rsc1 = _m.get(0);
-            WeightedReconnectingRSocket rsc2 = _m.get(1);
-
-            double w1 = algorithmicWeight(rsc1, lowerQuantile, higherQuantile);
-            double w2 = algorithmicWeight(rsc2, lowerQuantile, higherQuantile);
-            if (w1 < w2) {
-              rSocket = rsc2;
-            } else {
-              rSocket = rsc1;
-            }
-          }
-          break;
-        default:
-          {
-            WeightedReconnectingRSocket rsc1 = null;
-            WeightedReconnectingRSocket rsc2 = null;
-
-            for (int i = 0; i < EFFORT; i++) {
-              int i1 = ThreadLocalRandom.current().nextInt(size);
-              int i2 = ThreadLocalRandom.current().nextInt(size - 1);
-
-              if (i2 >= i1) {
-                i2++;
-              }
-              rsc1 = _m.get(i1);
-              rsc2 = _m.get(i2);
-              if (rsc1.availability() > 0.0 && rsc2.availability() > 0.0) {
-                break;
-              }
-            }
-
-            double w1 = algorithmicWeight(rsc1, lowerQuantile, higherQuantile);
-            double w2 = algorithmicWeight(rsc2, lowerQuantile, higherQuantile);
-            if (w1 < w2) {
-              rSocket = rsc2;
-            } else {
-              rSocket = rsc1;
-            }
-          }
+      long now = Clock.TICKER.unit().toMillis(Clock.TICKER.getEpochTime());
+      int idle = adaptivePoolSize.retirable(_m, now);
+      if (idle >= 0) {
+        retire(_m[idle]);
       }
+    } catch (Throwable t) {
+      logger.error("error resizing the connection pool", t);
+    }
+  }
 
-      synchronized (this) {
-        if (r == missed) {
-          break;
+  private synchronized void retire(final WeightedReconnectingRSocket rSocket) {
+    final WeightedReconnectingRSocket[] _m = members;
+    if (_m.length <= adaptivePoolSize.minSize()) {
+      return;
+    }
+
+    WeightedReconnectingRSocket[] next = new WeightedReconnectingRSocket[_m.length - 1];
+    int j = 0;
+    for (WeightedReconnectingRSocket member : _m) {
+      if (member != rSocket) {
+        if (j == next.length) {
+          return; // no longer a member
         }
+        next[j++] = member;
       }
     }
 
-    return rSocket;
+    logger.debug("retiring an idle connection, shrinking the pool to {}", next.length);
+    missed.incrementAndGet();
+    members = next;
+    retiring.add(rSocket);
+  }
+
+  private synchronized void disposeRetired() {
+    retiring.removeIf(
+        rSocket -> {
+          if (rSocket.pending() == 0 && rSocket.activeStreams() == 0) {
+            rSocket.dispose();
+            freeSuffixes.add(suffixes.remove(rSocket));
+            return true;
+          }
+          return false;
+        });
   }
 
-  private static double algorithmicWeight(
-      final WeightedRSocket socket, final Quantile lowerQuantile, final Quantile higherQuantile) {
-    if (socket == null || socket.availability() == 0.0) {
-      return 0.0;
+  /**
+   * Ejects the members whose success rate or latency stands out, see {@link OutlierEjection}.
+   * Errors are logged, so that one bad tick doesn't stop the checks for good.
+   */
+  private void checkOutliers() {
+    try {
+      outlierEjection.check(members, System.currentTimeMillis());
+    } catch (Throwable t) {
+      logger.error("error checking the connection pool for outliers", t);
     }
-    final int pendings = socket.pending();
-    double latency = socket.predictedLatency();
-
-    final double low = lowerQuantile.estimation();
-    final double high =
-        Math.max(
-            higherQuantile.estimation(),
-            low * 1.001); // ensure higherQuantile > lowerQuantile + .1%
-    final double bandWidth = Math.max(high - low, 1);
-
-    if (latency < low) {
-      latency /= calculateFactor(low, latency, bandWidth);
-    } else if (latency > high) {
-      latency *= calculateFactor(latency, high, bandWidth);
+  }
+
+  // the service is closing, its retired connections go with it whatever they still carry
+  private synchronized void disposeAllRetired() {
+    retiring.forEach(WeightedReconnectingRSocket::dispose);
+    retiring.clear();
+  }
+
+  @Override
+  public short frameMinorVersion() {
+    return frameMinorVersion;
+  }
+
+  @Override
+  public FrameDictionary dictionary() {
+    return dictionary;
+  }
+
+  @Override
+  public PayloadCompression compression() {
+    return compression;
+  }
+
+  public RSocket selectRSocket() {
+    WeightedReconnectingRSocket[] _m = members;
+    int size = _m.length;
+
+    // an adaptive pool is grown by its load instead
+    if (size < poolSize
+        && (size == 0
+            || (adaptivePoolSize == null
+                && (System.currentTimeMillis() - selectRefreshTimeout)
+                    > selectRefreshTimeoutDuration))) {
+      createConnection(size);
+      _m = members;
     }
 
-    return socket.availability() * 1.0 / (1.0 + latency * (pendings + 1));
+    return outlierEjection == null
+        ? loadBalancer.select(_m)
+        : outlierEjection.select(loadBalancer, _m);
   }
 
-  private static double calculateFactor(final double u, final double l, final double bandWidth) {
-    final double alpha = (u - l) / bandWidth;
-    return Math.pow(1 + alpha, EXP_FACTOR);
+  @Override
+  public Flux<OutlierEvent> outlierEvents() {
+    return outlierEjection == null ? Flux.empty() : outlierEjection.events();
   }
 
   private WeightedClientTransportSupplier selectClientTransportSupplier() {
     WeightedClientTransportSupplier supplier;
     int c;
     for (; ; ) {
-      final boolean selectTransports;
-      final List<WeightedClientTransportSupplier> _s;
-      synchronized (this) {
-        c = missed;
-        _s = suppliers;
+      c = missed.get();
+      List<WeightedClientTransportSupplier> _s = supplierList();
 
-        selectTransports = suppliers.isEmpty();
-      }
-
-      if (selectTransports) {
+      if (_s.isEmpty()) {
         seedClientTransportSupplier();
         continue;
       }
 
+      if (aperture != null) {
+        _s = aperture.select(_s);
+      }
+
       final int size = _s.size();
       if (size == 1) {
         supplier = _s.get(0);
@@ -625,12 +807,9 @@ public class DefaultBrokerService implements BrokerService, Disposable {
         supplier = w1 < w2 ? supplier1 : supplier2;
       }
 
-      synchronized (this) {
-        if (c == missed) {
-          supplier.select();
-          missed++;
-          break;
-        }
+      if (missed.compareAndSet(c, c + 1)) {
+        supplier.select();
+        break;
       }
     }
 
@@ -15,6 +15,9 @@
  */
 package com.netifi.broker;
 
+import com.netifi.broker.loadbalancer.LoadBalancer;
+import com.netifi.broker.loadbalancer.LoadBalancers;
+import com.netifi.broker.rsocket.PayloadCompression;
 import com.netifi.common.tags.Tag;
 import com.netifi.common.tags.Tags;
 import com.typesafe.config.*;
@@ -22,9 +25,11 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.net.UnknownHostException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.Supplier;
 
 /**
  * Gets current default configuration for {@link BrokerClient.Builder}. Can be overriden with System
@@ -208,6 +213,117 @@ final class DefaultBuilderConfig {
     return poolSize;
   }
 
+  static int getMinPoolSize() {
+    int minPoolSize = 0;
+    try {
+      minPoolSize = conf.getInt("netifi.client.minPoolSize");
+    } catch (ConfigException.Missing m) {
+    }
+    return minPoolSize;
+  }
+
+  static int getApertureSize() {
+    int apertureSize = 0;
+    try {
+      apertureSize = conf.getInt("netifi.client.apertureSize");
+    } catch (ConfigException.Missing m) {
+    }
+    return apertureSize;
+  }
+
+  static boolean getWarmUp() {
+    boolean warmUp = false;
+    try {
+      warmUp = conf.getBoolean("netifi.client.warmUp");
+    } catch (ConfigException.Missing m) {
+    }
+    return warmUp;
+  }
+
+  static int getReadyConnections() {
+    int readyConnections = 1;
+    try {
+      readyConnections = conf.getInt("netifi.client.readyConnections");
+    } catch (ConfigException.Missing m) {
+    }
+    return readyConnections;
+  }
+
+  static int getMaxPendingRequests() {
+    int maxPendingRequests = 0;
+    try {
+      maxPendingRequests = conf.getInt("netifi.client.maxPendingRequests");
+    } catch (ConfigException.Missing m) {
+    }
+    return maxPendingRequests;
+  }
+
+  static Duration getMaxConnectionWait() {
+    Duration maxConnectionWait = null;
+    try {
+      maxConnectionWait = conf.getDuration("netifi.client.maxConnectionWait");
+    } catch (ConfigException.Missing m) {
+    }
+    return maxConnectionWait;
+  }
+
+  static Supplier<LoadBalancer> getLoadBalancer() {
+    String loadBalancer = "weighted";
+    try {
+      loadBalancer = conf.getString("netifi.client.loadBalancer");
+    } catch (ConfigException.Missing m) {
+    }
+    // fail on an unknown name when the builder is created rather than when a client is built
+    LoadBalancers.fromName(loadBalancer);
+    String name = loadBalancer;
+    return () -> LoadBalancers.fromName(name);
+  }
+
+  static boolean getOutlierEjection() {
+    boolean outlierEjection = false;
+    try {
+      outlierEjection = conf.getBoolean("netifi.client.outlierEjection");
+    } catch (ConfigException.Missing m) {
+    }
+    return outlierEjection;
+  }
+
+  static boolean getCompactFrames() {
+    boolean compactFrames = false;
+    try {
+      compactFrames = conf.getBoolean("netifi.client.compactFrames");
+    } catch (ConfigException.Missing m) {
+    }
+    return compactFrames;
+  }
+
+  static boolean getFrameDictionary() {
+    boolean frameDictionary = false;
+    try {
+      frameDictionary = conf.getBoolean("netifi.client.frameDictionary");
+    } catch (ConfigException.Missing m) {
+    }
+    return frameDictionary;
+  }
+
+  static boolean getCompression() {
+    boolean compression = false;
+    try {
+      compression = conf.getBoolean("netifi.client.compression");
+    } catch (ConfigException.Missing m) {
+    }
+    return compression;
+  }
+
+  static int getCompressionThreshold() {
+    int compressionThreshold = PayloadCompression.DEFAULT_THRESHOLD;
+    try {
+      compressionThreshold = conf.getInt("netifi.client.compressionThreshold");
+    } catch (ConfigException.Missing m) {
+    }
+    return compressionThreshold;
+  }
+
   static int getMinHostsAtStartup() {
     int minHostsAtStartup = 3;
     try {
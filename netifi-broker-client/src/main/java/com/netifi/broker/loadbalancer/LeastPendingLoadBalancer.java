@@ -0,0 +1,68 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.loadbalancer;
+
+import com.netifi.broker.rsocket.WeightedRSocket;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Power-of-two-choices that picks the available candidate with fewer pending requests. Latency is
+ * ignored, so new connections take their share of traffic right away.
+ */
+public class LeastPendingLoadBalancer implements LoadBalancer {
+
+  @Override
+  public <T extends WeightedRSocket> T select(T[] members) {
+    final int size = members.length;
+    switch (size) {
+      case 0:
+        throw new IllegalStateException("no connections available in the pool");
+      case 1:
+        return members[0];
+      default:
+        {
+          T rsc1;
+          T rsc2;
+          if (size == 2) {
+            rsc1 = members[0];
+            rsc2 = members[1];
+          } else {
+            int i1 = ThreadLocalRandom.current().nextInt(size);
+            int i2 = ThreadLocalRandom.current().nextInt(size - 1);
+
+            if (i2 >= i1) {
+              i2++;
+            }
+            rsc1 = members[i1];
+            rsc2 = members[i2];
+          }
+
+          boolean a1 = rsc1.availability() > 0.0;
+          boolean a2 = rsc2.availability() > 0.0;
+          if (a1 != a2) {
+            return a1 ? rsc1 : rsc2;
+          }
+
+          int p1 = rsc1.pending();
+          int p2 = rsc2.pending();
+          if (p1 == p2) {
+            return ThreadLocalRandom.current().nextBoolean() ? rsc1 : rsc2;
+          }
+          return p1 < p2 ? rsc1 : rsc2;
+        }
+    }
+  }
+}
@@ -0,0 +1,37 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.loadbalancer;
+
+import com.netifi.broker.rsocket.WeightedRSocket;
+
+/**
+ * Strategy used by the broker connection pool to pick the connection a request is sent on.
+ * Implementations are called on every request from many threads at once, so they must be
+ * thread-safe and should not block or allocate.
+ *
+ * @see LoadBalancers
+ */
+public interface LoadBalancer {
+  /**
+   * Selects one of the members of the pool.
+   *
+   * @param members an immutable snapshot of the pool that contains at least one member; it must not
+   *     be modified
+   * @param <T> the type of the pool members
+   * @return the selected member
+   */
+  <T extends WeightedRSocket> T select(T[] members);
+}
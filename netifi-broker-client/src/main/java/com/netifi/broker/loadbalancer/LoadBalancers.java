@@ -0,0 +1,82 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.loadbalancer;
+
+/** Factory methods for the {@link LoadBalancer} strategies that ship with the client. */
+public final class LoadBalancers {
+  private LoadBalancers() {}
+
+  /**
+   * Power-of-two-choices weighted by availability, pending requests and predicted latency relative
+   * to the pool's latency band. This is the default strategy.
+   *
+   * @return a new weighted load balancer
+   */
+  public static LoadBalancer weighted() {
+    return new WeightedLoadBalancer();
+  }
+
+  /**
+   * Power-of-two-choices that only looks at the number of pending requests. It does not penalize
+   * connections that have no latency history yet.
+   *
+   * @return a new least pending load balancer
+   */
+  public static LoadBalancer leastPending() {
+    return new LeastPendingLoadBalancer();
+  }
+
+  /**
+   * Cycles through the available connections in order.
+   *
+   * @return a new round robin load balancer
+   */
+  public static LoadBalancer roundRobin() {
+    return new RoundRobinLoadBalancer();
+  }
+
+  /**
+   * Power-of-two-choices on the peak-sensitive moving average of latency multiplied by the number
+   * of pending requests.
+   *
+   * @return a new Peak-EWMA load balancer
+   */
+  public static LoadBalancer peakEwma() {
+    return new PeakEwmaLoadBalancer();
+  }
+
+  /**
+   * Looks up a load balancer by name, used to select a strategy from configuration.
+   *
+   * @param name one of {@code weighted}, {@code leastPending}, {@code roundRobin} or {@code
+   *     peakEwma}
+   * @return a new load balancer
+   */
+  public static LoadBalancer fromName(String name) {
+    switch (name) {
+      case "weighted":
+        return weighted();
+      case "leastPending":
+        return leastPending();
+      case "roundRobin":
+        return roundRobin();
+      case "peakEwma":
+        return peakEwma();
+      default:
+        throw new IllegalArgumentException("unknown load balancer " + name);
+    }
+  }
+}
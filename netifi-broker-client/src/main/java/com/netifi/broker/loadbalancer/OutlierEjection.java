@@ -0,0 +1,293 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.loadbalancer;
+
+import com.netifi.broker.rsocket.WeightedRSocket;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.DirectProcessor;
+import reactor.core.publisher.Flux;
+
+/**
+ * Takes the outliers of a pool out of the selection of its {@link LoadBalancer}. A member is
+ * ejected when its success rate falls under {@code minSuccessRate}, or its median latency exceeds
+ * {@code latencyFactor} times the lower median latency of the pool. It stays out for {@code
+ * baseEjectionMillis} times the number of its consecutive ejections, and is then probed: it gets
+ * a share of its selections that grows linearly over {@code probeMillis}, and is ejected again for
+ * longer if it is still an outlier. At most half of the pool is ejected at any time.
+ *
+ * <p>{@link #check} runs periodically and is the only place the ejection state changes. The
+ * selection path reads an immutable snapshot of the eligible members, rebuilt on change.
+ */
+public class OutlierEjection {
+  public static final double DEFAULT_MIN_SUCCESS_RATE = 0.5;
+  public static final double DEFAULT_LATENCY_FACTOR = 5.0;
+  public static final long DEFAULT_BASE_EJECTION_MILLIS = 10_000;
+  public static final long DEFAULT_PROBE_MILLIS = 10_000;
+
+  private static final Logger logger = LoggerFactory.getLogger(OutlierEjection.class);
+  private static final double MAX_EJECTED_SHARE = 0.5;
+  private static final int MAX_EJECTION_MULTIPLIER = 10;
+
+  private final double minSuccessRate;
+  private final double latencyFactor;
+  private final long baseEjectionMillis;
+  private final long probeMillis;
+  // guarded by this
+  private final Map<WeightedRSocket, Ejection> ejections = new IdentityHashMap<>();
+  // start of the probe of the members being probed, read on the selection path
+  private final Map<WeightedRSocket, Long> probing = new ConcurrentHashMap<>();
+  private final DirectProcessor<OutlierEvent> events = DirectProcessor.create();
+  private volatile int version;
+  private volatile Snapshot snapshot = new Snapshot(null, -1, null, null);
+
+  public OutlierEjection() {
+    this(
+        DEFAULT_MIN_SUCCESS_RATE,
+        DEFAULT_LATENCY_FACTOR,
+        DEFAULT_BASE_EJECTION_MILLIS,
+        DEFAULT_PROBE_MILLIS);
+  }
+
+  public OutlierEjection(
+      double minSuccessRate, double latencyFactor, long baseEjectionMillis, long probeMillis) {
+    this.minSuccessRate = minSuccessRate;
+    this.latencyFactor = latencyFactor;
+    this.baseEjectionMillis = baseEjectionMillis;
+    this.probeMillis = probeMillis;
+  }
+
+  /** @return the ejection, probing and restoration of members as they happen */
+  public Flux<OutlierEvent> events() {
+    return events;
+  }
+
+  /**
+   * Selects a member with the load balancer among the members that are not ejected. A member being
+   * probed that was selected is swapped for one of the healthy members, unless its probe is far
+   * enough along.
+   */
+  public <T extends WeightedRSocket> T select(LoadBalancer loadBalancer, T[] members) {
+    Snapshot s = eligible(members);
+    T selected = loadBalancer.select(s.<T>eligible());
+
+    if (!probing.isEmpty()) {
+      Long since = probing.get(selected);
+      if (since != null) {
+        T[] healthy = s.healthy();
+        double share = (double) (System.currentTimeMillis() - since) / probeMillis;
+        if (healthy.length > 0 && ThreadLocalRandom.current().nextDouble() >= share) {
+          selected = loadBalancer.select(healthy);
+        }
+      }
+    }
+
+    return selected;
+  }
+
+  private Snapshot eligible(WeightedRSocket[] members) {
+    Snapshot s = snapshot;
+    int v = version;
+    if (s.members == members && s.version == v) {
+      return s;
+    }
+
+    synchronized (this) {
+      WeightedRSocket[] eligible = Arrays.copyOf(members, members.length);
+      WeightedRSocket[] healthy = Arrays.copyOf(members, members.length);
+      int e = 0;
+      int h = 0;
+      for (WeightedRSocket member : members) {
+        Ejection ejection = ejections.get(member);
+        if (ejection == null) {
+          eligible[e++] = member;
+          healthy[h++] = member;
+        } else if (ejection.probingSince > 0) {
+          eligible[e++] = member;
+        }
+      }
+      // never leave the load balancer without a member to pick
+      s =
+          new Snapshot(
+              members,
+              v,
+              e == 0 ? members : Arrays.copyOf(eligible, e),
+              Arrays.copyOf(healthy, h));
+      snapshot = s;
+      return s;
+    }
+  }
+
+  /**
+   * Ejects the outliers among the members, and probes or restores the ejected ones whose time is
+   * up.
+   *
+   * @param members the current members of the pool
+   * @param now the current time in milliseconds
+   */
+  public synchronized void check(WeightedRSocket[] members, long now) {
+    boolean changed = false;
+
+    Iterator<Map.Entry<WeightedRSocket, Ejection>> iterator = ejections.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<WeightedRSocket, Ejection> entry = iterator.next();
+      WeightedRSocket member = entry.getKey();
+      Ejection ejection = entry.getValue();
+      if (!contains(members, member)) {
+        iterator.remove();
+        probing.remove(member);
+        changed = true;
+      } else if (ejection.probingSince == 0 && now >= ejection.until) {
+        ejection.probingSince = now;
+        probing.put(member, now);
+        changed = true;
+        publish(OutlierEvent.Type.PROBING, member, null);
+      } else if (ejection.probingSince > 0 && now - ejection.probingSince >= probeMillis) {
+        iterator.remove();
+        probing.remove(member);
+        changed = true;
+        publish(OutlierEvent.Type.RESTORED, member, null);
+      }
+    }
+
+    int ejected = 0;
+    for (Ejection ejection : ejections.values()) {
+      if (ejection.probingSince == 0) {
+        ejected++;
+      }
+    }
+
+    double poolLatency = lowerMedianLatency(members);
+    int maxEjected = (int) (members.length * MAX_EJECTED_SHARE);
+    for (WeightedRSocket member : members) {
+      if (ejected >= maxEjected) {
+        break;
+      }
+
+      // the stats of a member being probed are stale until its probe traffic has caught up
+      Ejection ejection = ejections.get(member);
+      if (ejection != null
+          && (ejection.probingSince == 0 || now - ejection.probingSince < probeMillis / 2)) {
+        continue;
+      }
+
+      String reason = null;
+      double successRate = member.errorPercentage();
+      double latency = member.medianLatency();
+      if (successRate < minSuccessRate) {
+        reason = "success rate " + successRate + " under " + minSuccessRate;
+      } else if (poolLatency > 0.0 && latency > latencyFactor * poolLatency) {
+        reason = "median latency " + latency + " over " + latencyFactor + "x " + poolLatency;
+      }
+
+      if (reason != null) {
+        if (ejection == null) {
+          ejection = new Ejection();
+          ejections.put(member, ejection);
+        }
+        ejection.count = Math.min(ejection.count + 1, MAX_EJECTION_MULTIPLIER);
+        ejection.until = now + baseEjectionMillis * ejection.count;
+        ejection.probingSince = 0;
+        probing.remove(member);
+        ejected++;
+        changed = true;
+        publish(OutlierEvent.Type.EJECTED, member, reason);
+      }
+    }
+
+    if (changed) {
+      version++;
+    }
+  }
+
+  private void publish(OutlierEvent.Type type, WeightedRSocket member, String reason) {
+    if (reason != null) {
+      logger.info("{} {}: {}", type, member, reason);
+    } else {
+      logger.info("{} {}", type, member);
+    }
+    events.onNext(new OutlierEvent(type, member, reason));
+  }
+
+  private static boolean contains(WeightedRSocket[] members, WeightedRSocket member) {
+    for (WeightedRSocket m : members) {
+      if (m == member) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * The lower median of the median latencies of the members with latency history. Unlike the
+   * average, a single outlier can not drag it up, even in a pool of two.
+   */
+  private static double lowerMedianLatency(WeightedRSocket[] members) {
+    double[] latencies = new double[members.length];
+    int n = 0;
+    for (WeightedRSocket member : members) {
+      double latency = member.medianLatency();
+      if (latency > 0.0) {
+        latencies[n++] = latency;
+      }
+    }
+    if (n < 2) {
+      return 0.0;
+    }
+    Arrays.sort(latencies, 0, n);
+    return latencies[(n - 1) / 2];
+  }
+
+  private static final class Ejection {
+    int count;
+    long until;
+    long probingSince;
+  }
+
+  private static final class Snapshot {
+    final WeightedRSocket[] members;
+    final int version;
+    final WeightedRSocket[] eligible;
+    final WeightedRSocket[] healthy;
+
+    Snapshot(
+        WeightedRSocket[] members,
+        int version,
+        WeightedRSocket[] eligible,
+        WeightedRSocket[] healthy) {
+      this.members = members;
+      this.version = version;
+      this.eligible = eligible;
+      this.healthy = healthy;
+    }
+
+    @SuppressWarnings("unchecked")
+    <T extends WeightedRSocket> T[] eligible() {
+      return (T[]) eligible;
+    }
+
+    @SuppressWarnings("unchecked")
+    <T extends WeightedRSocket> T[] healthy() {
+      return (T[]) healthy;
+    }
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.loadbalancer;
+
+import com.netifi.broker.rsocket.WeightedRSocket;
+
+/** A change of the ejection state of a pool member, published by {@link OutlierEjection}. */
+public final class OutlierEvent {
+  public enum Type {
+    /** The member was removed from the selection. */
+    EJECTED,
+    /** The ejection expired, the member is given a growing share of the requests again. */
+    PROBING,
+    /** The member is back in full rotation. */
+    RESTORED
+  }
+
+  private final Type type;
+  private final WeightedRSocket member;
+  private final String reason;
+
+  OutlierEvent(Type type, WeightedRSocket member, String reason) {
+    this.type = type;
+    this.member = member;
+    this.reason = reason;
+  }
+
+  public Type type() {
+    return type;
+  }
+
+  public WeightedRSocket member() {
+    return member;
+  }
+
+  /** @return why the member was ejected, or {@code null} for the other events */
+  public String reason() {
+    return reason;
+  }
+
+  @Override
+  public String toString() {
+    return "OutlierEvent{" + "type=" + type + ", member=" + member + ", reason=" + reason + '}';
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.loadbalancer;
+
+import com.netifi.broker.rsocket.WeightedRSocket;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Power-of-two-choices on the Peak-EWMA cost of a connection: its peak-sensitive moving average of
+ * latency multiplied by the number of pending requests plus one. Latency spikes raise the cost
+ * immediately and decay slowly, so slow connections are avoided quickly without permanently
+ * penalizing connections that have no history yet.
+ */
+public class PeakEwmaLoadBalancer implements LoadBalancer {
+  private static final double PENALTY = Long.MAX_VALUE >> 16;
+
+  @Override
+  public <T extends WeightedRSocket> T select(T[] members) {
+    final int size = members.length;
+    switch (size) {
+      case 0:
+        throw new IllegalStateException("no connections available in the pool");
+      case 1:
+        return members[0];
+      default:
+        {
+          T rsc1;
+          T rsc2;
+          if (size == 2) {
+            rsc1 = members[0];
+            rsc2 = members[1];
+          } else {
+            int i1 = ThreadLocalRandom.current().nextInt(size);
+            int i2 = ThreadLocalRandom.current().nextInt(size - 1);
+
+            if (i2 >= i1) {
+              i2++;
+            }
+            rsc1 = members[i1];
+            rsc2 = members[i2];
+          }
+
+          return cost(rsc1) > cost(rsc2) ? rsc2 : rsc1;
+        }
+    }
+  }
+
+  private static double cost(final WeightedRSocket socket) {
+    if (socket.availability() == 0.0) {
+      return Double.MAX_VALUE;
+    }
+
+    final int pending = socket.pending();
+    final double latency = socket.peakLatency();
+    if (latency == 0.0 && pending != 0) {
+      // no history yet, but requests are in flight
+      return PENALTY + pending;
+    }
+
+    return latency * (pending + 1);
+  }
+}
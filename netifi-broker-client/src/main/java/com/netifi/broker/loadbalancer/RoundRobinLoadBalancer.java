@@ -0,0 +1,45 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.loadbalancer;
+
+import com.netifi.broker.rsocket.WeightedRSocket;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cycles through the members of the pool, skipping members that are not available. When no member
+ * is available the next member in order is returned.
+ */
+public class RoundRobinLoadBalancer implements LoadBalancer {
+  private final AtomicInteger next = new AtomicInteger();
+
+  @Override
+  public <T extends WeightedRSocket> T select(T[] members) {
+    final int size = members.length;
+    if (size == 0) {
+      throw new IllegalStateException("no connections available in the pool");
+    }
+
+    final int start = next.getAndIncrement() & Integer.MAX_VALUE;
+    for (int i = 0; i < size; i++) {
+      T rsc = members[(start + i) % size];
+      if (rsc.availability() > 0.0) {
+        return rsc;
+      }
+    }
+
+    return members[start % size];
+  }
+}
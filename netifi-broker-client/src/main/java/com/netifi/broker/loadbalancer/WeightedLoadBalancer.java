@@ -0,0 +1,191 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.loadbalancer;
+
+import com.netifi.broker.rsocket.WeightedRSocket;
+import com.netifi.common.stats.LatencySketch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Power-of-two-choices where each candidate is weighted by its availability, pending requests and
+ * predicted latency. Latencies outside of the band between the lower and higher latency quantile
+ * are scaled by an exponential factor, which strongly favors fast connections and penalizes slow
+ * ones.
+ *
+ * <p>Every member keeps its own latency sketch. The pool-wide band is read from the merge of them
+ * at most once per {@link #BAND_REFRESH_INTERVAL_MILLIS}, so busy members weigh in proportion to
+ * their traffic. An instance should not be shared between clients.
+ */
+public class WeightedLoadBalancer implements LoadBalancer {
+  public static final double DEFAULT_LOWER_QUANTILE = 0.5;
+  public static final double DEFAULT_HIGHER_QUANTILE = 0.8;
+  public static final long BAND_REFRESH_INTERVAL_MILLIS = 1_000;
+  private static final double EXP_FACTOR = 4.0;
+  private static final int EFFORT = 5;
+  private static final AtomicIntegerFieldUpdater<WeightedLoadBalancer> REFRESHING =
+      AtomicIntegerFieldUpdater.newUpdater(WeightedLoadBalancer.class, "refreshing");
+
+  // only touched by the thread that won the refresh
+  private LatencySketch band;
+  private volatile int refreshing;
+  private volatile double lowerQuantile;
+  private volatile double higherQuantile;
+  private volatile long nextBandRefresh;
+
+  @Override
+  public <T extends WeightedRSocket> T select(T[] members) {
+    final int size = members.length;
+    if (size > 1) {
+      refreshBand(members);
+    }
+
+    switch (size) {
+      case 0:
+        throw new IllegalStateException("no connections available in the pool");
+      case 1:
+        return members[0];
+      case 2:
+        {
+          T rsc1 = members[0];
+          T rsc2 = members[1];
+
+          double w1 = algorithmicWeight(rsc1);
+          double w2 = algorithmicWeight(rsc2);
+          return w1 < w2 ? rsc2 : rsc1;
+        }
+      default:
+        {
+          T rsc1 = null;
+          T rsc2 = null;
+
+          for (int i = 0; i < EFFORT; i++) {
+            int i1 = ThreadLocalRandom.current().nextInt(size);
+            int i2 = ThreadLocalRandom.current().nextInt(size - 1);
+
+            if (i2 >= i1) {
+              i2++;
+            }
+            rsc1 = members[i1];
+            rsc2 = members[i2];
+            if (rsc1.availability() > 0.0 && rsc2.availability() > 0.0) {
+              break;
+            }
+          }
+
+          double w1 = algorithmicWeight(rsc1);
+          double w2 = algorithmicWeight(rsc2);
+          return w1 < w2 ? rsc2 : rsc1;
+        }
+    }
+  }
+
+  /**
+   * Merges the latency sketches of the members into a scratch sketch and reads the pool-wide band
+   * from it. Members that do not expose a sketch only count when none does, through the mean of
+   * their quantiles. Only one thread refreshes at a time, the others keep using the current band.
+   */
+  private void refreshBand(final WeightedRSocket[] members) {
+    final long now = System.currentTimeMillis();
+    if (now < nextBandRefresh || !REFRESHING.compareAndSet(this, 0, 1)) {
+      return;
+    }
+
+    try {
+      nextBandRefresh = now + BAND_REFRESH_INTERVAL_MILLIS;
+
+      LatencySketch merged = null;
+      for (WeightedRSocket member : members) {
+        LatencySketch latencies = member.latencies();
+        if (latencies != null) {
+          if (merged == null) {
+            merged = band(latencies);
+          }
+          merged.merge(latencies);
+        }
+      }
+
+      if (merged != null && merged.count() > 0.0) {
+        lowerQuantile = merged.quantile(DEFAULT_LOWER_QUANTILE);
+        higherQuantile = merged.quantile(DEFAULT_HIGHER_QUANTILE);
+        return;
+      }
+
+      double low = 0.0;
+      double high = 0.0;
+      int count = 0;
+      for (WeightedRSocket member : members) {
+        double l = member.lowerQuantileLatency();
+        if (l > 0.0) {
+          low += l;
+          high += member.higherQuantileLatency();
+          count++;
+        }
+      }
+
+      if (count > 0) {
+        lowerQuantile = low / count;
+        higherQuantile = high / count;
+      }
+    } finally {
+      refreshing = 0;
+    }
+  }
+
+  // an empty sketch with the accuracy and range of the member sketches, that does not decay: the
+  // member sketches already do
+  private LatencySketch band(LatencySketch like) {
+    LatencySketch b = band;
+    if (b == null
+        || b.relativeAccuracy() != like.relativeAccuracy()
+        || b.maxValue() != like.maxValue()) {
+      b = new LatencySketch(0.5, like.relativeAccuracy(), like.maxValue(), 0, TimeUnit.SECONDS);
+      band = b;
+    } else {
+      b.reset();
+    }
+    return b;
+  }
+
+  private double algorithmicWeight(final WeightedRSocket socket) {
+    if (socket == null || socket.availability() == 0.0) {
+      return 0.0;
+    }
+    final int pendings = socket.pending();
+    double latency = socket.predictedLatency();
+
+    final double low = lowerQuantile;
+    final double high =
+        Math.max(
+            higherQuantile,
+            low * 1.001); // ensure higherQuantile > lowerQuantile + .1%
+    final double bandWidth = Math.max(high - low, 1);
+
+    if (latency < low) {
+      latency /= calculateFactor(low, latency, bandWidth);
+    } else if (latency > high) {
+      latency *= calculateFactor(latency, high, bandWidth);
+    }
+
+    return socket.availability() * 1.0 / (1.0 + latency * (pendings + 1));
+  }
+
+  private static double calculateFactor(final double u, final double l, final double bandWidth) {
+    final double alpha = (u - l) / bandWidth;
+    return Math.pow(1 + alpha, EXP_FACTOR);
+  }
+}
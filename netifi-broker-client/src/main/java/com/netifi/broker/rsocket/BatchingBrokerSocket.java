@@ -0,0 +1,228 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.rsocket;
+
+import com.netifi.broker.frames.BatchFlyweight;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import io.rsocket.util.ByteBufPayload;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.reactivestreams.Publisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Coalesces the fire and forget messages sent along a route into {@link
+ * com.netifi.broker.frames.FrameType#BATCH} frames, so that small messages don't each cost an
+ * RSocket frame and a routing header. A batch is sent once it holds {@code maxBatchSize} messages
+ * or {@code maxBatchBytes} bytes, or {@code maxBatchDelay} after its first message, whichever comes
+ * first. Every other interaction is passed on to the socket it decorates as is.
+ *
+ * <p>The mono returned by {@link #fireAndForget(Payload)} completes as soon as the message is added
+ * to a batch. Errors sending a batch are only logged, and messages still batched when the socket
+ * is disposed are sent right away. Messages sent after that are released and error the mono.
+ */
+public class BatchingBrokerSocket implements BrokerSocket {
+  public static final int DEFAULT_MAX_BATCH_BYTES = 64 * 1024;
+
+  private static final Logger logger = LoggerFactory.getLogger(BatchingBrokerSocket.class);
+
+  private final BrokerSocket delegate;
+  private final ByteBuf route;
+  private final Supplier<RSocket> rSocketSupplier;
+  private final int maxBatchSize;
+  private final int maxBatchBytes;
+  private final long maxBatchDelayNanos;
+  private final Scheduler scheduler;
+
+  private ByteBuf entries;
+  private int entryCount;
+  private Disposable scheduledFlush;
+  private boolean disposed;
+
+  public BatchingBrokerSocket(
+      BrokerSocket delegate,
+      ByteBuf route,
+      Supplier<RSocket> rSocketSupplier,
+      int maxBatchSize,
+      Duration maxBatchDelay) {
+    this(
+        delegate,
+        route,
+        rSocketSupplier,
+        maxBatchSize,
+        DEFAULT_MAX_BATCH_BYTES,
+        maxBatchDelay,
+        Schedulers.parallel());
+  }
+
+  /**
+   * @param delegate the socket of the same route that every interaction but fire and forget goes
+   *     through
+   * @param route the route of the batches, from one of the {@code encodeRoute} methods of the
+   *     group, broadcast and shard flyweights
+   */
+  public BatchingBrokerSocket(
+      BrokerSocket delegate,
+      ByteBuf route,
+      Supplier<RSocket> rSocketSupplier,
+      int maxBatchSize,
+      int maxBatchBytes,
+      Duration maxBatchDelay,
+      Scheduler scheduler) {
+    if (maxBatchSize <= 0) {
+      throw new IllegalArgumentException("maxBatchSize must be greater than 0");
+    }
+    if (maxBatchBytes <= 0) {
+      throw new IllegalArgumentException("maxBatchBytes must be greater than 0");
+    }
+    this.delegate = delegate;
+    this.route = route;
+    this.rSocketSupplier = rSocketSupplier;
+    this.maxBatchSize = maxBatchSize;
+    this.maxBatchBytes = maxBatchBytes;
+    this.maxBatchDelayNanos = maxBatchDelay.toNanos();
+    this.scheduler = scheduler;
+  }
+
+  @Override
+  public Mono<Void> fireAndForget(Payload payload) {
+    return Mono.fromRunnable(() -> add(payload));
+  }
+
+  private void add(Payload payload) {
+    ByteBuf batch = null;
+    int batchSize = 0;
+    try {
+      synchronized (this) {
+        if (disposed) {
+          throw new IllegalStateException("batching broker socket is disposed");
+        }
+        if (entries == null) {
+          entries = ByteBufAllocator.DEFAULT.buffer();
+          scheduledFlush =
+              scheduler.schedule(this::flush, maxBatchDelayNanos, TimeUnit.NANOSECONDS);
+        }
+
+        BatchFlyweight.writeEntry(entries, route, payload.sliceMetadata(), payload.sliceData());
+        entryCount++;
+
+        if (entryCount >= maxBatchSize || entries.readableBytes() >= maxBatchBytes) {
+          scheduledFlush.dispose();
+          batch = entries;
+          batchSize = entryCount;
+          reset();
+        }
+      }
+    } finally {
+      payload.release();
+    }
+
+    if (batch != null) {
+      send(batch, batchSize);
+    }
+  }
+
+  /** Sends the messages batched so far, if any, without waiting for the batch to fill up. */
+  public void flush() {
+    ByteBuf batch;
+    int batchSize;
+    synchronized (this) {
+      if (entries == null) {
+        return;
+      }
+      scheduledFlush.dispose();
+      batch = entries;
+      batchSize = entryCount;
+      reset();
+    }
+
+    send(batch, batchSize);
+  }
+
+  private void reset() {
+    entries = null;
+    entryCount = 0;
+    scheduledFlush = null;
+  }
+
+  private void send(ByteBuf batch, int batchSize) {
+    ByteBuf metadata;
+    try {
+      metadata = BatchFlyweight.encode(ByteBufAllocator.DEFAULT, route, batchSize);
+    } catch (Throwable t) {
+      batch.release();
+      logger.error("error encoding a batch of {} messages", batchSize, t);
+      return;
+    }
+
+    Mono.defer(() -> rSocketSupplier.get().fireAndForget(ByteBufPayload.create(batch, metadata)))
+        .subscribe(null, t -> logger.error("error sending a batch of {} messages", batchSize, t));
+  }
+
+  @Override
+  public Mono<Payload> requestResponse(Payload payload) {
+    return delegate.requestResponse(payload);
+  }
+
+  @Override
+  public Flux<Payload> requestStream(Payload payload) {
+    return delegate.requestStream(payload);
+  }
+
+  @Override
+  public Flux<Payload> requestChannel(Publisher<Payload> payloads) {
+    return delegate.requestChannel(payloads);
+  }
+
+  @Override
+  public Mono<Void> metadataPush(Payload payload) {
+    return delegate.metadataPush(payload);
+  }
+
+  @Override
+  public double availability() {
+    return delegate.availability();
+  }
+
+  @Override
+  public void dispose() {
+    synchronized (this) {
+      disposed = true;
+    }
+    flush();
+    delegate.dispose();
+  }
+
+  @Override
+  public boolean isDisposed() {
+    return delegate.isDisposed();
+  }
+
+  @Override
+  public Mono<Void> onClose() {
+    return delegate.onClose();
+  }
+}
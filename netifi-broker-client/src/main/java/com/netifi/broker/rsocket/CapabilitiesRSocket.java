@@ -0,0 +1,58 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.rsocket;
+
+import com.netifi.broker.frames.CapabilitiesFlyweight;
+import com.netifi.broker.frames.FrameHeaderFlyweight;
+import com.netifi.broker.frames.FrameType;
+import io.netty.buffer.ByteBuf;
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import io.rsocket.util.RSocketProxy;
+import reactor.core.publisher.Mono;
+
+/**
+ * Responder of a single broker connection. It keeps the flags of the {@link
+ * FrameType#CAPABILITIES} frames the broker pushes, and hands every other request to the client's
+ * responder.
+ */
+class CapabilitiesRSocket extends RSocketProxy {
+  private volatile short capabilities;
+
+  CapabilitiesRSocket(RSocket source) {
+    super(source);
+  }
+
+  /** @return whether the broker announced the capability on this connection */
+  boolean supports(short capability) {
+    return (capabilities & capability) == capability;
+  }
+
+  @Override
+  public Mono<Void> metadataPush(Payload payload) {
+    ByteBuf metadata = payload.sliceMetadata();
+    if (metadata.readableBytes() >= FrameHeaderFlyweight.BYTES
+        && FrameHeaderFlyweight.frameType(metadata) == FrameType.CAPABILITIES) {
+      try {
+        capabilities = CapabilitiesFlyweight.flags(metadata);
+        return Mono.empty();
+      } finally {
+        payload.release();
+      }
+    }
+    return super.metadataPush(payload);
+  }
+}
@@ -0,0 +1,225 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.rsocket;
+
+import com.netifi.common.stats.ConcurrentEwma;
+import com.netifi.common.time.Clock;
+import io.netty.util.ReferenceCountUtil;
+import io.rsocket.Payload;
+import io.rsocket.exceptions.RejectedException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Limits the number of requests in flight through a {@link BrokerSocket}, and learns the limit from
+ * their round trip times in the way of a gradient limiter. The long term average of the round trip
+ * times stands for the latency of the destination without load. While responses come back about as
+ * fast, the limit grows by its square root; once they take longer, the limit shrinks by the ratio
+ * between the two, down to half of it per sample. Requests over the limit are rejected right away
+ * with a {@link RejectedException} instead of queueing up in the broker and the responders.
+ *
+ * <p>Round trip times are taken with the same clock and averages as the statistics of {@link
+ * WeightedReconnectingRSocket}, from request responses and fire and forget messages. Streams and
+ * channels hold a slot of the limit until they terminate but are not sampled. Metadata pushes are
+ * not limited.
+ */
+public class ConcurrencyLimitedBrokerSocket implements BrokerSocket {
+  public static final int DEFAULT_INITIAL_LIMIT = 20;
+  public static final int DEFAULT_MIN_LIMIT = 1;
+  public static final int DEFAULT_MAX_LIMIT = 1_000;
+
+  private static final Clock CLOCK = Clock.TICKER;
+  // how much slower than the long term average a response may be before the limit shrinks
+  private static final double TOLERANCE = 1.5;
+  private static final double SMOOTHING = 0.2;
+  private static final long LONG_RTT_HALF_LIFE_SECONDS = 10;
+  private static final AtomicLongFieldUpdater<ConcurrencyLimitedBrokerSocket> ESTIMATED_LIMIT =
+      AtomicLongFieldUpdater.newUpdater(ConcurrencyLimitedBrokerSocket.class, "estimatedLimit");
+
+  private final BrokerSocket delegate;
+  private final int minLimit;
+  private final int maxLimit;
+  private final ConcurrentEwma longRtt;
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final LongAdder rejected = new LongAdder();
+  private volatile long estimatedLimit; // raw bits of the limit
+
+  public ConcurrencyLimitedBrokerSocket(BrokerSocket delegate) {
+    this(delegate, DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT);
+  }
+
+  public ConcurrencyLimitedBrokerSocket(
+      BrokerSocket delegate, int initialLimit, int minLimit, int maxLimit) {
+    if (minLimit <= 0 || minLimit > initialLimit || initialLimit > maxLimit) {
+      throw new IllegalArgumentException(
+          "limits must satisfy 0 < minLimit <= initialLimit <= maxLimit");
+    }
+    this.delegate = delegate;
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.longRtt = new ConcurrentEwma(LONG_RTT_HALF_LIFE_SECONDS, TimeUnit.SECONDS, 0.0);
+    this.estimatedLimit = Double.doubleToRawLongBits(initialLimit);
+  }
+
+  /** @return the number of requests that may currently be in flight */
+  public int limit() {
+    return (int) Double.longBitsToDouble(estimatedLimit);
+  }
+
+  /** @return the number of requests currently in flight */
+  public int inFlight() {
+    return inFlight.get();
+  }
+
+  /** @return the number of requests rejected so far because the limit was reached */
+  public long rejected() {
+    return rejected.sum();
+  }
+
+  @Override
+  public Mono<Void> fireAndForget(Payload payload) {
+    return Mono.defer(
+        () -> {
+          if (!tryAcquire()) {
+            return reject(payload);
+          }
+          long start = CLOCK.getEpochTime();
+          return delegate
+              .fireAndForget(payload)
+              .doOnSuccess(v -> sample(CLOCK.getEpochTime() - start))
+              .doFinally(s -> inFlight.decrementAndGet());
+        });
+  }
+
+  @Override
+  public Mono<Payload> requestResponse(Payload payload) {
+    return Mono.defer(
+        () -> {
+          if (!tryAcquire()) {
+            return reject(payload);
+          }
+          long start = CLOCK.getEpochTime();
+          return delegate
+              .requestResponse(payload)
+              .doOnSuccess(p -> sample(CLOCK.getEpochTime() - start))
+              .doFinally(s -> inFlight.decrementAndGet());
+        });
+  }
+
+  @Override
+  public Flux<Payload> requestStream(Payload payload) {
+    return Flux.defer(
+        () -> {
+          if (!tryAcquire()) {
+            return reject(payload).flux();
+          }
+          return delegate.requestStream(payload).doFinally(s -> inFlight.decrementAndGet());
+        });
+  }
+
+  @Override
+  public Flux<Payload> requestChannel(Publisher<Payload> payloads) {
+    return Flux.defer(
+        () -> {
+          if (!tryAcquire()) {
+            rejected.increment();
+            return Flux.error(rejectedException());
+          }
+          return delegate.requestChannel(payloads).doFinally(s -> inFlight.decrementAndGet());
+        });
+  }
+
+  @Override
+  public Mono<Void> metadataPush(Payload payload) {
+    return delegate.metadataPush(payload);
+  }
+
+  private boolean tryAcquire() {
+    for (; ; ) {
+      int n = inFlight.get();
+      if (n >= limit()) {
+        return false;
+      }
+      if (inFlight.compareAndSet(n, n + 1)) {
+        return true;
+      }
+    }
+  }
+
+  private <T> Mono<T> reject(Payload payload) {
+    rejected.increment();
+    ReferenceCountUtil.safeRelease(payload);
+    return Mono.error(rejectedException());
+  }
+
+  // a new exception every time, as subscribers may add suppressed exceptions or checkpoints to it
+  private static RejectedException rejectedException() {
+    return new RejectedException("concurrency limit reached");
+  }
+
+  /**
+   * Adjusts the limit to a round trip time, in the unit of {@link Clock#TICKER}. The limit is
+   * updated with a CAS loop, so responses never wait on each other to be sampled.
+   */
+  void sample(long rtt) {
+    longRtt.insert(rtt);
+    if (rtt <= 0) {
+      return;
+    }
+
+    double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRtt.value() / rtt));
+    for (; ; ) {
+      long bits = estimatedLimit;
+      double limit = Double.longBitsToDouble(bits);
+      // the limit is only tested while it is used, an idle destination keeps its limit
+      if (inFlight.get() * 2 < limit) {
+        return;
+      }
+
+      double newLimit = limit * gradient + Math.sqrt(limit);
+      newLimit = limit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+      newLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+      if (ESTIMATED_LIMIT.compareAndSet(this, bits, Double.doubleToRawLongBits(newLimit))) {
+        return;
+      }
+    }
+  }
+
+  @Override
+  public double availability() {
+    return delegate.availability();
+  }
+
+  @Override
+  public void dispose() {
+    delegate.dispose();
+  }
+
+  @Override
+  public boolean isDisposed() {
+    return delegate.isDisposed();
+  }
+
+  @Override
+  public Mono<Void> onClose() {
+    return delegate.onClose();
+  }
+}
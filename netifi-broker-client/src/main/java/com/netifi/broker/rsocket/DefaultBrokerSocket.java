@@ -15,6 +15,7 @@
  */
 package com.netifi.broker.rsocket;
 
+import com.netifi.broker.frames.DestinationSetupFlyweight;
 import io.netty.util.ReferenceCounted;
 import io.rsocket.Payload;
 import io.rsocket.RSocket;
@@ -31,13 +32,39 @@ public class DefaultBrokerSocket implements BrokerSocket {
 
   private static final Logger logger = LoggerFactory.getLogger(DefaultBrokerSocket.class);
   private final Function<Payload, Payload> payloadTransformer;
+  private final Function<Payload, Payload> referenceTransformer;
   private final Supplier<RSocket> rSocketSupplier;
+  private final PayloadCompression compression;
   private final MonoProcessor<Void> onClose;
 
   public DefaultBrokerSocket(
       Function<Payload, Payload> payloadTransformer, Supplier<RSocket> rSocketSupplier) {
+    this(payloadTransformer, rSocketSupplier, null);
+  }
+
+  public DefaultBrokerSocket(
+      Function<Payload, Payload> payloadTransformer,
+      Supplier<RSocket> rSocketSupplier,
+      PayloadCompression compression) {
+    this(payloadTransformer, null, rSocketSupplier, compression);
+  }
+
+  /**
+   * @param referenceTransformer routes payloads like {@code payloadTransformer}, but refers to the
+   *     entries of the frame dictionary, for the connections whose broker supports it, or {@code
+   *     null} to always write routes out in full
+   * @param compression compresses the data of the routed payloads sent over connections whose
+   *     broker supports it, or {@code null} to always send it as is
+   */
+  public DefaultBrokerSocket(
+      Function<Payload, Payload> payloadTransformer,
+      Function<Payload, Payload> referenceTransformer,
+      Supplier<RSocket> rSocketSupplier,
+      PayloadCompression compression) {
     this.payloadTransformer = payloadTransformer;
+    this.referenceTransformer = referenceTransformer;
     this.rSocketSupplier = rSocketSupplier;
+    this.compression = compression;
     this.onClose = MonoProcessor.create();
   }
 
@@ -45,70 +72,75 @@ public class DefaultBrokerSocket implements BrokerSocket {
   public Mono<Void> fireAndForget(Payload payload) {
     return Mono.defer(
         () -> {
-          Payload transformedPayload = payloadTransformer.apply(payload);
-          if (transformedPayload != null && payload.refCnt() > 0) {
-            quietRelease(payload);
-          }
-
-          return rSocketSupplier.get().fireAndForget(transformedPayload);
+          RSocket rSocket = rSocketSupplier.get();
+          return rSocket.fireAndForget(compress(transform(payload, rSocket), rSocket));
         });
   }
 
   @Override
   public Mono<Payload> requestResponse(Payload payload) {
-    return Mono.defer(
-        () -> {
-          Payload transformedPayload = payloadTransformer.apply(payload);
-          if (transformedPayload != null) {
-            quietRelease(payload);
-          }
+    return Mono.defer(() -> requestResponse(payload, rSocketSupplier.get()));
+  }
 
-          return rSocketSupplier.get().requestResponse(transformedPayload);
-        });
+  /** Sends the request over the given connection instead of the one the supplier selects. */
+  Mono<Payload> requestResponse(Payload payload, RSocket rSocket) {
+    return rSocket.requestResponse(compress(transform(payload, rSocket), rSocket));
   }
 
   @Override
   public Flux<Payload> requestStream(Payload payload) {
     return Flux.defer(
         () -> {
-          Payload transformedPayload = payloadTransformer.apply(payload);
-          if (transformedPayload != null) {
-            quietRelease(payload);
-          }
-
-          return rSocketSupplier.get().requestStream(transformedPayload);
+          RSocket rSocket = rSocketSupplier.get();
+          return rSocket.requestStream(compress(transform(payload, rSocket), rSocket));
         });
   }
 
   @Override
   public Flux<Payload> requestChannel(Publisher<Payload> payloads) {
+    RSocket rSocket = rSocketSupplier.get();
     Flux<Payload> transformed =
-        Flux.from(payloads)
-            .map(
-                payload -> {
-                  Payload transformedPayload = payloadTransformer.apply(payload);
-                  if (transformedPayload != null) {
-                    quietRelease(payload);
-                  }
-                  return transformedPayload;
-                });
+        Flux.from(payloads).map(payload -> compress(transform(payload, rSocket), rSocket));
 
-    return rSocketSupplier.get().requestChannel(transformed);
+    return rSocket.requestChannel(transformed);
   }
 
   @Override
   public Mono<Void> metadataPush(Payload payload) {
     return Mono.defer(
         () -> {
-          Payload transformedPayload = payloadTransformer.apply(payload);
-          if (transformedPayload != null) {
-            quietRelease(payload);
-          }
-
-          return rSocketSupplier.get().metadataPush(transformedPayload);
+          RSocket rSocket = rSocketSupplier.get();
+          return rSocket.metadataPush(transform(payload, rSocket));
         });
   }
 
+  // routes only refer to the dictionary on connections whose broker announced it
+  private Payload transform(Payload payload, RSocket rSocket) {
+    Function<Payload, Payload> transformer =
+        referenceTransformer != null && supports(rSocket, DestinationSetupFlyweight.FLAG_DICTIONARY)
+            ? referenceTransformer
+            : payloadTransformer;
+    Payload transformedPayload = transformer.apply(payload);
+    if (transformedPayload != null) {
+      quietRelease(payload);
+    }
+    return transformedPayload;
+  }
+
+  // only brokers that announced compression on the connection are sent compressed frames
+  private Payload compress(Payload payload, RSocket rSocket) {
+    return compression == null
+            || payload == null
+            || !supports(rSocket, DestinationSetupFlyweight.FLAG_COMPRESSION)
+        ? payload
+        : compression.compress(payload);
+  }
+
+  private static boolean supports(RSocket rSocket, short capability) {
+    return rSocket instanceof WeightedReconnectingRSocket
+        && ((WeightedReconnectingRSocket) rSocket).supports(capability);
+  }
+
   private static void quietRelease(ReferenceCounted ref) {
     try {
       if (ref.refCnt() > 0) {
@@ -0,0 +1,122 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.rsocket;
+
+import com.netifi.broker.frames.DictionaryFlyweight;
+import com.netifi.broker.frames.FrameDictionary;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import io.rsocket.util.ByteBufPayload;
+import io.rsocket.util.RSocketProxy;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.function.BooleanSupplier;
+import org.reactivestreams.Publisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Wraps a single broker connection and pushes the entries of the client's {@link FrameDictionary}
+ * that the broker hasn't received on this connection yet, before any request that may refer to
+ * them. Frames are written to a connection in the order they are sent, and routes register their
+ * entries before a request can be made along them, so comparing the dictionary size with what was
+ * pushed already is enough: a plain volatile read per request once every route has been used.
+ *
+ * <p>Nothing is pushed until the broker announced {@link
+ * com.netifi.broker.frames.DestinationSetupFlyweight#FLAG_DICTIONARY} on the connection, as only
+ * then routes refer to the dictionary. Concurrent requests can push overlapping entries, which the
+ * broker ignores. Payloads of a channel sent after it started are not checked.
+ */
+public class DictionaryRSocket extends RSocketProxy {
+  private static final Logger logger = LoggerFactory.getLogger(DictionaryRSocket.class);
+
+  private static final AtomicIntegerFieldUpdater<DictionaryRSocket> PUSHED =
+      AtomicIntegerFieldUpdater.newUpdater(DictionaryRSocket.class, "pushed");
+
+  private final FrameDictionary dictionary;
+  private final BooleanSupplier negotiated;
+  private volatile int pushed;
+
+  public DictionaryRSocket(RSocket source, FrameDictionary dictionary) {
+    this(source, dictionary, () -> true);
+  }
+
+  /** @param negotiated whether the broker of the connection supports the dictionary */
+  public DictionaryRSocket(RSocket source, FrameDictionary dictionary, BooleanSupplier negotiated) {
+    super(source);
+    this.dictionary = dictionary;
+    this.negotiated = negotiated;
+  }
+
+  /** @return the number of dictionary entries pushed on this connection */
+  public int pushed() {
+    return pushed;
+  }
+
+  private void pushDictionary() {
+    int size = dictionary.size();
+    int from = pushed;
+    if (from >= size || !negotiated.getAsBoolean()) {
+      return;
+    }
+
+    ByteBuf frame = DictionaryFlyweight.encode(ByteBufAllocator.DEFAULT, dictionary, from, size);
+    source
+        .metadataPush(ByteBufPayload.create(Unpooled.EMPTY_BUFFER, frame))
+        .subscribe(null, t -> logger.debug("error pushing the frame dictionary", t));
+
+    // only published once the push is queued, so that requests racing with it push again instead
+    // of overtaking it
+    int current;
+    do {
+      current = pushed;
+    } while (current < size && !PUSHED.compareAndSet(this, current, size));
+  }
+
+  @Override
+  public Mono<Void> fireAndForget(Payload payload) {
+    pushDictionary();
+    return super.fireAndForget(payload);
+  }
+
+  @Override
+  public Mono<Payload> requestResponse(Payload payload) {
+    pushDictionary();
+    return super.requestResponse(payload);
+  }
+
+  @Override
+  public Flux<Payload> requestStream(Payload payload) {
+    pushDictionary();
+    return super.requestStream(payload);
+  }
+
+  @Override
+  public Flux<Payload> requestChannel(Publisher<Payload> payloads) {
+    pushDictionary();
+    return super.requestChannel(payloads);
+  }
+
+  @Override
+  public Mono<Void> metadataPush(Payload payload) {
+    pushDictionary();
+    return super.metadataPush(payload);
+  }
+}
@@ -15,29 +15,45 @@
  */
 package com.netifi.broker.rsocket;
 
+import io.netty.util.ReferenceCountUtil;
 import io.rsocket.AbstractRSocket;
 import io.rsocket.Payload;
 import io.rsocket.RSocket;
+import java.util.Set;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import org.reactivestreams.Publisher;
-import org.reactivestreams.Subscriber;
 import org.reactivestreams.Subscription;
-import reactor.core.Disposable;
+import reactor.core.CoreSubscriber;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxOperator;
 import reactor.core.publisher.Mono;
-import reactor.core.publisher.MonoProcessor;
+import reactor.core.publisher.MonoOperator;
+import reactor.util.context.Context;
 
+/**
+ * Errors the request responses, streams and channels still in flight with a {@link
+ * CancellationException} when the connection is disposed. Each of them is a single subscriber kept
+ * in a registry of the connection while it runs, which the connection errors in bulk on dispose.
+ */
 public class ErrorOnDisconnectRSocket extends AbstractRSocket {
 
   private static final CancellationException CANCELLATION_EXCEPTION =
       new CancellationException("Connection has closed");
   private final RSocket delegate;
-  private final MonoProcessor<Boolean> onCancelHook = MonoProcessor.create();
+  private final Set<InFlight<?>> inFlight = ConcurrentHashMap.newKeySet();
+  private volatile boolean disconnected;
 
   public ErrorOnDisconnectRSocket(RSocket source) {
     this.delegate = source;
   }
 
+  /** @return the number of request responses, streams and channels currently in flight */
+  int inFlight() {
+    return inFlight.size();
+  }
+
   @Override
   public Mono<Void> onClose() {
     return delegate.onClose();
@@ -45,15 +61,17 @@ public class ErrorOnDisconnectRSocket extends AbstractRSocket {
 
   @Override
   public void dispose() {
-    onCancelHook.onNext(true);
-    onCancelHook.onComplete();
+    disconnected = true;
+    for (InFlight<?> request : inFlight) {
+      request.disconnect();
+    }
     delegate.dispose();
   }
 
   @Override
   public Mono<Payload> requestResponse(Payload payload) {
     try {
-      return wrapMono(delegate.requestResponse(payload));
+      return new MonoInFlight<>(delegate.requestResponse(payload));
     } catch (Throwable t) {
       payload.release();
       return Mono.error(t);
@@ -73,7 +91,7 @@ public class ErrorOnDisconnectRSocket extends AbstractRSocket {
   @Override
   public Flux<Payload> requestStream(Payload payload) {
     try {
-      return wrap(delegate.requestStream(payload));
+      return new FluxInFlight<>(delegate.requestStream(payload));
 
     } catch (Throwable t) {
       payload.release();
@@ -94,81 +112,115 @@ public class ErrorOnDisconnectRSocket extends AbstractRSocket {
   @Override
   public Flux<Payload> requestChannel(Publisher<Payload> payloads) {
     try {
-      return wrap(delegate.requestChannel(payloads));
+      return new FluxInFlight<>(delegate.requestChannel(payloads));
     } catch (Throwable t) {
       return Flux.error(t);
     }
   }
 
-  private <T> Mono<T> wrapMono(Mono<T> source) {
-    return Mono.from(wrap(Flux.from(source)));
+  private final class MonoInFlight<T> extends MonoOperator<T, T> {
+    MonoInFlight(Mono<? extends T> source) {
+      super(source);
+    }
+
+    @Override
+    public void subscribe(CoreSubscriber<? super T> actual) {
+      source.subscribe(new InFlight<>(actual, ErrorOnDisconnectRSocket.this));
+    }
   }
 
-  private <T> Flux<T> wrap(Flux<T> source) {
-
-    return Flux.from(
-        new Publisher<T>() {
-          Flux<T> delegate = source;
-
-          @Override
-          public void subscribe(Subscriber<? super T> s) {
-            Disposable subscription =
-                onCancelHook.subscribe(
-                    b -> {
-                      s.onError(CANCELLATION_EXCEPTION);
-                    });
-            delegate.subscribe(wrapSubscriber(s, subscription));
-          }
-
-          private Subscriber<? super T> wrapSubscriber(
-              Subscriber<? super T> s, Disposable cancelSubscription) {
-            Subscriber<? super T> delegate = s;
-
-            return new Subscriber<T>() {
-              @Override
-              public void onSubscribe(Subscription s) {
-                delegate.onSubscribe(wrapSubscription(s, cancelSubscription));
-              }
-
-              @Override
-              public void onNext(T t) {
-                delegate.onNext(t);
-              }
-
-              @Override
-              public void onError(Throwable t) {
-                if (!cancelSubscription.isDisposed()) {
-                  cancelSubscription.dispose();
-                }
-                delegate.onError(t);
-              }
-
-              @Override
-              public void onComplete() {
-                if (!cancelSubscription.isDisposed()) {
-                  cancelSubscription.dispose();
-                }
-                delegate.onComplete();
-              }
-            };
-          }
-
-          private Subscription wrapSubscription(Subscription s, Disposable cancelSubscription) {
-            return new Subscription() {
-              @Override
-              public void request(long n) {
-                s.request(n);
-              }
-
-              @Override
-              public void cancel() {
-                if (!cancelSubscription.isDisposed()) {
-                  cancelSubscription.dispose();
-                }
-                s.cancel();
-              }
-            };
-          }
-        });
+  private final class FluxInFlight<T> extends FluxOperator<T, T> {
+    FluxInFlight(Flux<? extends T> source) {
+      super(source);
+    }
+
+    @Override
+    public void subscribe(CoreSubscriber<? super T> actual) {
+      source.subscribe(new InFlight<>(actual, ErrorOnDisconnectRSocket.this));
+    }
+  }
+
+  /**
+   * Registers itself once subscribed, and leaves the registry on the first of termination,
+   * cancellation and disconnection. Signals arriving after that are dropped.
+   */
+  @SuppressWarnings("rawtypes")
+  private static final class InFlight<T> implements CoreSubscriber<T>, Subscription {
+    private static final AtomicIntegerFieldUpdater<InFlight> DONE =
+        AtomicIntegerFieldUpdater.newUpdater(InFlight.class, "done");
+
+    private final CoreSubscriber<? super T> actual;
+    private final ErrorOnDisconnectRSocket connection;
+    private Subscription s;
+    private volatile int done;
+
+    InFlight(CoreSubscriber<? super T> actual, ErrorOnDisconnectRSocket connection) {
+      this.actual = actual;
+      this.connection = connection;
+    }
+
+    @Override
+    public Context currentContext() {
+      return actual.currentContext();
+    }
+
+    @Override
+    public void onSubscribe(Subscription s) {
+      this.s = s;
+      actual.onSubscribe(this);
+      connection.inFlight.add(this);
+      // it may have terminated while the actual subscriber requested, before it was registered
+      if (done != 0) {
+        connection.inFlight.remove(this);
+      } else if (connection.disconnected) {
+        disconnect();
+      }
+    }
+
+    @Override
+    public void onNext(T t) {
+      if (done == 0) {
+        actual.onNext(t);
+      } else {
+        ReferenceCountUtil.safeRelease(t);
+      }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      if (DONE.compareAndSet(this, 0, 1)) {
+        connection.inFlight.remove(this);
+        actual.onError(t);
+      }
+    }
+
+    @Override
+    public void onComplete() {
+      if (DONE.compareAndSet(this, 0, 1)) {
+        connection.inFlight.remove(this);
+        actual.onComplete();
+      }
+    }
+
+    @Override
+    public void request(long n) {
+      s.request(n);
+    }
+
+    @Override
+    public void cancel() {
+      if (DONE.compareAndSet(this, 0, 1)) {
+        connection.inFlight.remove(this);
+      }
+      s.cancel();
+    }
+
+    void disconnect() {
+      if (DONE.compareAndSet(this, 0, 1)) {
+        connection.inFlight.remove(this);
+        s.cancel();
+        actual.onError(CANCELLATION_EXCEPTION);
+      }
+    }
   }
 }
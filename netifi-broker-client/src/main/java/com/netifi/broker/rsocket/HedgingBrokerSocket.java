@@ -0,0 +1,218 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.rsocket;
+
+import com.netifi.common.stats.LatencySketch;
+import com.netifi.common.time.Clock;
+import io.netty.util.ReferenceCountUtil;
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import io.rsocket.util.ByteBufPayload;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import org.reactivestreams.Publisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Hedges the request response interactions of a {@link DefaultBrokerSocket}: when no response
+ * arrived within the hedge delay, the request is sent once more over a different connection of the
+ * pool. The first response wins and the other request is cancelled. The hedge delay is the {@code
+ * hedgeQuantile} latency of the connection the request went out on, or the fixed {@code
+ * hedgeDelay} as long as that connection has no latencies to go by.
+ *
+ * <p>Hedges are paid from a budget: every request earns {@code budgetRatio} of a hedge and every
+ * hedge spends a whole one, so a slow broker can not raise the load by more than that ratio. Every
+ * other interaction is passed on to the socket it decorates as is.
+ */
+public class HedgingBrokerSocket implements BrokerSocket {
+  private static final Logger logger = LoggerFactory.getLogger(HedgingBrokerSocket.class);
+  public static final double DEFAULT_HEDGE_QUANTILE = 0.95;
+  public static final double DEFAULT_BUDGET_RATIO = 0.05;
+
+  private static final Clock CLOCK = Clock.TICKER;
+  // the budget is kept in thousandths of a hedge
+  private static final long HEDGE = 1_000;
+  // hedges saved up while all responses were fast, so a burst of hedges stays bounded
+  private static final long MAX_BALANCE = 10 * HEDGE;
+  // attempts at selecting a different connection than the one of the request
+  private static final int EFFORT = 3;
+
+  private final DefaultBrokerSocket delegate;
+  private final Supplier<RSocket> rSocketSupplier;
+  private final Duration hedgeDelay;
+  private final double hedgeQuantile;
+  private final long deposit;
+  private final Scheduler scheduler;
+  private final AtomicLong balance = new AtomicLong();
+
+  public HedgingBrokerSocket(
+      DefaultBrokerSocket delegate, Supplier<RSocket> rSocketSupplier, Duration hedgeDelay) {
+    this(
+        delegate,
+        rSocketSupplier,
+        hedgeDelay,
+        DEFAULT_HEDGE_QUANTILE,
+        DEFAULT_BUDGET_RATIO,
+        Schedulers.parallel());
+  }
+
+  /**
+   * @param delegate the socket that the requests and their hedges go through
+   * @param hedgeDelay how long to wait before hedging while the connection has no latencies yet,
+   *     or always if {@code hedgeQuantile} is 0
+   * @param hedgeQuantile the latency quantile of the connection to wait for before hedging
+   * @param budgetRatio the share of the requests that may be hedged
+   */
+  public HedgingBrokerSocket(
+      DefaultBrokerSocket delegate,
+      Supplier<RSocket> rSocketSupplier,
+      Duration hedgeDelay,
+      double hedgeQuantile,
+      double budgetRatio,
+      Scheduler scheduler) {
+    if (hedgeQuantile < 0.0 || hedgeQuantile >= 1.0) {
+      throw new IllegalArgumentException("hedgeQuantile must be between 0 and 1");
+    }
+    if (budgetRatio <= 0.0 || budgetRatio > 1.0) {
+      throw new IllegalArgumentException("budgetRatio must be greater than 0 and at most 1");
+    }
+    this.delegate = delegate;
+    this.rSocketSupplier = rSocketSupplier;
+    this.hedgeDelay = hedgeDelay;
+    this.hedgeQuantile = hedgeQuantile;
+    this.deposit = (long) (budgetRatio * HEDGE);
+    this.scheduler = scheduler;
+  }
+
+  @Override
+  public Mono<Payload> requestResponse(Payload payload) {
+    return Mono.defer(
+        () -> {
+          RSocket rSocket = rSocketSupplier.get();
+          balance.updateAndGet(b -> Math.min(MAX_BALANCE, b + deposit));
+
+          // the request releases the payload it is given, so the hedge gets a payload of its own
+          // over the same data and metadata, released by the hedge or once the request is done
+          Payload hedgePayload =
+              ByteBufPayload.create(payload.sliceData().retain(), payload.sliceMetadata().retain());
+          AtomicBoolean claimed = new AtomicBoolean();
+          Mono<Payload> hedge =
+              Mono.delay(hedgeDelay(rSocket), scheduler)
+                  .flatMap(
+                      l ->
+                          claimed.compareAndSet(false, true)
+                              ? hedge(hedgePayload, rSocket)
+                              : Mono.<Payload>never())
+                  .onErrorResume(
+                      t -> {
+                        // a failed hedge leaves the answer to the request
+                        logger.debug("hedged request failed, waiting for the request", t);
+                        return Mono.never();
+                      });
+
+          return Mono.first(delegate.requestResponse(payload, rSocket), hedge)
+              .doFinally(
+                  s -> {
+                    if (claimed.compareAndSet(false, true)) {
+                      ReferenceCountUtil.safeRelease(hedgePayload);
+                    }
+                  });
+        });
+  }
+
+  private Mono<Payload> hedge(Payload payload, RSocket requested) {
+    RSocket rSocket = requested;
+    for (int i = 0; i < EFFORT && rSocket == requested; i++) {
+      rSocket = rSocketSupplier.get();
+    }
+
+    if (rSocket == requested || !withdraw()) {
+      payload.release();
+      return Mono.never();
+    }
+
+    return delegate.requestResponse(payload, rSocket);
+  }
+
+  private boolean withdraw() {
+    for (; ; ) {
+      long b = balance.get();
+      if (b < HEDGE) {
+        return false;
+      }
+      if (balance.compareAndSet(b, b - HEDGE)) {
+        return true;
+      }
+    }
+  }
+
+  private Duration hedgeDelay(RSocket rSocket) {
+    if (hedgeQuantile > 0.0 && rSocket instanceof WeightedReconnectingRSocket) {
+      LatencySketch latencies = ((WeightedReconnectingRSocket) rSocket).latencies();
+      if (latencies.count() > 0.0) {
+        return Duration.ofNanos(CLOCK.unit().toNanos((long) latencies.quantile(hedgeQuantile)));
+      }
+    }
+    return hedgeDelay;
+  }
+
+  @Override
+  public Mono<Void> fireAndForget(Payload payload) {
+    return delegate.fireAndForget(payload);
+  }
+
+  @Override
+  public Flux<Payload> requestStream(Payload payload) {
+    return delegate.requestStream(payload);
+  }
+
+  @Override
+  public Flux<Payload> requestChannel(Publisher<Payload> payloads) {
+    return delegate.requestChannel(payloads);
+  }
+
+  @Override
+  public Mono<Void> metadataPush(Payload payload) {
+    return delegate.metadataPush(payload);
+  }
+
+  @Override
+  public double availability() {
+    return delegate.availability();
+  }
+
+  @Override
+  public void dispose() {
+    delegate.dispose();
+  }
+
+  @Override
+  public boolean isDisposed() {
+    return delegate.isDisposed();
+  }
+
+  @Override
+  public Mono<Void> onClose() {
+    return delegate.onClose();
+  }
+}
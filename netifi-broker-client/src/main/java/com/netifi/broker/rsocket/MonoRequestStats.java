@@ -0,0 +1,118 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.rsocket;
+
+import io.rsocket.rpc.exception.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import org.reactivestreams.Subscription;
+import reactor.core.CoreSubscriber;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoOperator;
+import reactor.util.context.Context;
+
+/**
+ * Accounts a request response, fire and forget or metadata push on the statistics of its {@link
+ * WeightedReconnectingRSocket}: the request starts when it is subscribed to and stops when it
+ * succeeds, fails or is cancelled, whichever comes first. A single operator and subscriber per
+ * request, instead of a peek operator and lambda for each of the callbacks.
+ */
+final class MonoRequestStats<T> extends MonoOperator<T, T> {
+  private final WeightedReconnectingRSocket rSocket;
+
+  MonoRequestStats(Mono<? extends T> source, WeightedReconnectingRSocket rSocket) {
+    super(source);
+    this.rSocket = rSocket;
+  }
+
+  @Override
+  public void subscribe(CoreSubscriber<? super T> actual) {
+    source.subscribe(new RequestStatsSubscriber<>(actual, rSocket, rSocket.start()));
+  }
+
+  static final class RequestStatsSubscriber<T> implements CoreSubscriber<T>, Subscription {
+    private static final AtomicIntegerFieldUpdater<RequestStatsSubscriber> STOPPED =
+        AtomicIntegerFieldUpdater.newUpdater(RequestStatsSubscriber.class, "stopped");
+
+    private final CoreSubscriber<? super T> actual;
+    private final WeightedReconnectingRSocket rSocket;
+    private final long start;
+    private Subscription s;
+    private volatile int stopped;
+
+    RequestStatsSubscriber(
+        CoreSubscriber<? super T> actual, WeightedReconnectingRSocket rSocket, long start) {
+      this.actual = actual;
+      this.rSocket = rSocket;
+      this.start = start;
+    }
+
+    @Override
+    public Context currentContext() {
+      return actual.currentContext();
+    }
+
+    @Override
+    public void onSubscribe(Subscription s) {
+      this.s = s;
+      actual.onSubscribe(this);
+    }
+
+    @Override
+    public void onNext(T t) {
+      success();
+      actual.onNext(t);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      if (STOPPED.compareAndSet(this, 0, 1)) {
+        long now = rSocket.stop(start);
+        if (t instanceof TimeoutException) {
+          rSocket.record(now - start);
+        }
+        rSocket.recordError(0.0);
+      }
+      actual.onError(t);
+    }
+
+    @Override
+    public void onComplete() {
+      success();
+      actual.onComplete();
+    }
+
+    private void success() {
+      if (STOPPED.compareAndSet(this, 0, 1)) {
+        long now = rSocket.stop(start);
+        rSocket.record(now - start);
+        rSocket.recordError(1.0);
+      }
+    }
+
+    @Override
+    public void request(long n) {
+      s.request(n);
+    }
+
+    @Override
+    public void cancel() {
+      if (STOPPED.compareAndSet(this, 0, 1)) {
+        rSocket.stop(start);
+      }
+      s.cancel();
+    }
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.rsocket;
+
+import com.netifi.broker.frames.FrameHeaderFlyweight;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.codec.compression.Snappy;
+import io.rsocket.Payload;
+import io.rsocket.util.ByteBufPayload;
+
+/**
+ * Compresses the data of routed payloads that are at least {@link #threshold()} bytes long, and
+ * marks their routing frame with {@link FrameHeaderFlyweight#FLAG_DATA_COMPRESSED}. Data that
+ * doesn't shrink is sent as is.
+ *
+ * <p>Compressed data starts with a byte naming the codec it was compressed with, followed by a
+ * sequence of chunks of at most 32 KiB of uncompressed data, each a 4 byte length followed by a
+ * block of that codec. The only codec is {@link #CODEC_SNAPPY}, Netty's {@link Snappy}, which needs
+ * no native library and favours speed over ratio. Decompression fails on unknown codecs and once
+ * the data would exceed the largest RSocket frame, or a given maximum.
+ */
+public final class PayloadCompression {
+  public static final int DEFAULT_THRESHOLD = 4 * 1024;
+  public static final byte CODEC_SNAPPY = 1;
+  /** The largest RSocket frame, whose length is a 3 byte field. */
+  public static final int DEFAULT_MAX_DECOMPRESSED_LENGTH = 0xFFFFFF;
+
+  // the Snappy encoder indexes its input with shorts
+  private static final int MAX_CHUNK_LENGTH = Short.MAX_VALUE;
+
+  private final int threshold;
+
+  public PayloadCompression() {
+    this(DEFAULT_THRESHOLD);
+  }
+
+  public PayloadCompression(int threshold) {
+    if (threshold < 0) {
+      throw new IllegalArgumentException("threshold must not be negative, got " + threshold);
+    }
+    this.threshold = threshold;
+  }
+
+  public int threshold() {
+    return threshold;
+  }
+
+  /**
+   * Compresses the data of a payload whose metadata is a group, broadcast or shard frame. The
+   * payload is returned as is if its data isn't compressed, or released otherwise.
+   */
+  public Payload compress(Payload payload) {
+    ByteBuf data = payload.sliceData();
+    int length = data.readableBytes();
+    if (length < threshold) {
+      return payload;
+    }
+
+    ByteBuf compressed = compress(ByteBufAllocator.DEFAULT, data);
+    if (compressed.readableBytes() >= length) {
+      compressed.release();
+      return payload;
+    }
+
+    ByteBuf metadata = FrameHeaderFlyweight.markDataCompressed(payload.sliceMetadata().retain());
+    payload.release();
+    return ByteBufPayload.create(compressed, metadata);
+  }
+
+  public static ByteBuf compress(ByteBufAllocator allocator, ByteBuf data) {
+    int offset = data.readerIndex();
+    int end = data.writerIndex();
+    ByteBuf compressed = allocator.buffer(end - offset);
+    compressed.writeByte(CODEC_SNAPPY);
+    Snappy snappy = new Snappy();
+    while (offset < end) {
+      int chunkLength = Math.min(MAX_CHUNK_LENGTH, end - offset);
+      int lengthIndex = compressed.writerIndex();
+      compressed.writeInt(0);
+      snappy.encode(data.slice(offset, chunkLength), compressed, chunkLength);
+      compressed.setInt(lengthIndex, compressed.writerIndex() - lengthIndex - Integer.BYTES);
+      offset += chunkLength;
+    }
+    return compressed;
+  }
+
+  public static ByteBuf decompress(ByteBufAllocator allocator, ByteBuf compressed) {
+    return decompress(allocator, compressed, DEFAULT_MAX_DECOMPRESSED_LENGTH);
+  }
+
+  /** @param maxLength the most bytes the data may take once decompressed */
+  public static ByteBuf decompress(ByteBufAllocator allocator, ByteBuf compressed, int maxLength) {
+    int offset = compressed.readerIndex();
+    int end = compressed.writerIndex();
+    byte codec = compressed.getByte(offset++);
+    if (codec != CODEC_SNAPPY) {
+      throw new IllegalStateException("unsupported compression codec " + codec);
+    }
+
+    ByteBuf data = allocator.buffer(Math.min(maxLength, (end - offset) * 2));
+    Snappy snappy = new Snappy();
+    try {
+      while (offset < end) {
+        int chunkLength = compressed.getInt(offset);
+        offset += Integer.BYTES;
+        // checked before decoding, from the uncompressed length the block starts with
+        int uncompressedLength = uncompressedLength(compressed, offset);
+        if (uncompressedLength > MAX_CHUNK_LENGTH
+            || uncompressedLength > maxLength - data.readableBytes()) {
+          throw tooLong(maxLength);
+        }
+        snappy.decode(compressed.slice(offset, chunkLength), data);
+        if (data.readableBytes() > maxLength) {
+          throw tooLong(maxLength);
+        }
+        snappy.reset();
+        offset += chunkLength;
+      }
+    } catch (Throwable t) {
+      data.release();
+      throw t;
+    }
+    return data;
+  }
+
+  // the varint preamble of a Snappy block, capped at 5 bytes like any int
+  private static int uncompressedLength(ByteBuf compressed, int offset) {
+    int value = 0;
+    for (int i = 0; i < 5; i++) {
+      byte b = compressed.getByte(offset + i);
+      value |= (b & 0x7F) << (7 * i);
+      if (b >= 0) {
+        return value < 0 ? Integer.MAX_VALUE : value;
+      }
+    }
+    throw new IllegalStateException("malformed compressed block at offset " + offset);
+  }
+
+  private static IllegalStateException tooLong(int maxLength) {
+    return new IllegalStateException(
+        "decompressed data exceeds the maximum length of " + maxLength + " bytes");
+  }
+}
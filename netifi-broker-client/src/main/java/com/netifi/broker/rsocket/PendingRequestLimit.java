@@ -0,0 +1,82 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.rsocket;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Bounds the requests that wait for a broker connection while a {@link
+ * WeightedReconnectingRSocket} is reconnecting. Requests beyond {@code maxPending} waiting ones, or
+ * that waited for longer than {@code maxWait}, fail with a {@link NoAvailableConnectionException}.
+ * One instance is shared by all the connections of a pool, so the bound applies to the pool.
+ */
+public class PendingRequestLimit {
+  private final int maxPending;
+  private final Duration maxWait;
+  private final Scheduler scheduler;
+  private final AtomicInteger pending = new AtomicInteger();
+
+  /**
+   * @param maxPending the most requests waiting for a connection, or 0 for no bound
+   * @param maxWait the longest a request waits for a connection, or {@code null} for no bound
+   */
+  public PendingRequestLimit(int maxPending, Duration maxWait) {
+    this(maxPending, maxWait, Schedulers.parallel());
+  }
+
+  public PendingRequestLimit(int maxPending, Duration maxWait, Scheduler scheduler) {
+    this.maxPending = maxPending > 0 ? maxPending : Integer.MAX_VALUE;
+    this.maxWait = maxWait;
+    this.scheduler = scheduler;
+  }
+
+  /** @return the number of requests currently waiting for a connection */
+  public int pending() {
+    return pending.get();
+  }
+
+  <T> Mono<T> await(Mono<T> connection) {
+    return Mono.defer(
+        () -> {
+          if (pending.incrementAndGet() > maxPending) {
+            pending.decrementAndGet();
+            return Mono.error(
+                new NoAvailableConnectionException(
+                    "no broker connection available, "
+                        + maxPending
+                        + " requests are already waiting for one"));
+          }
+
+          Mono<T> waiting = connection;
+          if (maxWait != null) {
+            waiting =
+                waiting.timeout(
+                    maxWait,
+                    Mono.defer(
+                        () ->
+                            Mono.error(
+                                new NoAvailableConnectionException(
+                                    "no broker connection available within " + maxWait))),
+                    scheduler);
+          }
+          return waiting.doFinally(s -> pending.decrementAndGet());
+        });
+  }
+}
@@ -15,17 +15,19 @@
  */
 package com.netifi.broker.rsocket;
 
-import com.netifi.broker.frames.*;
 import com.netifi.broker.frames.AuthorizationWrapperFlyweight;
-import com.netifi.broker.frames.BroadcastFlyweight;
+import com.netifi.broker.frames.BatchFlyweight;
+import com.netifi.broker.frames.FrameCursor;
 import com.netifi.broker.frames.FrameHeaderFlyweight;
 import com.netifi.broker.frames.FrameType;
-import com.netifi.broker.frames.GroupFlyweight;
-import com.netifi.broker.frames.ShardFlyweight;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.rsocket.Payload;
 import io.rsocket.RSocket;
 import io.rsocket.util.ByteBufPayload;
+import java.util.ArrayList;
+import java.util.List;
+import reactor.core.publisher.Mono;
 
 // Need to unwrap RSocketRpc Messages
 public class UnwrappingRSocket extends AbstractUnwrappingRSocket {
@@ -34,32 +36,75 @@ public class UnwrappingRSocket extends AbstractUnwrappingRSocket {
     super(source);
   }
 
+  /** Fans the messages of a batch frame out to the handler, one fire and forget each. */
+  @Override
+  public Mono<Void> fireAndForget(Payload payload) {
+    ByteBuf batch;
+    try {
+      batch = batch(payload.sliceMetadata());
+    } catch (Throwable t) {
+      payload.release();
+      return Mono.error(t);
+    }
+    if (batch == null) {
+      return super.fireAndForget(payload);
+    }
+
+    try {
+      List<Mono<Void>> messages = new ArrayList<>(BatchFlyweight.entryCount(batch));
+      BatchFlyweight.forEachEntry(
+          batch,
+          payload.sliceData(),
+          (metadata, data) ->
+              messages.add(
+                  source.fireAndForget(ByteBufPayload.create(data.retain(), metadata.retain()))));
+      return Mono.when(messages);
+    } catch (Throwable t) {
+      return Mono.error(t);
+    } finally {
+      payload.release();
+    }
+  }
+
+  private static ByteBuf batch(ByteBuf frame) {
+    FrameType frameType = FrameHeaderFlyweight.frameType(frame);
+    while (frameType == FrameType.AUTHORIZATION_WRAPPER) {
+      frame = AuthorizationWrapperFlyweight.innerFrame(frame);
+      frameType = FrameHeaderFlyweight.frameType(frame);
+    }
+    return frameType == FrameType.BATCH ? frame : null;
+  }
+
   @Override
   protected Payload unwrap(Payload payload) {
+    FrameCursor cursor = FrameCursor.of(payload.sliceMetadata());
     try {
       ByteBuf data = payload.sliceData();
-      ByteBuf metadata = payload.sliceMetadata();
-      FrameType frameType = FrameHeaderFlyweight.frameType(metadata);
-      ByteBuf unwrappedMetadata = unwrapMetadata(frameType, metadata);
-      return ByteBufPayload.create(data.retain(), unwrappedMetadata.retain());
+      while (cursor.frameType() == FrameType.AUTHORIZATION_WRAPPER) {
+        cursor.wrap(cursor.innerFrame());
+      }
+      ByteBuf unwrappedMetadata = unwrapMetadata(cursor);
+      ByteBuf unwrappedData =
+          cursor.dataCompressed()
+              ? PayloadCompression.decompress(ByteBufAllocator.DEFAULT, data)
+              : data.retain();
+      return ByteBufPayload.create(unwrappedData, unwrappedMetadata.retain());
     } finally {
+      cursor.recycle();
       payload.release();
     }
   }
 
-  private ByteBuf unwrapMetadata(FrameType frameType, ByteBuf metadata) {
-    switch (frameType) {
-      case AUTHORIZATION_WRAPPER:
-        ByteBuf innerFrame = AuthorizationWrapperFlyweight.innerFrame(metadata);
-        return unwrapMetadata(FrameHeaderFlyweight.frameType(innerFrame), innerFrame);
+  private ByteBuf unwrapMetadata(FrameCursor cursor) {
+    switch (cursor.frameType()) {
       case GROUP:
-        return GroupFlyweight.metadata(metadata);
       case BROADCAST:
-        return BroadcastFlyweight.metadata(metadata);
       case SHARD:
-        return ShardFlyweight.metadata(metadata);
+        return cursor.metadata();
+      case BATCH:
+        throw new IllegalStateException("batch frames can only be sent as fire and forget");
       default:
-        throw new IllegalStateException("unknown frame type " + frameType);
+        throw new IllegalStateException("unknown frame type " + cursor.frameType());
     }
   }
 }
@@ -15,11 +15,15 @@
  */
 package com.netifi.broker.rsocket;
 
+import com.netifi.common.stats.LatencySketch;
 import io.rsocket.RSocket;
 
 /**
  * RSocket implementation that provides statistical weight around the connection including it's
  * latency and error rate. Used by NetifiBrokerService to determine the next best RSocket to return.
+ *
+ * <p>Latencies and times are measured with {@link com.netifi.common.time.Clock#TICKER} and
+ * expressed in its unit, nanoseconds.
  */
 public interface WeightedRSocket extends RSocket {
   /**
@@ -30,20 +34,42 @@ public interface WeightedRSocket extends RSocket {
   double medianLatency();
 
   /**
-   * Lower quantile of latency as per last calculation. This is not calculated per invocation.
+   * Lower quantile of latency of this connection as per last calculation. This is not calculated
+   * per invocation.
    *
    * @return Median latency.
    */
   double lowerQuantileLatency();
 
   /**
-   * Higher quantile value of latency as per last calculation. This is not calculated per
-   * invocation.
+   * Higher quantile value of latency of this connection as per last calculation. This is not
+   * calculated per invocation.
    *
    * @return Median latency.
    */
   double higherQuantileLatency();
 
+  /**
+   * Peak-sensitive moving average of latency: spikes are reflected immediately and decay with a
+   * half-life afterwards. Falls back to the {@link #predictedLatency() predicted latency} for
+   * implementations that do not track it.
+   *
+   * @return Peak latency.
+   */
+  default double peakLatency() {
+    return predictedLatency();
+  }
+
+  /**
+   * Sketch of the latencies observed on this connection, which can be merged with the sketches of
+   * other connections to answer quantiles of the whole pool.
+   *
+   * @return the latency sketch of this connection, or {@code null} if it does not keep one
+   */
+  default LatencySketch latencies() {
+    return null;
+  }
+
   /**
    * An exponentially weighted moving average value of the time between two requests.
    *
@@ -58,17 +84,28 @@ public interface WeightedRSocket extends RSocket {
    */
   int pending();
 
+  /**
+   * Number of request streams and channels open at this moment. They can stay open for a long time,
+   * so unlike {@link #pending()} they are not a measure of load, but a connection that has some
+   * can't be closed without cutting them off.
+   *
+   * @return Number of open streams and channels.
+   */
+  default long activeStreams() {
+    return 0;
+  }
+
   /**
    * Last time this socket was used i.e. either a request was sent or a response was received.
    *
-   * @return Last time used in millis since epoch.
+   * @return Last time used in millis, on the monotonic clock used to time requests.
    */
   long lastTimeUsedMillis();
 
   /**
    * Returns the predicated latency of the weighted socket
    *
-   * @return predicated latency in millis
+   * @return predicated latency
    */
   double predictedLatency();
 
@@ -15,21 +15,25 @@
  */
 package com.netifi.broker.rsocket;
 
+import com.netifi.broker.frames.DestinationSetupFlyweight;
+import com.netifi.broker.frames.FrameDictionary;
 import com.netifi.broker.rsocket.transport.WeightedClientTransportSupplier;
-import com.netifi.common.stats.Ewma;
-import com.netifi.common.stats.Median;
-import com.netifi.common.stats.Quantile;
+import com.netifi.common.stats.ConcurrentEwma;
+import com.netifi.common.stats.ConcurrentMedian;
+import com.netifi.common.stats.LatencySketch;
+import com.netifi.common.stats.PeakEwma;
+import com.netifi.common.time.Clock;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufUtil;
 import io.rsocket.*;
 import io.rsocket.RSocketFactory.ClientRSocketFactory;
 import io.rsocket.frame.decoder.PayloadDecoder;
-import io.rsocket.rpc.exception.TimeoutException;
-import io.rsocket.util.Clock;
 import java.nio.channels.ClosedChannelException;
 import java.time.Duration;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.BooleanSupplier;
 import java.util.function.Supplier;
 import org.reactivestreams.Publisher;
@@ -48,16 +52,23 @@ import reactor.core.publisher.SignalType;
  */
 public class WeightedReconnectingRSocket implements WeightedRSocket {
   private static final Logger logger = LoggerFactory.getLogger(WeightedReconnectingRSocket.class);
+  private static final AtomicIntegerFieldUpdater<WeightedReconnectingRSocket> PENDING =
+      AtomicIntegerFieldUpdater.newUpdater(WeightedReconnectingRSocket.class, "pending");
 
   private static final RSocket EMPTY_SOCKET = new AbstractRSocket() {};
   private static final double STARTUP_PENALTY = Long.MAX_VALUE >> 12;
+  // requests are timed with the ticker, latencies and stamps are in its unit
+  private static final Clock CLOCK = Clock.TICKER;
   private static final long DEFAULT_INITIAL_INTER_ARRIVAL_TIME =
-      Clock.unit().convert(1L, TimeUnit.SECONDS);
-  private final Quantile lowerQuantile;
-  private final Quantile higherQuantile;
+      CLOCK.unit().convert(1L, TimeUnit.SECONDS);
+  // the median moves by steps of a microsecond, steps of a nanosecond would take ages to follow
+  private static final double MEDIAN_UNIT = CLOCK.unit().convert(1L, TimeUnit.MICROSECONDS);
+  private final LatencySketch latencies;
+  private final double lowerQuantile;
+  private final double higherQuantile;
   private final long inactivityFactor;
   private final long tau;
-  private final Ewma errorPercentage;
+  private final ConcurrentEwma errorPercentage;
   private final MonoProcessor<Void> onClose;
   private final Supplier<Payload> setupPayloadSupplier;
   private final BooleanSupplier running;
@@ -68,15 +79,19 @@ public class WeightedReconnectingRSocket implements WeightedRSocket {
   private final RSocket requestHandlingRSocket;
   private final long accessKey;
   private final ByteBuf accessToken;
+  private final FrameDictionary dictionary;
+  private final PendingRequestLimit pendingRequests;
   private final Supplier<WeightedClientTransportSupplier> transportSupplier;
   boolean connecting = false;
+  private final long epoch; // origin of the start times summed up in inflightStarts
+  private final LongAdder inflightStarts; // sum of the start times of the pending requests
   private volatile int pending; // instantaneous rate
-  private long errorStamp; // last we got an error
-  private long stamp; // last timestamp we sent a request
-  private long stamp0; // last timestamp we sent a request or receive a response
-  private long duration; // instantaneous cumulative duration
-  private Median median;
-  private Ewma interArrivalTime;
+  private volatile long errorStamp; // last we got an error
+  private volatile long stamp; // last timestamp we sent a request
+  private volatile long stamp0; // last timestamp we sent a request or receive a response
+  private ConcurrentMedian median;
+  private PeakEwma peakLatency;
+  private ConcurrentEwma interArrivalTime;
   private AtomicLong pendingStreams; // number of active streams
   private double availability = 0.0;
   private long CONNECTION_ATTEMPT_RESET_TS = Duration.ofMinutes(1).toMillis();
@@ -84,6 +99,10 @@ public class WeightedReconnectingRSocket implements WeightedRSocket {
   private long attempts;
 
   private MonoProcessor<RSocket> currentSink;
+  // the established connection, requests only wait on the connection sink while this is null
+  private volatile RSocket live;
+  // the responder of the established connection, which knows what its broker supports
+  private volatile CapabilitiesRSocket capabilities;
 
   WeightedReconnectingRSocket(
       final RSocket requestHandlingRSocket,
@@ -96,24 +115,31 @@ public class WeightedReconnectingRSocket implements WeightedRSocket {
       final int missedAcks,
       final long accessKey,
       final ByteBuf accessToken,
-      final Quantile lowerQuantile,
-      final Quantile higherQuantile,
+      final FrameDictionary dictionary,
+      final PendingRequestLimit pendingRequests,
+      final LatencySketch latencies,
+      final double lowerQuantile,
+      final double higherQuantile,
       final int inactivityFactor) {
     this.transportSupplier = transportSupplier;
+    this.latencies = latencies;
     this.lowerQuantile = lowerQuantile;
     this.higherQuantile = higherQuantile;
     this.inactivityFactor = inactivityFactor;
-    long now = Clock.now();
+    long now = CLOCK.getEpochTime();
+    this.epoch = now;
     this.stamp = now;
     this.errorStamp = now;
     this.stamp0 = now;
-    this.duration = 0L;
+    this.inflightStarts = new LongAdder();
     this.pending = 0;
-    this.median = new Median();
-    this.interArrivalTime = new Ewma(1, TimeUnit.MINUTES, DEFAULT_INITIAL_INTER_ARRIVAL_TIME);
+    this.median = new ConcurrentMedian(MEDIAN_UNIT);
+    this.peakLatency = new PeakEwma(10, TimeUnit.SECONDS, 0.0);
+    this.interArrivalTime =
+        new ConcurrentEwma(1, TimeUnit.MINUTES, DEFAULT_INITIAL_INTER_ARRIVAL_TIME);
     this.pendingStreams = new AtomicLong();
-    this.errorPercentage = new Ewma(5, TimeUnit.SECONDS, 1.0);
-    this.tau = Clock.unit().convert((long) (5 / Math.log(2)), TimeUnit.SECONDS);
+    this.errorPercentage = new ConcurrentEwma(5, TimeUnit.SECONDS, 1.0);
+    this.tau = CLOCK.unit().convert((long) (5 / Math.log(2)), TimeUnit.SECONDS);
     this.requestHandlingRSocket = requestHandlingRSocket;
     this.onClose = MonoProcessor.create();
     this.setupPayloadSupplier = setupPayloadSupplier;
@@ -121,6 +147,8 @@ public class WeightedReconnectingRSocket implements WeightedRSocket {
     this.keepalive = keepalive;
     this.accessKey = accessKey;
     this.accessToken = accessToken;
+    this.dictionary = dictionary;
+    this.pendingRequests = pendingRequests;
     this.tickPeriodSeconds = tickPeriodSeconds;
     this.ackTimeoutSeconds = ackTimeoutSeconds;
     this.missedAcks = missedAcks;
@@ -137,8 +165,11 @@ public class WeightedReconnectingRSocket implements WeightedRSocket {
       final int missedAcks,
       final long accessKey,
       final ByteBuf accessToken,
-      final Quantile lowerQuantile,
-      final Quantile higherQuantile,
+      final FrameDictionary dictionary,
+      final PendingRequestLimit pendingRequests,
+      final LatencySketch latencies,
+      final double lowerQuantile,
+      final double higherQuantile,
       final int inactivityFactor) {
     WeightedReconnectingRSocket rSocket =
         new WeightedReconnectingRSocket(
@@ -152,6 +183,9 @@ public class WeightedReconnectingRSocket implements WeightedRSocket {
             missedAcks,
             accessKey,
             accessToken,
+            dictionary,
+            pendingRequests,
+            latencies,
             lowerQuantile,
             higherQuantile,
             inactivityFactor);
@@ -180,14 +214,15 @@ public class WeightedReconnectingRSocket implements WeightedRSocket {
   }
 
   synchronized void resetStatistics() {
-    long now = Clock.now();
+    long now = CLOCK.getEpochTime();
     this.stamp = now;
     this.errorStamp = now;
     this.stamp0 = now;
-    this.duration = 0L;
     this.pending = 0;
+    this.inflightStarts.reset();
 
     median.reset();
+    peakLatency.reset(0.0);
     interArrivalTime.reset(DEFAULT_INITIAL_INTER_ARRIVAL_TIME);
     pendingStreams.set(0);
     errorPercentage.reset(1.0);
@@ -233,8 +268,11 @@ public class WeightedReconnectingRSocket implements WeightedRSocket {
 
                   WeightedClientTransportSupplier weighedClientTransportSupplier =
                       transportSupplier.get();
+                  CapabilitiesRSocket responder =
+                      new CapabilitiesRSocket(
+                          requestHandlingRSocket == null ? EMPTY_SOCKET : requestHandlingRSocket);
 
-                  long start = System.nanoTime();
+                  long start = Clock.MONOTONIC.getEpochTime();
                   return getClientFactory()
                       .errorConsumer(
                           throwable ->
@@ -244,11 +282,7 @@ public class WeightedReconnectingRSocket implements WeightedRSocket {
                                           .getSocketAddress()
                                           .toString(),
                                   throwable))
-                      .acceptor(
-                          r ->
-                              requestHandlingRSocket == null
-                                  ? EMPTY_SOCKET
-                                  : requestHandlingRSocket)
+                      .acceptor(r -> responder)
                       .transport(weighedClientTransportSupplier.get())
                       .start()
                       .doOnNext(
@@ -260,7 +294,7 @@ public class WeightedReconnectingRSocket implements WeightedRSocket {
                                 .onClose()
                                 .doFinally(
                                     s -> {
-                                      long stop = System.nanoTime();
+                                      long stop = Clock.MONOTONIC.getEpochTime();
 
                                       if (Duration.ofNanos(stop - start).getSeconds() < 2) {
                                         logger.warn(
@@ -274,15 +308,30 @@ public class WeightedReconnectingRSocket implements WeightedRSocket {
                                       }
 
                                       rSocket.dispose();
+                                      if (capabilities == responder) {
+                                        capabilities = null;
+                                      }
 
-                                      connect();
+                                      // a disposed socket was retired, it does not reconnect
+                                      if (!onClose.isDisposed()) {
+                                        connect();
+                                      }
                                     })
                                 .subscribe();
-                            setRSocket(rSocket);
+                            capabilities = responder;
+                            setRSocket(
+                                dictionary == null
+                                    ? rSocket
+                                    : new DictionaryRSocket(
+                                        rSocket,
+                                        dictionary,
+                                        () ->
+                                            responder.supports(
+                                                DestinationSetupFlyweight.FLAG_DICTIONARY)));
                           });
                 }))
         .doOnError(t -> logger.error("error trying to broker", t))
-        .retry()
+        .retry(t -> !onClose.isDisposed())
         .doFinally(
             s -> {
               if (SignalType.ON_ERROR != s) {
@@ -296,157 +345,107 @@ public class WeightedReconnectingRSocket implements WeightedRSocket {
 
   @Override
   public Mono<Void> fireAndForget(Payload payload) {
-    return getRSocket()
-        .flatMap(
-            source -> {
-              long start = start();
-              try {
-                return source
-                    .fireAndForget(payload)
-                    .doOnCancel(() -> stop(start))
-                    .doOnSuccessOrError(
-                        (p, t) -> {
-                          long now = stop(start);
-                          if (t == null || t instanceof TimeoutException) {
-                            record(now - start);
-                          }
-
-                          if (t != null) {
-                            recordError(0.0);
-                          } else {
-                            recordError(1.0);
-                          }
-                        });
-              } catch (Throwable t) {
-                stop(start);
-                recordError(0.0);
-                return Mono.error(t);
-              }
-            });
+    RSocket source = live;
+    if (source != null) {
+      return fireAndForget(source, payload);
+    }
+    return awaitRSocket().flatMap(s -> fireAndForget(s, payload));
+  }
+
+  private Mono<Void> fireAndForget(RSocket source, Payload payload) {
+    try {
+      return new MonoRequestStats<>(source.fireAndForget(payload), this);
+    } catch (Throwable t) {
+      recordError(0.0);
+      return Mono.error(t);
+    }
   }
 
   @Override
   public Mono<Payload> requestResponse(Payload payload) {
-    return getRSocket()
-        .flatMap(
-            source -> {
-              long start = start();
-              try {
-                return source
-                    .requestResponse(payload)
-                    .doOnCancel(() -> stop(start))
-                    .doOnSuccessOrError(
-                        (p, t) -> {
-                          long now = stop(start);
-                          if (t == null || t instanceof TimeoutException) {
-                            record(now - start);
-                          }
-
-                          if (t != null) {
-                            recordError(0.0);
-                          } else {
-                            recordError(1.0);
-                          }
-                        });
-              } catch (Throwable t) {
-                stop(start);
-                recordError(0.0);
-                return Mono.error(t);
-              }
-            });
+    RSocket source = live;
+    if (source != null) {
+      return requestResponse(source, payload);
+    }
+    return awaitRSocket().flatMap(s -> requestResponse(s, payload));
+  }
+
+  private Mono<Payload> requestResponse(RSocket source, Payload payload) {
+    try {
+      return new MonoRequestStats<>(source.requestResponse(payload), this);
+    } catch (Throwable t) {
+      recordError(0.0);
+      return Mono.error(t);
+    }
   }
 
   @Override
   public Flux<Payload> requestStream(Payload payload) {
-    return getRSocket()
-        .flatMapMany(
-            source -> {
-              try {
-                pendingStreams.incrementAndGet();
-                return source
-                    .requestStream(payload)
-                    .doFinally(
-                        s -> {
-                          pendingStreams.decrementAndGet();
-                        })
-                    .doOnNext(
-                        o -> {
-                          recordError(1.0);
-                        })
-                    .doOnError(
-                        t -> {
-                          recordError(0.0);
-                        });
-              } catch (Throwable t) {
-                recordError(0.0);
-                return Flux.error(t);
-              }
-            });
+    RSocket source = live;
+    if (source != null) {
+      return requestStream(source, payload);
+    }
+    return awaitRSocket().flatMapMany(s -> requestStream(s, payload));
+  }
+
+  private Flux<Payload> requestStream(RSocket source, Payload payload) {
+    try {
+      return recordStream(source.requestStream(payload));
+    } catch (Throwable t) {
+      recordError(0.0);
+      return Flux.error(t);
+    }
   }
 
   @Override
   public Flux<Payload> requestChannel(Publisher<Payload> payloads) {
-    return getRSocket()
-        .flatMapMany(
-            source -> {
-              try {
-                pendingStreams.incrementAndGet();
-                return source
-                    .requestChannel(payloads)
-                    .doFinally(
-                        s -> {
-                          pendingStreams.decrementAndGet();
-                        })
-                    .doOnNext(
-                        o -> {
-                          recordError(1.0);
-                        })
-                    .doOnError(
-                        t -> {
-                          recordError(0.0);
-                        });
-              } catch (Throwable t) {
-                recordError(0.0);
-                return Flux.error(t);
-              }
-            });
+    RSocket source = live;
+    if (source != null) {
+      return requestChannel(source, payloads);
+    }
+    return awaitRSocket().flatMapMany(s -> requestChannel(s, payloads));
+  }
+
+  private Flux<Payload> requestChannel(RSocket source, Publisher<Payload> payloads) {
+    try {
+      return recordStream(source.requestChannel(payloads));
+    } catch (Throwable t) {
+      recordError(0.0);
+      return Flux.error(t);
+    }
+  }
+
+  private Flux<Payload> recordStream(Flux<Payload> stream) {
+    return stream
+        .doOnSubscribe(s -> pendingStreams.incrementAndGet())
+        .doFinally(s -> pendingStreams.decrementAndGet())
+        .doOnNext(o -> recordError(1.0))
+        .doOnError(t -> recordError(0.0));
   }
 
   @Override
   public Mono<Void> metadataPush(Payload payload) {
-    return getRSocket()
-        .flatMap(
-            source -> {
-              long start = start();
-              try {
-                return source
-                    .metadataPush(payload)
-                    .doOnCancel(() -> stop(start))
-                    .doOnSuccessOrError(
-                        (p, t) -> {
-                          long now = stop(start);
-                          if (t == null || t instanceof TimeoutException) {
-                            record(now - start);
-                          }
-
-                          if (t != null) {
-                            recordError(0.0);
-                          } else {
-                            recordError(1.0);
-                          }
-                        });
-              } catch (Throwable t) {
-                stop(start);
-                recordError(0.0);
-                return Mono.error(t);
-              }
-            });
+    RSocket source = live;
+    if (source != null) {
+      return metadataPush(source, payload);
+    }
+    return awaitRSocket().flatMap(s -> metadataPush(s, payload));
+  }
+
+  private Mono<Void> metadataPush(RSocket source, Payload payload) {
+    try {
+      return new MonoRequestStats<>(source.metadataPush(payload), this);
+    } catch (Throwable t) {
+      recordError(0.0);
+      return Mono.error(t);
+    }
   }
 
   @Override
-  public synchronized double predictedLatency() {
-    long now = Clock.now();
+  public double predictedLatency() {
+    long now = CLOCK.getEpochTime();
     long elapsed = Math.max(now - stamp, 1L);
+    int pending = pending();
 
     double weight;
     double prediction = median.estimation();
@@ -465,7 +464,7 @@ public class WeightedReconnectingRSocket implements WeightedRSocket {
       weight = median.estimation();
     } else {
       double predicted = prediction * pending;
-      double instant = instantaneous(now);
+      double instant = instantaneous(now, pending);
 
       if (predicted < instant) { // NB: (0.0 < 0.0) == false
         weight = instant / pending; // NB: pending never equal 0 here
@@ -478,37 +477,44 @@ public class WeightedReconnectingRSocket implements WeightedRSocket {
     return weight;
   }
 
-  private synchronized long instantaneous(long now) {
-    return duration + (now - stamp0) * pending;
+  /**
+   * Sum of the time spent so far by all pending requests. The pending count and the sum of start
+   * times are read separately, so a request starting or stopping concurrently can skew the result
+   * slightly; it is clamped at zero.
+   */
+  private long instantaneous(long now, int pending) {
+    return Math.max(0L, pending * (now - epoch) - inflightStarts.sum());
   }
 
-  private synchronized long start() {
-    long now = Clock.now();
+  long start() {
+    long now = CLOCK.getEpochTime();
     interArrivalTime.insert(now - stamp);
-    duration += Math.max(0, now - stamp0) * pending;
-    pending += 1;
+    inflightStarts.add(now - epoch);
+    PENDING.incrementAndGet(this);
     stamp = now;
     stamp0 = now;
     return now;
   }
 
-  private synchronized long stop(long timestamp) {
-    long now = Clock.now();
-    duration += Math.max(0, now - stamp0) * pending - (now - timestamp);
-    pending -= 1;
+  long stop(long timestamp) {
+    long now = CLOCK.getEpochTime();
+    inflightStarts.add(epoch - timestamp);
+    PENDING.decrementAndGet(this);
     stamp0 = now;
     return now;
   }
 
-  private synchronized void record(double roundTripTime) {
+  // the latencies belong to this member only, they are merged into the pool-wide latency band by
+  // the load balancer
+  void record(double roundTripTime) {
     median.insert(roundTripTime);
-    lowerQuantile.insert(roundTripTime);
-    higherQuantile.insert(roundTripTime);
+    peakLatency.insert(roundTripTime);
+    latencies.insert(roundTripTime);
   }
 
-  private synchronized void recordError(double value) {
+  void recordError(double value) {
     errorPercentage.insert(value);
-    errorStamp = Clock.now();
+    errorStamp = CLOCK.getEpochTime();
   }
 
   @Override
@@ -523,12 +529,27 @@ public class WeightedReconnectingRSocket implements WeightedRSocket {
 
   @Override
   public double lowerQuantileLatency() {
-    return lowerQuantile.estimation();
+    return latencies.quantile(lowerQuantile);
   }
 
   @Override
   public double higherQuantileLatency() {
-    return higherQuantile.estimation();
+    return latencies.quantile(higherQuantile);
+  }
+
+  @Override
+  public long activeStreams() {
+    return pendingStreams.get();
+  }
+
+  @Override
+  public LatencySketch latencies() {
+    return latencies;
+  }
+
+  @Override
+  public double peakLatency() {
+    return peakLatency.value();
   }
 
   @Override
@@ -538,17 +559,18 @@ public class WeightedReconnectingRSocket implements WeightedRSocket {
 
   @Override
   public int pending() {
-    return pending;
+    // requests started before a reset of the statistics can still stop afterwards
+    return Math.max(0, pending);
   }
 
   @Override
   public long lastTimeUsedMillis() {
-    return stamp0;
+    return CLOCK.unit().toMillis(stamp0);
   }
 
   @Override
   public double availability() {
-    if (Clock.now() - stamp > tau) {
+    if (CLOCK.getEpochTime() - stamp > tau) {
       recordError(1.0);
     }
     return availability * errorPercentage.value();
@@ -589,6 +611,37 @@ public class WeightedReconnectingRSocket implements WeightedRSocket {
     return currentSink;
   }
 
+  /**
+   * The connection for a request, which is only bounded by the {@link PendingRequestLimit} while
+   * there is none.
+   */
+  private Mono<RSocket> awaitRSocket() {
+    MonoProcessor<RSocket> sink;
+    synchronized (this) {
+      sink = currentSink;
+    }
+    return pendingRequests == null || sink.isSuccess() ? sink : pendingRequests.await(sink);
+  }
+
+  /**
+   * @return a {@link Mono} that completes once this socket is connected to a broker. Resets while
+   *     connecting are waited out, so it only errors if the socket is closed first.
+   */
+  public Mono<Void> connected() {
+    return Mono.defer(this::getRSocket).retry(t -> !isDisposed()).then();
+  }
+
+  /**
+   * @param capability one of the additional flags of {@link
+   *     com.netifi.broker.frames.DestinationSetupFlyweight}
+   * @return whether the broker of the current connection announced the capability, always false
+   *     while disconnected
+   */
+  public boolean supports(short capability) {
+    CapabilitiesRSocket c = capabilities;
+    return c != null && c.supports(capability);
+  }
+
   void setRSocket(RSocket rSocket) {
     MonoProcessor<RSocket> _m;
     synchronized (this) {
@@ -598,6 +651,7 @@ public class WeightedReconnectingRSocket implements WeightedRSocket {
 
     _m.onNext(rSocket);
     _m.onComplete();
+    live = rSocket;
 
     Disposable subscribe =
         onClose
@@ -613,6 +667,9 @@ public class WeightedReconnectingRSocket implements WeightedRSocket {
         .doFinally(
             s -> {
               subscribe.dispose();
+              if (live == rSocket) {
+                live = null;
+              }
               resetMono();
             })
         .subscribe();
@@ -622,9 +679,13 @@ public class WeightedReconnectingRSocket implements WeightedRSocket {
   public String toString() {
     return "WeightedReconnectingRSocket{"
         + "lowerQuantile="
-        + lowerQuantile.estimation()
+        + lowerQuantileLatency()
         + ", higherQuantile="
-        + higherQuantile.estimation()
+        + higherQuantileLatency()
+        + ", p99="
+        + latencies.quantile(0.99)
+        + ", p999="
+        + latencies.quantile(0.999)
         + ", inactivityFactor="
         + inactivityFactor
         + ", tau="
@@ -654,9 +715,11 @@ public class WeightedReconnectingRSocket implements WeightedRSocket {
         + ", stamp0="
         + stamp0
         + ", duration="
-        + duration
+        + instantaneous(CLOCK.getEpochTime(), pending())
         + ", median="
         + median.estimation()
+        + ", peakLatency="
+        + peakLatency.value()
         + ", interArrivalTime="
         + interArrivalTime.value()
         + ", pendingStreams="
@@ -0,0 +1,100 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.rsocket.transport;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Deterministic subset of the brokers a client connects to. Every broker is ranked by a hash of
+ * the client id and the broker address (rendezvous hashing) and the client only connects to the
+ * {@link #size()} highest ranked ones. Clients with different ids rank brokers independently, so
+ * each broker ends up in the aperture of an even share of the clients.
+ *
+ * <p>The rank of a broker doesn't depend on the other brokers: when a broker joins, it displaces
+ * at most one broker from the aperture of a client, and when a broker leaves, at most one broker
+ * takes its place.
+ */
+public final class Aperture {
+  private final int size;
+  private final long seed;
+
+  /**
+   * @param size the number of brokers to connect to
+   * @param clientId id of the client, stable for as long as the subset should be
+   */
+  public Aperture(int size, String clientId) {
+    if (size <= 0) {
+      throw new IllegalArgumentException("aperture size must be greater than 0, got " + size);
+    }
+    this.size = size;
+    this.seed = hash(clientId);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /** @return the suppliers in the aperture, highest ranked first, or all of them if they fit */
+  public List<WeightedClientTransportSupplier> select(
+      List<WeightedClientTransportSupplier> suppliers) {
+    if (suppliers.size() <= size) {
+      return suppliers;
+    }
+
+    List<WeightedClientTransportSupplier> ranked = new ArrayList<>(suppliers);
+    ranked.sort(Comparator.comparingLong(this::rank).reversed());
+    return ranked.subList(0, size);
+  }
+
+  long rank(WeightedClientTransportSupplier supplier) {
+    return mix(seed ^ hash(key(supplier.getSocketAddress())));
+  }
+
+  // the same broker must have the same key on every client, whatever the JDK prints for addresses
+  private static String key(SocketAddress socketAddress) {
+    if (socketAddress instanceof InetSocketAddress) {
+      InetSocketAddress address = (InetSocketAddress) socketAddress;
+      return address.getHostString() + ":" + address.getPort();
+    }
+    return socketAddress.toString();
+  }
+
+  // FNV-1a over the chars, then mixed so that similar keys don't rank alike
+  private static long hash(CharSequence value) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < value.length(); i++) {
+      hash ^= value.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+    return mix(hash);
+  }
+
+  // finalizer of SplitMix64
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+
+  @Override
+  public String toString() {
+    return "Aperture{size=" + size + "}";
+  }
+}
@@ -16,11 +16,14 @@
 package com.netifi.broker.rsocket.transport;
 
 import com.netifi.broker.info.Broker;
-import com.netifi.common.stats.Ewma;
+import com.netifi.common.stats.ConcurrentEwma;
 import io.rsocket.Closeable;
+import io.rsocket.DuplexConnection;
 import io.rsocket.transport.ClientTransport;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
@@ -37,9 +40,10 @@ public class WeightedClientTransportSupplier implements Supplier<ClientTransport
       LoggerFactory.getLogger(WeightedClientTransportSupplier.class);
   private final MonoProcessor<Void> onClose;
   private final Function<SocketAddress, ClientTransport> clientTransportFunction;
-  private final Ewma errorPercentage;
+  private final ConcurrentEwma errorPercentage;
   private final SocketAddress socketAddress;
   private final AtomicInteger selectCount;
+  private final Set<DuplexConnection> connections;
   private final Broker broker;
 
   public WeightedClientTransportSupplier(
@@ -49,8 +53,9 @@ public class WeightedClientTransportSupplier implements Supplier<ClientTransport
     this.broker = broker;
     this.clientTransportFunction = clientTransportFunction;
     this.socketAddress = addressSelector.apply(broker);
-    this.errorPercentage = new Ewma(5, TimeUnit.SECONDS, 1.0);
+    this.errorPercentage = new ConcurrentEwma(5, TimeUnit.SECONDS, 1.0);
     this.selectCount = new AtomicInteger();
+    this.connections = ConcurrentHashMap.newKeySet();
     this.onClose = MonoProcessor.create();
   }
 
@@ -76,6 +81,7 @@ public class WeightedClientTransportSupplier implements Supplier<ClientTransport
 
                   Disposable onCloseDisposable =
                       onClose.doFinally(s -> duplexConnection.dispose()).subscribe();
+                  connections.add(duplexConnection);
 
                   duplexConnection
                       .onClose()
@@ -85,6 +91,7 @@ public class WeightedClientTransportSupplier implements Supplier<ClientTransport
                             logger.debug(
                                 "closed connection {} - active connections {}", socketAddress, d);
                             onCloseDisposable.dispose();
+                            connections.remove(duplexConnection);
                           })
                       .subscribe();
 
@@ -116,6 +123,16 @@ public class WeightedClientTransportSupplier implements Supplier<ClientTransport
     return socketAddress;
   }
 
+  /**
+   * Closes the connections opened to the broker so far, without closing the supplier: connections
+   * that reconnect pick a broker again.
+   */
+  public void closeConnections() {
+    for (DuplexConnection connection : connections) {
+      connection.dispose();
+    }
+  }
+
   @Override
   public void dispose() {
     onClose.onComplete();
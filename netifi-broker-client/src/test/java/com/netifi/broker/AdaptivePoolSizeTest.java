@@ -0,0 +1,110 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker;
+
+import com.netifi.broker.rsocket.WeightedRSocket;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class AdaptivePoolSizeTest {
+  private static final long NOW = 1_000_000;
+  private static final long IDLE_TIMEOUT = 60_000;
+
+  @Test
+  public void testShouldGrowWhenPendingBuildsUp() {
+    AdaptivePoolSize poolSize = new AdaptivePoolSize(1, 4, IDLE_TIMEOUT);
+
+    WeightedRSocket[] quiet = {member(2, NOW), member(3, NOW)};
+    Assert.assertFalse(poolSize.shouldGrow(quiet));
+
+    WeightedRSocket[] busy = {member(20, NOW), member(17, NOW)};
+    Assert.assertTrue(poolSize.shouldGrow(busy));
+  }
+
+  @Test
+  public void testShouldGrowWhenEveryMemberPredictsQueueing() {
+    AdaptivePoolSize poolSize = new AdaptivePoolSize(1, 4, IDLE_TIMEOUT);
+
+    WeightedRSocket slow1 = member(1, NOW);
+    WeightedRSocket slow2 = member(1, NOW);
+    Mockito.when(slow1.predictedLatency()).thenReturn(300.0);
+    Mockito.when(slow2.predictedLatency()).thenReturn(250.0);
+    Assert.assertTrue(poolSize.shouldGrow(new WeightedRSocket[] {slow1, slow2}));
+
+    WeightedRSocket fast = member(1, NOW);
+    Assert.assertFalse(poolSize.shouldGrow(new WeightedRSocket[] {slow1, fast}));
+  }
+
+  @Test
+  public void testShouldNotGrowPastMaxSize() {
+    AdaptivePoolSize poolSize = new AdaptivePoolSize(1, 2, IDLE_TIMEOUT);
+
+    WeightedRSocket[] busy = {member(100, NOW), member(100, NOW)};
+    Assert.assertFalse(poolSize.shouldGrow(busy));
+  }
+
+  @Test
+  public void testShouldRetireIdlestMember() {
+    AdaptivePoolSize poolSize = new AdaptivePoolSize(1, 4, IDLE_TIMEOUT);
+
+    WeightedRSocket[] members = {
+      member(1, NOW), member(0, NOW - 2 * IDLE_TIMEOUT), member(0, NOW - 3 * IDLE_TIMEOUT)
+    };
+    Assert.assertEquals(2, poolSize.retirable(members, NOW));
+  }
+
+  @Test
+  public void testShouldKeepMembersInUse() {
+    AdaptivePoolSize poolSize = new AdaptivePoolSize(1, 4, IDLE_TIMEOUT);
+
+    WeightedRSocket[] recent = {member(0, NOW), member(0, NOW - IDLE_TIMEOUT / 2)};
+    Assert.assertEquals(-1, poolSize.retirable(recent, NOW));
+
+    // the remaining member would carry too many pending requests
+    WeightedRSocket[] loaded = {member(6, NOW), member(0, NOW - 2 * IDLE_TIMEOUT)};
+    Assert.assertEquals(-1, poolSize.retirable(loaded, NOW));
+  }
+
+  @Test
+  public void testShouldKeepMembersWithOpenStreams() {
+    AdaptivePoolSize poolSize = new AdaptivePoolSize(1, 4, IDLE_TIMEOUT);
+
+    WeightedRSocket streaming = member(0, NOW - 2 * IDLE_TIMEOUT);
+    Mockito.when(streaming.activeStreams()).thenReturn(1L);
+    WeightedRSocket[] members = {member(0, NOW), streaming};
+    Assert.assertEquals(-1, poolSize.retirable(members, NOW));
+  }
+
+  @Test
+  public void testShouldNotShrinkBelowMinSize() {
+    AdaptivePoolSize poolSize = new AdaptivePoolSize(2, 4, IDLE_TIMEOUT);
+
+    WeightedRSocket[] members = {
+      member(0, NOW - 2 * IDLE_TIMEOUT), member(0, NOW - 2 * IDLE_TIMEOUT)
+    };
+    Assert.assertEquals(-1, poolSize.retirable(members, NOW));
+  }
+
+  private static WeightedRSocket member(int pending, long lastTimeUsedMillis) {
+    WeightedRSocket member = Mockito.mock(WeightedRSocket.class);
+    Mockito.when(member.pending()).thenReturn(pending);
+    Mockito.when(member.lastTimeUsedMillis()).thenReturn(lastTimeUsedMillis);
+    Mockito.when(member.predictedLatency()).thenReturn(100.0);
+    Mockito.when(member.higherQuantileLatency()).thenReturn(200.0);
+    return member;
+  }
+}
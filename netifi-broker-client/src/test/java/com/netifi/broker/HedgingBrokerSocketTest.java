@@ -0,0 +1,113 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker;
+
+import com.netifi.broker.rsocket.HedgingBrokerSocket;
+import com.netifi.common.tags.Tags;
+import io.rsocket.AbstractRSocket;
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import io.rsocket.util.ByteBufPayload;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Assert;
+import org.junit.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+public class HedgingBrokerSocketTest {
+  private final AtomicBoolean cancelled = new AtomicBoolean();
+  private final RSocket slow =
+      new AbstractRSocket() {
+        @Override
+        public Mono<Payload> requestResponse(Payload payload) {
+          payload.release();
+          return Mono.<Payload>never().doOnCancel(() -> cancelled.set(true));
+        }
+      };
+  private final AtomicReference<String> fastData = new AtomicReference<>();
+  private final RSocket fast =
+      new AbstractRSocket() {
+        @Override
+        public Mono<Payload> requestResponse(Payload payload) {
+          fastData.set(payload.getDataUtf8());
+          return Mono.just(payload);
+        }
+      };
+
+  @Test
+  public void testHedgeAnswersForSlowConnection() {
+    AtomicInteger selections = new AtomicInteger();
+    // the request and the first hedge attempt select the slow connection
+    BrokerService service = () -> selections.getAndIncrement() < 2 ? slow : fast;
+    VirtualTimeScheduler scheduler = VirtualTimeScheduler.create();
+    HedgingBrokerSocket socket =
+        new HedgingBrokerSocket(
+            service.group("group", Tags.empty()),
+            service::selectRSocket,
+            Duration.ofMillis(50),
+            0.0,
+            1.0,
+            scheduler);
+
+    Payload request = ByteBufPayload.create("data");
+    MonoProcessor<Payload> response = socket.requestResponse(request).toProcessor();
+    Assert.assertFalse(response.isTerminated());
+
+    scheduler.advanceTimeBy(Duration.ofMillis(50));
+    Assert.assertEquals("data", fastData.get());
+    Assert.assertEquals("data", response.peek().getDataUtf8());
+    Assert.assertTrue(cancelled.get());
+    Assert.assertEquals(3, selections.get());
+    Assert.assertEquals(0, request.refCnt());
+    response.peek().release();
+  }
+
+  @Test
+  public void testHedgesStayWithinBudget() {
+    AtomicInteger selections = new AtomicInteger();
+    BrokerService service = () -> selections.getAndIncrement() % 2 == 0 ? slow : fast;
+    VirtualTimeScheduler scheduler = VirtualTimeScheduler.create();
+    HedgingBrokerSocket socket =
+        new HedgingBrokerSocket(
+            service.group("group", Tags.empty()),
+            service::selectRSocket,
+            Duration.ofMillis(50),
+            0.0,
+            0.5,
+            scheduler);
+
+    // the first request only earns half a hedge
+    Payload request = ByteBufPayload.create("data");
+    MonoProcessor<Payload> response = socket.requestResponse(request).toProcessor();
+    scheduler.advanceTimeBy(Duration.ofMillis(50));
+    Assert.assertFalse(response.isTerminated());
+    Assert.assertEquals(0, request.refCnt());
+    response.cancel();
+
+    // the second one earns the other half
+    Payload request2 = ByteBufPayload.create("data");
+    MonoProcessor<Payload> response2 = socket.requestResponse(request2).toProcessor();
+    scheduler.advanceTimeBy(Duration.ofMillis(50));
+    Assert.assertTrue(response2.isTerminated());
+    Assert.assertEquals("data", fastData.get());
+    Assert.assertEquals(0, request2.refCnt());
+    response2.peek().release();
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.loadbalancer;
+
+import com.netifi.broker.rsocket.WeightedRSocket;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class LoadBalancersTest {
+
+  @Test
+  public void testShouldSelectOnlyMember() {
+    WeightedRSocket socket = socket(1.0, 0, 10.0);
+    WeightedRSocket[] members = new WeightedRSocket[] {socket};
+
+    Assert.assertSame(socket, LoadBalancers.weighted().select(members));
+    Assert.assertSame(socket, LoadBalancers.leastPending().select(members));
+    Assert.assertSame(socket, LoadBalancers.roundRobin().select(members));
+    Assert.assertSame(socket, LoadBalancers.peakEwma().select(members));
+  }
+
+  @Test
+  public void testLeastPendingShouldPreferFewerPending() {
+    WeightedRSocket busy = socket(1.0, 10, 10.0);
+    WeightedRSocket idle = socket(1.0, 1, 10.0);
+
+    LoadBalancer loadBalancer = LoadBalancers.leastPending();
+    for (int i = 0; i < 100; i++) {
+      Assert.assertSame(idle, loadBalancer.select(new WeightedRSocket[] {busy, idle}));
+    }
+  }
+
+  @Test
+  public void testPeakEwmaShouldPreferLowerLatency() {
+    WeightedRSocket slow = socket(1.0, 1, 100.0);
+    WeightedRSocket fast = socket(1.0, 1, 10.0);
+
+    LoadBalancer loadBalancer = LoadBalancers.peakEwma();
+    for (int i = 0; i < 100; i++) {
+      Assert.assertSame(fast, loadBalancer.select(new WeightedRSocket[] {slow, fast}));
+    }
+  }
+
+  @Test
+  public void testRoundRobinShouldSkipUnavailableMembers() {
+    WeightedRSocket s1 = socket(1.0, 0, 10.0);
+    WeightedRSocket s2 = socket(0.0, 0, 10.0);
+    WeightedRSocket s3 = socket(1.0, 0, 10.0);
+    WeightedRSocket[] members = new WeightedRSocket[] {s1, s2, s3};
+
+    LoadBalancer loadBalancer = LoadBalancers.roundRobin();
+    Assert.assertSame(s1, loadBalancer.select(members));
+    Assert.assertSame(s3, loadBalancer.select(members));
+    Assert.assertSame(s3, loadBalancer.select(members));
+    Assert.assertSame(s1, loadBalancer.select(members));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testShouldRejectUnknownName() {
+    LoadBalancers.fromName("random");
+  }
+
+  private static WeightedRSocket socket(double availability, int pending, double latency) {
+    WeightedRSocket socket = Mockito.mock(WeightedRSocket.class);
+    Mockito.when(socket.availability()).thenReturn(availability);
+    Mockito.when(socket.pending()).thenReturn(pending);
+    Mockito.when(socket.predictedLatency()).thenReturn(latency);
+    Mockito.when(socket.peakLatency()).thenReturn(latency);
+    Mockito.when(socket.lowerQuantileLatency()).thenReturn(latency);
+    Mockito.when(socket.higherQuantileLatency()).thenReturn(latency);
+    return socket;
+  }
+}
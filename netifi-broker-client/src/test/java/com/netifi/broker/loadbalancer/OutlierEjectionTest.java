@@ -0,0 +1,139 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.loadbalancer;
+
+import com.netifi.broker.rsocket.WeightedRSocket;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class OutlierEjectionTest {
+
+  @Test
+  public void testShouldEjectMemberWithLowSuccessRate() {
+    WeightedRSocket healthy = socket(1.0, 10.0);
+    WeightedRSocket failing = socket(0.2, 10.0);
+    WeightedRSocket[] members = new WeightedRSocket[] {healthy, failing};
+
+    OutlierEjection outlierEjection = new OutlierEjection();
+    List<OutlierEvent> events = new ArrayList<>();
+    outlierEjection.events().subscribe(events::add);
+    outlierEjection.check(members, System.currentTimeMillis());
+
+    Assert.assertEquals(1, events.size());
+    Assert.assertEquals(OutlierEvent.Type.EJECTED, events.get(0).type());
+    Assert.assertSame(failing, events.get(0).member());
+    LoadBalancer loadBalancer = LoadBalancers.roundRobin();
+    for (int i = 0; i < 10; i++) {
+      Assert.assertSame(healthy, outlierEjection.select(loadBalancer, members));
+    }
+  }
+
+  @Test
+  public void testShouldEjectMemberWithOutlyingLatency() {
+    WeightedRSocket s1 = socket(1.0, 10.0);
+    WeightedRSocket s2 = socket(1.0, 12.0);
+    WeightedRSocket slow = socket(1.0, 100.0);
+    WeightedRSocket[] members = new WeightedRSocket[] {s1, s2, slow};
+
+    OutlierEjection outlierEjection = new OutlierEjection();
+    outlierEjection.check(members, System.currentTimeMillis());
+
+    LoadBalancer loadBalancer = LoadBalancers.roundRobin();
+    for (int i = 0; i < 10; i++) {
+      Assert.assertNotSame(slow, outlierEjection.select(loadBalancer, members));
+    }
+  }
+
+  @Test
+  public void testShouldEjectAtMostHalfOfThePool() {
+    WeightedRSocket s1 = socket(0.1, 10.0);
+    WeightedRSocket s2 = socket(0.1, 10.0);
+    WeightedRSocket[] members = new WeightedRSocket[] {s1, s2};
+
+    OutlierEjection outlierEjection = new OutlierEjection();
+    List<OutlierEvent> events = new ArrayList<>();
+    outlierEjection.events().subscribe(events::add);
+    outlierEjection.check(members, System.currentTimeMillis());
+
+    Assert.assertEquals(1, events.size());
+    Assert.assertSame(s1, events.get(0).member());
+    Assert.assertSame(s2, outlierEjection.select(LoadBalancers.roundRobin(), members));
+  }
+
+  @Test
+  public void testShouldProbeAndRestoreEjectedMember() {
+    WeightedRSocket healthy = socket(1.0, 10.0);
+    WeightedRSocket failing = socket(0.2, 10.0);
+    WeightedRSocket[] members = new WeightedRSocket[] {healthy, failing};
+
+    OutlierEjection outlierEjection = new OutlierEjection(0.5, 5.0, 1_000, 1_000);
+    List<OutlierEvent> events = new ArrayList<>();
+    outlierEjection.events().subscribe(events::add);
+    long now = System.currentTimeMillis();
+    outlierEjection.check(members, now);
+    Mockito.when(failing.errorPercentage()).thenReturn(1.0);
+
+    outlierEjection.check(members, now + 500);
+    Assert.assertEquals(1, events.size());
+    outlierEjection.check(members, now + 1_000);
+    Assert.assertEquals(OutlierEvent.Type.PROBING, events.get(1).type());
+    outlierEjection.check(members, now + 2_000);
+    Assert.assertEquals(OutlierEvent.Type.RESTORED, events.get(2).type());
+    Assert.assertSame(failing, events.get(2).member());
+
+    LoadBalancer loadBalancer = LoadBalancers.roundRobin();
+    boolean selected = false;
+    for (int i = 0; i < 10; i++) {
+      selected |= outlierEjection.select(loadBalancer, members) == failing;
+    }
+    Assert.assertTrue(selected);
+  }
+
+  @Test
+  public void testShouldEjectProbedMemberForLonger() {
+    WeightedRSocket healthy = socket(1.0, 10.0);
+    WeightedRSocket failing = socket(0.2, 10.0);
+    WeightedRSocket[] members = new WeightedRSocket[] {healthy, failing};
+
+    OutlierEjection outlierEjection = new OutlierEjection(0.5, 5.0, 1_000, 1_000);
+    List<OutlierEvent> events = new ArrayList<>();
+    outlierEjection.events().subscribe(events::add);
+    long now = System.currentTimeMillis();
+    outlierEjection.check(members, now);
+    outlierEjection.check(members, now + 1_000);
+    outlierEjection.check(members, now + 1_500);
+
+    Assert.assertEquals(3, events.size());
+    Assert.assertEquals(OutlierEvent.Type.EJECTED, events.get(2).type());
+    // ejected for twice the base ejection time the second time around
+    outlierEjection.check(members, now + 3_000);
+    Assert.assertEquals(3, events.size());
+    outlierEjection.check(members, now + 3_500);
+    Assert.assertEquals(OutlierEvent.Type.PROBING, events.get(3).type());
+  }
+
+  private static WeightedRSocket socket(double successRate, double latency) {
+    WeightedRSocket socket = Mockito.mock(WeightedRSocket.class);
+    Mockito.when(socket.availability()).thenReturn(1.0);
+    Mockito.when(socket.errorPercentage()).thenReturn(successRate);
+    Mockito.when(socket.medianLatency()).thenReturn(latency);
+    Mockito.when(socket.predictedLatency()).thenReturn(latency);
+    return socket;
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.rsocket;
+
+import com.netifi.broker.frames.GroupFlyweight;
+import com.netifi.common.tags.Tags;
+import io.netty.buffer.ByteBuf;
+import io.rsocket.AbstractRSocket;
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import io.rsocket.util.ByteBufPayload;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+public class BatchingBrokerSocketTest {
+
+  @Test
+  public void testBatchesAreUnwrappedIntoMessages() {
+    List<String> received = new ArrayList<>();
+    RSocket handler =
+        new AbstractRSocket() {
+          @Override
+          public Mono<Void> fireAndForget(Payload payload) {
+            received.add(payload.getMetadataUtf8() + "/" + payload.getDataUtf8());
+            payload.release();
+            return Mono.empty();
+          }
+        };
+    UnwrappingRSocket unwrapping = new UnwrappingRSocket(handler);
+    List<Payload> batches = new ArrayList<>();
+    RSocket broker =
+        new AbstractRSocket() {
+          @Override
+          public Mono<Void> fireAndForget(Payload payload) {
+            batches.add(payload);
+            return unwrapping.fireAndForget(payload);
+          }
+        };
+
+    VirtualTimeScheduler scheduler = VirtualTimeScheduler.create();
+    ByteBuf route = GroupFlyweight.encodeRoute("group", Tags.empty());
+    BatchingBrokerSocket socket =
+        new BatchingBrokerSocket(
+            Mockito.mock(BrokerSocket.class),
+            route,
+            () -> broker,
+            2,
+            BatchingBrokerSocket.DEFAULT_MAX_BATCH_BYTES,
+            Duration.ofMillis(10),
+            scheduler);
+
+    for (int i = 0; i < 3; i++) {
+      socket.fireAndForget(ByteBufPayload.create("data-" + i, "metadata-" + i)).block();
+    }
+
+    // the first two filled a batch, the third waits for the delay
+    Assert.assertEquals(1, batches.size());
+    Assert.assertEquals(2, received.size());
+
+    scheduler.advanceTimeBy(Duration.ofMillis(10));
+    Assert.assertEquals(2, batches.size());
+    Assert.assertEquals(3, received.size());
+    Assert.assertEquals("metadata-2/data-2", received.get(2));
+  }
+
+  @Test
+  public void testMessagesAfterDisposeAreRejected() {
+    List<Payload> batches = new ArrayList<>();
+    RSocket broker =
+        new AbstractRSocket() {
+          @Override
+          public Mono<Void> fireAndForget(Payload payload) {
+            batches.add(payload);
+            return Mono.empty();
+          }
+        };
+
+    VirtualTimeScheduler scheduler = VirtualTimeScheduler.create();
+    BatchingBrokerSocket socket =
+        new BatchingBrokerSocket(
+            Mockito.mock(BrokerSocket.class),
+            GroupFlyweight.encodeRoute("group", Tags.empty()),
+            () -> broker,
+            2,
+            BatchingBrokerSocket.DEFAULT_MAX_BATCH_BYTES,
+            Duration.ofMillis(10),
+            scheduler);
+
+    socket.fireAndForget(ByteBufPayload.create("data-0", "metadata-0")).block();
+    socket.dispose();
+    Assert.assertEquals(1, batches.size());
+
+    Payload late = ByteBufPayload.create("data-1", "metadata-1");
+    StepVerifier.create(socket.fireAndForget(late))
+        .expectError(IllegalStateException.class)
+        .verify();
+    Assert.assertEquals(0, late.refCnt());
+
+    scheduler.advanceTimeBy(Duration.ofMillis(10));
+    Assert.assertEquals(1, batches.size());
+    batches.forEach(Payload::release);
+  }
+}
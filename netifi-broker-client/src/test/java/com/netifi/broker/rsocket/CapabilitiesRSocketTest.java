@@ -0,0 +1,74 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.rsocket;
+
+import com.netifi.broker.frames.CapabilitiesFlyweight;
+import com.netifi.broker.frames.DestinationSetupFlyweight;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.rsocket.AbstractRSocket;
+import io.rsocket.Payload;
+import io.rsocket.util.ByteBufPayload;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+import reactor.core.publisher.Mono;
+
+public class CapabilitiesRSocketTest {
+
+  @Test
+  public void testShouldKeepCapabilitiesPushedByBroker() {
+    AtomicInteger pushes = new AtomicInteger();
+    CapabilitiesRSocket responder = new CapabilitiesRSocket(responder(pushes));
+    Assert.assertFalse(responder.supports(DestinationSetupFlyweight.FLAG_COMPRESSION));
+
+    Payload payload =
+        ByteBufPayload.create(
+            Unpooled.EMPTY_BUFFER,
+            CapabilitiesFlyweight.encode(
+                ByteBufAllocator.DEFAULT, DestinationSetupFlyweight.FLAG_COMPRESSION));
+    responder.metadataPush(payload).block();
+
+    Assert.assertTrue(responder.supports(DestinationSetupFlyweight.FLAG_COMPRESSION));
+    Assert.assertFalse(responder.supports(DestinationSetupFlyweight.FLAG_DICTIONARY));
+    Assert.assertEquals(0, payload.refCnt());
+    Assert.assertEquals(0, pushes.get());
+  }
+
+  @Test
+  public void testShouldHandOtherPushesToResponder() {
+    AtomicInteger pushes = new AtomicInteger();
+    CapabilitiesRSocket responder = new CapabilitiesRSocket(responder(pushes));
+
+    responder
+        .metadataPush(ByteBufPayload.create(Unpooled.EMPTY_BUFFER, Unpooled.EMPTY_BUFFER))
+        .block();
+
+    Assert.assertEquals(1, pushes.get());
+    Assert.assertFalse(responder.supports(DestinationSetupFlyweight.FLAG_COMPRESSION));
+  }
+
+  private static AbstractRSocket responder(AtomicInteger pushes) {
+    return new AbstractRSocket() {
+      @Override
+      public Mono<Void> metadataPush(Payload payload) {
+        pushes.incrementAndGet();
+        payload.release();
+        return Mono.empty();
+      }
+    };
+  }
+}
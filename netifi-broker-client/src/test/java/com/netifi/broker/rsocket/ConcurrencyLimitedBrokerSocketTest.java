@@ -0,0 +1,84 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.rsocket;
+
+import io.rsocket.Payload;
+import io.rsocket.exceptions.RejectedException;
+import io.rsocket.util.ByteBufPayload;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+public class ConcurrencyLimitedBrokerSocketTest {
+
+  @Test
+  public void testShouldRejectRequestsOverTheLimit() {
+    BrokerSocket delegate = Mockito.mock(BrokerSocket.class);
+    Mockito.when(delegate.requestResponse(Mockito.any())).thenReturn(Mono.never());
+    ConcurrencyLimitedBrokerSocket socket = new ConcurrencyLimitedBrokerSocket(delegate, 2, 1, 10);
+
+    socket.requestResponse(ByteBufPayload.create("1")).subscribe();
+    socket.requestResponse(ByteBufPayload.create("2")).subscribe();
+    Assert.assertEquals(2, socket.inFlight());
+
+    Payload payload = ByteBufPayload.create("3");
+    StepVerifier.create(socket.requestResponse(payload))
+        .expectError(RejectedException.class)
+        .verify();
+    Assert.assertEquals(1, socket.rejected());
+    Assert.assertEquals(0, payload.refCnt());
+  }
+
+  @Test
+  public void testShouldReleaseSlotWhenResponseArrives() {
+    BrokerSocket delegate = Mockito.mock(BrokerSocket.class);
+    Mockito.when(delegate.requestResponse(Mockito.any()))
+        .thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+    ConcurrencyLimitedBrokerSocket socket = new ConcurrencyLimitedBrokerSocket(delegate, 1, 1, 10);
+
+    for (int i = 0; i < 3; i++) {
+      socket.requestResponse(ByteBufPayload.create("data")).block().release();
+    }
+    Assert.assertEquals(0, socket.inFlight());
+    Assert.assertEquals(0, socket.rejected());
+  }
+
+  @Test
+  public void testLimitFollowsRoundTripTimes() {
+    BrokerSocket delegate = Mockito.mock(BrokerSocket.class);
+    Mockito.when(delegate.requestResponse(Mockito.any())).thenReturn(Mono.never());
+    ConcurrencyLimitedBrokerSocket socket =
+        new ConcurrencyLimitedBrokerSocket(delegate, 20, 1, 100);
+    for (int i = 0; i < 20; i++) {
+      socket.requestResponse(ByteBufPayload.create("data")).subscribe();
+    }
+
+    // steady round trip times let the limit grow
+    for (int i = 0; i < 10; i++) {
+      socket.sample(1_000);
+    }
+    int grown = socket.limit();
+    Assert.assertTrue(grown > 20);
+
+    // round trips far above the average make it shrink
+    for (int i = 0; i < 10; i++) {
+      socket.sample(100_000);
+    }
+    Assert.assertTrue(socket.limit() < grown);
+  }
+}
@@ -15,6 +15,7 @@
  */
 package com.netifi.broker.rsocket;
 
+import com.netifi.broker.frames.DestinationSetupFlyweight;
 import io.rsocket.AbstractRSocket;
 import io.rsocket.Payload;
 import io.rsocket.RSocket;
@@ -96,4 +97,21 @@ public class DefaultBrokerClientSocketTest {
     Assert.assertTrue(block == outgoing);
     Mockito.verify(incoming, Mockito.times(0)).release();
   }
+
+  @Test
+  public void testReferencesOnlyWhereSupported() {
+    Payload plain = ByteBufPayload.create("plain");
+    Payload reference = ByteBufPayload.create("reference");
+
+    WeightedReconnectingRSocket mock = Mockito.mock(WeightedReconnectingRSocket.class);
+    Mockito.when(mock.requestResponse(Mockito.any(Payload.class)))
+        .thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+    DefaultBrokerSocket socket =
+        new DefaultBrokerSocket(payload -> plain, payload -> reference, () -> mock, null);
+
+    Assert.assertTrue(socket.requestResponse(Mockito.mock(Payload.class)).block() == plain);
+
+    Mockito.when(mock.supports(DestinationSetupFlyweight.FLAG_DICTIONARY)).thenReturn(true);
+    Assert.assertTrue(socket.requestResponse(Mockito.mock(Payload.class)).block() == reference);
+  }
 }
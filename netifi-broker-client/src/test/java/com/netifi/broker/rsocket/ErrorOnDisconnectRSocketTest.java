@@ -0,0 +1,93 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.rsocket;
+
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import io.rsocket.util.EmptyPayload;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+import reactor.test.StepVerifier;
+
+public class ErrorOnDisconnectRSocketTest {
+
+  @Test
+  public void testShouldErrorInFlightRequestsOnDispose() {
+    AtomicBoolean cancelled = new AtomicBoolean();
+    RSocket source = Mockito.mock(RSocket.class);
+    Mockito.when(source.requestResponse(Mockito.any()))
+        .thenReturn(Mono.<Payload>never().doOnCancel(() -> cancelled.set(true)));
+    Mockito.when(source.requestStream(Mockito.any())).thenReturn(Flux.never());
+    ErrorOnDisconnectRSocket rSocket = new ErrorOnDisconnectRSocket(source);
+
+    MonoProcessor<Payload> response = rSocket.requestResponse(EmptyPayload.INSTANCE).toProcessor();
+    StepVerifier.create(rSocket.requestStream(EmptyPayload.INSTANCE))
+        .then(rSocket::dispose)
+        .expectError(CancellationException.class)
+        .verify();
+
+    Assert.assertTrue(response.getError() instanceof CancellationException);
+    Assert.assertTrue(cancelled.get());
+    Mockito.verify(source).dispose();
+  }
+
+  @Test
+  public void testShouldErrorRequestsAfterDispose() {
+    RSocket source = Mockito.mock(RSocket.class);
+    Mockito.when(source.requestResponse(Mockito.any())).thenReturn(Mono.never());
+    ErrorOnDisconnectRSocket rSocket = new ErrorOnDisconnectRSocket(source);
+    rSocket.dispose();
+
+    StepVerifier.create(rSocket.requestResponse(EmptyPayload.INSTANCE))
+        .expectError(CancellationException.class)
+        .verify();
+  }
+
+  @Test
+  public void testShouldPassOnCompletedRequests() {
+    RSocket source = Mockito.mock(RSocket.class);
+    Mockito.when(source.requestResponse(Mockito.any()))
+        .thenReturn(Mono.just(EmptyPayload.INSTANCE));
+    ErrorOnDisconnectRSocket rSocket = new ErrorOnDisconnectRSocket(source);
+
+    StepVerifier.create(rSocket.requestResponse(EmptyPayload.INSTANCE))
+        .expectNext(EmptyPayload.INSTANCE)
+        .verifyComplete();
+    rSocket.dispose();
+  }
+
+  @Test
+  public void testShouldNotKeepRequestsCompletedWhileSubscribing() {
+    RSocket source = Mockito.mock(RSocket.class);
+    Mockito.when(source.requestResponse(Mockito.any()))
+        .thenReturn(Mono.just(EmptyPayload.INSTANCE));
+    Mockito.when(source.requestStream(Mockito.any()))
+        .thenReturn(Flux.just(EmptyPayload.INSTANCE, EmptyPayload.INSTANCE));
+    ErrorOnDisconnectRSocket rSocket = new ErrorOnDisconnectRSocket(source);
+
+    // the sources complete synchronously on the first request, from within onSubscribe
+    Assert.assertEquals(
+        EmptyPayload.INSTANCE, rSocket.requestResponse(EmptyPayload.INSTANCE).block());
+    Assert.assertEquals(2, rSocket.requestStream(EmptyPayload.INSTANCE).count().block().intValue());
+    Assert.assertEquals(0, rSocket.inFlight());
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.rsocket;
+
+import com.netifi.broker.frames.FrameHeaderFlyweight;
+import com.netifi.broker.frames.FrameType;
+import com.netifi.broker.frames.GroupFlyweight;
+import com.netifi.common.tags.Tags;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.rsocket.AbstractRSocket;
+import io.rsocket.Payload;
+import io.rsocket.util.ByteBufPayload;
+import java.nio.charset.StandardCharsets;
+import org.junit.Assert;
+import org.junit.Test;
+import reactor.core.publisher.Mono;
+
+public class PayloadCompressionTest {
+
+  @Test
+  public void testRoundTrip() {
+    // spans several chunks
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; text.length() < 100_000; i++) {
+      text.append("{\"id\":").append(i).append(",\"name\":\"name-").append(i % 7).append("\"}");
+    }
+    ByteBuf data = Unpooled.copiedBuffer(text, StandardCharsets.UTF_8);
+
+    ByteBuf compressed = PayloadCompression.compress(ByteBufAllocator.DEFAULT, data);
+    Assert.assertTrue(compressed.readableBytes() < data.readableBytes());
+
+    ByteBuf decompressed = PayloadCompression.decompress(ByteBufAllocator.DEFAULT, compressed);
+    Assert.assertTrue(ByteBufUtil.equals(data, decompressed));
+    compressed.release();
+    decompressed.release();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testDecompressedLengthIsBounded() {
+    ByteBuf data = Unpooled.wrappedBuffer(new byte[65536]);
+    ByteBuf compressed = PayloadCompression.compress(ByteBufAllocator.DEFAULT, data);
+    try {
+      PayloadCompression.decompress(ByteBufAllocator.DEFAULT, compressed, 65535);
+    } finally {
+      compressed.release();
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testUnknownCodecIsRejected() {
+    ByteBuf data = Unpooled.wrappedBuffer(new byte[4096]);
+    ByteBuf compressed = PayloadCompression.compress(ByteBufAllocator.DEFAULT, data);
+    compressed.setByte(compressed.readerIndex(), PayloadCompression.CODEC_SNAPPY + 1);
+    try {
+      PayloadCompression.decompress(ByteBufAllocator.DEFAULT, compressed);
+    } finally {
+      compressed.release();
+    }
+  }
+
+  @Test
+  public void testSmallDataIsNotCompressed() {
+    PayloadCompression compression = new PayloadCompression(1024);
+    ByteBuf metadata =
+        GroupFlyweight.encode(
+            ByteBufAllocator.DEFAULT, "group", Unpooled.EMPTY_BUFFER, Tags.empty());
+    Payload payload = ByteBufPayload.create(Unpooled.wrappedBuffer(new byte[1023]), metadata);
+
+    Assert.assertSame(payload, compression.compress(payload));
+    Assert.assertFalse(FrameHeaderFlyweight.dataCompressed(payload.sliceMetadata()));
+    payload.release();
+  }
+
+  @Test
+  public void testCompressedDataIsUnwrapped() {
+    PayloadCompression compression = new PayloadCompression(1024);
+    ByteBuf userMetadata = Unpooled.copiedBuffer("metadata", StandardCharsets.UTF_8);
+    ByteBuf metadata =
+        GroupFlyweight.encode(ByteBufAllocator.DEFAULT, "group", userMetadata, Tags.empty());
+    ByteBuf data = Unpooled.wrappedBuffer(new byte[4096]);
+    Payload compressed = compression.compress(ByteBufPayload.create(data, metadata));
+
+    Assert.assertTrue(compressed.sliceData().readableBytes() < 4096);
+    Assert.assertTrue(FrameHeaderFlyweight.dataCompressed(compressed.sliceMetadata()));
+    Assert.assertEquals(
+        FrameType.GROUP, FrameHeaderFlyweight.frameType(compressed.sliceMetadata()));
+
+    Payload[] received = new Payload[1];
+    UnwrappingRSocket unwrapping =
+        new UnwrappingRSocket(
+            new AbstractRSocket() {
+              @Override
+              public Mono<Void> fireAndForget(Payload payload) {
+                received[0] = payload;
+                return Mono.empty();
+              }
+            });
+    unwrapping.fireAndForget(compressed).block();
+
+    Assert.assertEquals(4096, received[0].sliceData().readableBytes());
+    Assert.assertEquals("metadata", received[0].getMetadataUtf8());
+    received[0].release();
+  }
+}
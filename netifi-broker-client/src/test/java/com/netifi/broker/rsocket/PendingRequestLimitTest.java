@@ -0,0 +1,58 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.rsocket;
+
+import java.time.Duration;
+import org.junit.Assert;
+import org.junit.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+import reactor.test.StepVerifier;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+public class PendingRequestLimitTest {
+
+  @Test
+  public void testShouldFailFastBeyondMaxPending() {
+    PendingRequestLimit limit = new PendingRequestLimit(2, null);
+    MonoProcessor<String> connection = MonoProcessor.create();
+
+    limit.await(connection).subscribe();
+    limit.await(connection).subscribe();
+    Assert.assertEquals(2, limit.pending());
+
+    StepVerifier.create(limit.await(connection))
+        .expectError(NoAvailableConnectionException.class)
+        .verify();
+    Assert.assertEquals(2, limit.pending());
+
+    connection.onNext("connected");
+    Assert.assertEquals(0, limit.pending());
+  }
+
+  @Test
+  public void testShouldFailAfterMaxWait() {
+    VirtualTimeScheduler scheduler = VirtualTimeScheduler.create();
+    PendingRequestLimit limit = new PendingRequestLimit(0, Duration.ofSeconds(1), scheduler);
+
+    MonoProcessor<String> waiting = limit.await(Mono.<String>never()).toProcessor();
+    Assert.assertEquals(1, limit.pending());
+
+    scheduler.advanceTimeBy(Duration.ofSeconds(1));
+    Assert.assertTrue(waiting.getError() instanceof NoAvailableConnectionException);
+    Assert.assertEquals(0, limit.pending());
+  }
+}
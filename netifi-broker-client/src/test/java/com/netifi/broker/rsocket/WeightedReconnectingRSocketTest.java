@@ -15,15 +15,19 @@
  */
 package com.netifi.broker.rsocket;
 
-import com.netifi.common.stats.FrugalQuantile;
+import com.netifi.common.stats.LatencySketch;
 import io.netty.buffer.Unpooled;
+import io.rsocket.Payload;
 import io.rsocket.RSocket;
+import io.rsocket.util.EmptyPayload;
 import java.time.Duration;
 import java.util.concurrent.CountDownLatch;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
+import org.junit.Assert;
 import org.junit.Test;
 import org.mockito.Mockito;
+import reactor.core.Disposable;
 import reactor.core.publisher.Mono;
 import reactor.core.publisher.MonoProcessor;
 import reactor.test.StepVerifier;
@@ -44,8 +48,11 @@ public class WeightedReconnectingRSocketTest {
             0,
             0,
             Unpooled.EMPTY_BUFFER,
-            new FrugalQuantile(0.2),
-            new FrugalQuantile(0.6),
+            null,
+            null,
+            new LatencySketch(),
+            0.2,
+            0.6,
             1);
 
     rSocket.resetMono();
@@ -71,8 +78,11 @@ public class WeightedReconnectingRSocketTest {
                 0,
                 0,
                 Unpooled.EMPTY_BUFFER,
-                new FrugalQuantile(0.2),
-                new FrugalQuantile(0.6),
+                null,
+                null,
+                new LatencySketch(),
+                0.2,
+                0.6,
                 1));
 
     rSocket.resetMono();
@@ -114,8 +124,11 @@ public class WeightedReconnectingRSocketTest {
             0,
             0,
             Unpooled.EMPTY_BUFFER,
-            new FrugalQuantile(0.2),
-            new FrugalQuantile(0.6),
+            null,
+            null,
+            new LatencySketch(),
+            0.2,
+            0.6,
             1);
 
     rSocket.resetMono();
@@ -145,8 +158,11 @@ public class WeightedReconnectingRSocketTest {
             0,
             0,
             Unpooled.EMPTY_BUFFER,
-            new FrugalQuantile(0.2),
-            new FrugalQuantile(0.6),
+            null,
+            null,
+            new LatencySketch(),
+            0.2,
+            0.6,
             1);
 
     rSocket.resetMono();
@@ -164,4 +180,81 @@ public class WeightedReconnectingRSocketTest {
         .thenCancel()
         .verify(Duration.ofSeconds(1));
   }
+
+  @Test
+  public void testShouldSignalConnectedAcrossResets() {
+    WeightedReconnectingRSocket rSocket =
+        new WeightedReconnectingRSocket(
+            Mockito.mock(RSocket.class),
+            Mockito.mock(Supplier.class),
+            () -> true,
+            Mockito.mock(Supplier.class),
+            false,
+            0,
+            0,
+            0,
+            0,
+            Unpooled.EMPTY_BUFFER,
+            null,
+            null,
+            new LatencySketch(),
+            0.2,
+            0.6,
+            1);
+
+    rSocket.resetMono();
+
+    RSocket mock = Mockito.mock(RSocket.class);
+    Mockito.when(mock.onClose()).thenReturn(Mono.never());
+
+    StepVerifier.create(rSocket.connected())
+        .then(rSocket::resetMono)
+        .expectNoEvent(Duration.ofMillis(100))
+        .then(() -> rSocket.setRSocket(mock))
+        .verifyComplete();
+
+    StepVerifier.create(rSocket.connected()).verifyComplete();
+  }
+
+  @Test
+  public void testShouldAccountRequestsOnLiveConnection() {
+    WeightedReconnectingRSocket rSocket =
+        new WeightedReconnectingRSocket(
+            Mockito.mock(RSocket.class),
+            Mockito.mock(Supplier.class),
+            () -> true,
+            Mockito.mock(Supplier.class),
+            false,
+            0,
+            0,
+            0,
+            0,
+            Unpooled.EMPTY_BUFFER,
+            null,
+            null,
+            new LatencySketch(),
+            0.2,
+            0.6,
+            1);
+
+    rSocket.resetMono();
+
+    Payload response = EmptyPayload.INSTANCE;
+    RSocket mock = Mockito.mock(RSocket.class);
+    Mockito.when(mock.onClose()).thenReturn(Mono.never());
+    Mockito.when(mock.requestResponse(Mockito.any()))
+        .thenReturn(Mono.just(response))
+        .thenReturn(Mono.never());
+    rSocket.setRSocket(mock);
+
+    StepVerifier.create(rSocket.requestResponse(EmptyPayload.INSTANCE))
+        .expectNext(response)
+        .verifyComplete();
+    Assert.assertEquals(0, rSocket.pending());
+
+    Disposable pending = rSocket.requestResponse(EmptyPayload.INSTANCE).subscribe();
+    Assert.assertEquals(1, rSocket.pending());
+    pending.dispose();
+    Assert.assertEquals(0, rSocket.pending());
+  }
 }
@@ -0,0 +1,88 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.rsocket.transport;
+
+import com.netifi.broker.info.Broker;
+import io.rsocket.transport.ClientTransport;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class ApertureTest {
+
+  @Test
+  public void testSelectsAllBrokersThatFit() {
+    List<WeightedClientTransportSupplier> suppliers = suppliers(3);
+    Assert.assertEquals(suppliers, new Aperture(3, "client").select(suppliers));
+  }
+
+  @Test
+  public void testIsStable() {
+    List<WeightedClientTransportSupplier> suppliers = suppliers(10);
+    List<WeightedClientTransportSupplier> reversed = new ArrayList<>(suppliers);
+    Collections.reverse(reversed);
+
+    Assert.assertEquals(
+        new Aperture(3, "client").select(suppliers), new Aperture(3, "client").select(reversed));
+  }
+
+  @Test
+  public void testSpreadsClientsEvenly() {
+    List<WeightedClientTransportSupplier> suppliers = suppliers(10);
+    int[] clients = new int[suppliers.size()];
+    for (int i = 0; i < 1000; i++) {
+      for (WeightedClientTransportSupplier supplier :
+          new Aperture(3, "client-" + i).select(suppliers)) {
+        clients[suppliers.indexOf(supplier)]++;
+      }
+    }
+
+    // 300 clients per broker on average
+    for (int count : clients) {
+      Assert.assertTrue("unbalanced: " + count, count > 220 && count < 380);
+    }
+  }
+
+  @Test
+  public void testRebalancesMinimally() {
+    List<WeightedClientTransportSupplier> suppliers = suppliers(11);
+    List<WeightedClientTransportSupplier> before = suppliers.subList(0, 10);
+    for (int i = 0; i < 1000; i++) {
+      Aperture aperture = new Aperture(3, "client-" + i);
+      Set<WeightedClientTransportSupplier> moved = new HashSet<>(aperture.select(before));
+      moved.removeAll(aperture.select(suppliers));
+
+      Assert.assertTrue(moved.size() <= 1);
+    }
+  }
+
+  private static List<WeightedClientTransportSupplier> suppliers(int count) {
+    ClientTransport transport = Mockito.mock(ClientTransport.class);
+    List<WeightedClientTransportSupplier> suppliers = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      Broker broker = Broker.newBuilder().setTcpAddress("10.0.0." + i).setTcpPort(8001).build();
+      suppliers.add(
+          new WeightedClientTransportSupplier(
+              broker, BrokerAddressSelectors.TCP_ADDRESS, address -> transport));
+    }
+    return suppliers;
+  }
+}
@@ -55,6 +55,26 @@ public class WeightedBrokerClientTransportSupplierTest {
     Assert.assertEquals(0, i);
   }
 
+  @Test
+  public void testShouldCloseConnectionsAndStayOpen() {
+    DuplexConnection duplexConnection = Mockito.mock(DuplexConnection.class);
+    Mockito.when(duplexConnection.onClose()).thenReturn(MonoProcessor.create());
+
+    ClientTransport transport = Mockito.mock(ClientTransport.class);
+    Mockito.when(transport.connect(0)).thenReturn(Mono.just(duplexConnection));
+
+    Broker b = Broker.newBuilder().setTcpAddress("localhost").setTcpPort(8001).build();
+    WeightedClientTransportSupplier supplier =
+        new WeightedClientTransportSupplier(
+            b, BrokerAddressSelectors.TCP_ADDRESS, address -> transport);
+
+    supplier.get().connect(0).block();
+    supplier.closeConnections();
+
+    Mockito.verify(duplexConnection).dispose();
+    Assert.assertFalse(supplier.isDisposed());
+  }
+
   @Test
   public void testShouldGetCorrectSocketAddress() {
     Broker b =
@@ -0,0 +1,109 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.frames;
+
+import com.netifi.common.tags.Tag;
+import com.netifi.common.tags.Tags;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of reading the fields of a shard frame wrapped in an authorization wrapper, the way a
+ * receiving destination does. The flyweight accessors re-scan the preceding fields for every field
+ * and decode group and tags into Strings, the cursor indexes the frame once and hands out slices
+ * and views.
+ *
+ * <p>The {@code tag} benchmarks look up a single tag, once by decoding all tags and once by
+ * comparing the key against the encoded keys.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(
+    value = 1 // , jvmArgsAppend = {"-Dio.netty.leakDetection.level=advanced"}
+    )
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@State(Scope.Thread)
+public class FrameCursorPerf {
+  ByteBuf frame;
+  ByteBuf innerFrame;
+
+  @Setup
+  public void setup() {
+    UnpooledByteBufAllocator allocator = new UnpooledByteBufAllocator(false);
+    ByteBuf metadata = Unpooled.wrappedBuffer(new byte[128]);
+    ByteBuf shardKey = Unpooled.wrappedBuffer("shard-key".getBytes());
+    Tags tags = Tags.of("com.netifi.destination", "destination", "region", "us-east-1");
+    innerFrame = ShardFlyweight.encode(allocator, "group", metadata, shardKey, tags);
+    frame = AuthorizationWrapperFlyweight.encode(allocator, 1, innerFrame);
+  }
+
+  @Benchmark
+  public void flyweights(Blackhole bh) {
+    ByteBuf innerFrame = AuthorizationWrapperFlyweight.innerFrame(frame);
+    bh.consume(AuthorizationWrapperFlyweight.accessKey(frame));
+    bh.consume(ShardFlyweight.group(innerFrame));
+    bh.consume(ShardFlyweight.metadata(innerFrame));
+    bh.consume(ShardFlyweight.shardKey(innerFrame));
+    bh.consume(ShardFlyweight.tags(innerFrame));
+  }
+
+  @Benchmark
+  public void cursor(Blackhole bh) {
+    FrameCursor cursor = FrameCursor.of(frame);
+    try {
+      bh.consume(cursor.accessKey());
+      cursor.wrap(cursor.innerFrame());
+      bh.consume(cursor.group());
+      bh.consume(cursor.metadata());
+      bh.consume(cursor.shardKey());
+      for (int i = 0; i < cursor.tagCount(); i++) {
+        bh.consume(cursor.tagKey(i));
+        bh.consume(cursor.tagValue(i));
+      }
+    } finally {
+      cursor.recycle();
+    }
+  }
+
+  @Benchmark
+  public void cursorTags(Blackhole bh) {
+    FrameCursor cursor = FrameCursor.of(frame);
+    try {
+      cursor.wrap(cursor.innerFrame());
+      bh.consume(cursor.tags());
+    } finally {
+      cursor.recycle();
+    }
+  }
+
+  @Benchmark
+  public String tagDecoded() {
+    for (Tag tag : ShardFlyweight.tags(innerFrame)) {
+      if (tag.getKey().equals("region")) {
+        return tag.getValue();
+      }
+    }
+    return null;
+  }
+
+  @Benchmark
+  public CharSequence tagInPlace() {
+    return ShardFlyweight.tag(innerFrame, "region");
+  }
+}
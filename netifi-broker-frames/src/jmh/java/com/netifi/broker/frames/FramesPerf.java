@@ -0,0 +1,137 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.frames;
+
+import com.netifi.common.tags.Tags;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.util.concurrent.ThreadLocalRandom;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Cost of encoding the frames sent with every request. Frames are allocated on an unpooled heap
+ * allocator so that the gc profiler reports the bytes allocated per frame ({@code
+ * gc.alloc.rate.norm}). The copying encoders allocate the whole frame and copy the metadata into
+ * it, the composite and route encoders only allocate and write the frame's own fields.
+ *
+ * <p>The {@code growing} benchmark replays the previous encoding, which started from a default
+ * sized buffer and grew it while writing the metadata. The {@code compact} benchmarks encode frames
+ * of {@link FrameHeaderFlyweight#COMPACT_MINOR_VERSION}, every benchmark returns the length of the
+ * frame it encoded.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(
+    value = 1 // , jvmArgsAppend = {"-Dio.netty.leakDetection.level=advanced"}
+    )
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@State(Scope.Thread)
+public class FramesPerf {
+  static final ByteBufAllocator ALLOCATOR = new UnpooledByteBufAllocator(false);
+
+  @Param({"16", "1024", "65536"})
+  public int metadataSize;
+
+  ByteBuf metadata;
+  ByteBuf shardKey;
+  Tags tags;
+  ByteBuf route;
+  ByteBuf compactRoute;
+  ByteBuf innerFrame;
+
+  @Setup
+  public void setup() {
+    byte[] bytes = new byte[metadataSize];
+    ThreadLocalRandom.current().nextBytes(bytes);
+    metadata = Unpooled.wrappedBuffer(bytes);
+    shardKey = Unpooled.wrappedBuffer("shard-key".getBytes());
+    tags = Tags.of("com.netifi.destination", "destination", "region", "us-east-1");
+    route = GroupFlyweight.encodeRoute("group", tags);
+    compactRoute =
+        GroupFlyweight.encodeRoute(FrameHeaderFlyweight.COMPACT_MINOR_VERSION, "group", tags);
+    innerFrame = GroupFlyweight.encode(ALLOCATOR, "group", metadata, tags);
+  }
+
+  @Benchmark
+  public int groupGrowing() {
+    ByteBuf byteBuf = FrameHeaderFlyweight.encodeFrameHeader(ALLOCATOR, FrameType.GROUP);
+    int groupLength = ByteBufUtil.utf8Bytes("group");
+    byteBuf.writeInt(groupLength);
+    ByteBufUtil.reserveAndWriteUtf8(byteBuf, "group", groupLength);
+    int metadataLength = metadata.readableBytes();
+    byteBuf.writeInt(metadataLength).writeBytes(metadata, metadata.readerIndex(), metadataLength);
+    TagsFlyweight.encode(byteBuf, tags);
+    return release(byteBuf);
+  }
+
+  @Benchmark
+  public int groupExactSize() {
+    return release(GroupFlyweight.encode(ALLOCATOR, "group", metadata, tags));
+  }
+
+  @Benchmark
+  public int groupComposite() {
+    return release(GroupFlyweight.encodeComposite(ALLOCATOR, "group", metadata, tags));
+  }
+
+  @Benchmark
+  public int groupRoute() {
+    return release(GroupFlyweight.encode(ALLOCATOR, route, metadata));
+  }
+
+  @Benchmark
+  public int groupCompactExactSize() {
+    return release(
+        GroupFlyweight.encode(
+            ALLOCATOR, FrameHeaderFlyweight.COMPACT_MINOR_VERSION, "group", metadata, tags));
+  }
+
+  @Benchmark
+  public int groupCompactRoute() {
+    return release(GroupFlyweight.encode(ALLOCATOR, compactRoute, metadata));
+  }
+
+  @Benchmark
+  public int shardExactSize() {
+    return release(ShardFlyweight.encode(ALLOCATOR, "group", metadata, shardKey, tags));
+  }
+
+  @Benchmark
+  public int shardComposite() {
+    return release(ShardFlyweight.encodeComposite(ALLOCATOR, "group", metadata, shardKey, tags));
+  }
+
+  @Benchmark
+  public int authorizationWrapperExactSize() {
+    ByteBuf byteBuf = AuthorizationWrapperFlyweight.encode(ALLOCATOR, 1L, innerFrame);
+    innerFrame.readerIndex(0);
+    return release(byteBuf);
+  }
+
+  @Benchmark
+  public int authorizationWrapperComposite() {
+    return release(AuthorizationWrapperFlyweight.encodeComposite(ALLOCATOR, 1L, innerFrame));
+  }
+
+  private static int release(ByteBuf byteBuf) {
+    int length = byteBuf.readableBytes();
+    byteBuf.release();
+    return length;
+  }
+}
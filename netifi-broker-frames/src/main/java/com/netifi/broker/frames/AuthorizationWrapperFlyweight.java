@@ -21,15 +21,35 @@ import io.netty.buffer.ByteBufAllocator;
 public class AuthorizationWrapperFlyweight {
 
   public static ByteBuf encode(ByteBufAllocator allocator, long accessKey, ByteBuf innerFrame) {
+    int frameLength = FrameHeaderFlyweight.BYTES + Long.BYTES + innerFrame.readableBytes();
 
     ByteBuf byteBuf =
-        FrameHeaderFlyweight.encodeFrameHeader(allocator, FrameType.AUTHORIZATION_WRAPPER);
+        FrameHeaderFlyweight.encodeFrameHeader(
+            allocator, FrameType.AUTHORIZATION_WRAPPER, frameLength);
 
     byteBuf.writeLong(accessKey).writeBytes(innerFrame);
 
     return byteBuf;
   }
 
+  /**
+   * Same frame as {@link #encode(ByteBufAllocator, long, ByteBuf)}, but the inner frame is retained
+   * and referenced from a composite buffer instead of being copied. Unlike {@link
+   * #encode(ByteBufAllocator, long, ByteBuf)}, the reader index of the inner frame is left as is.
+   */
+  public static ByteBuf encodeComposite(
+      ByteBufAllocator allocator, long accessKey, ByteBuf innerFrame) {
+    int headerLength = FrameHeaderFlyweight.BYTES + Long.BYTES;
+
+    ByteBuf fields =
+        FrameHeaderFlyweight.encodeFrameHeader(
+            allocator, FrameType.AUTHORIZATION_WRAPPER, headerLength);
+
+    fields.writeLong(accessKey);
+
+    return CompositeFlyweight.compose(allocator, fields, headerLength, innerFrame);
+  }
+
   public static long accessKey(ByteBuf byteBuf) {
     int offset = FrameHeaderFlyweight.BYTES;
 
@@ -0,0 +1,113 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.frames;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import java.util.function.BiConsumer;
+
+/**
+ * Many fire and forget messages sent along the same route in a single payload. The metadata of the
+ * payload is the batch frame: the number of entries followed by the group, broadcast or shard frame
+ * of the route, with empty metadata, which the broker routes the batch with. The data of the
+ * payload holds the entries, each a length prefixed metadata followed by a length prefixed data.
+ *
+ * <p>Lengths and the entry count are varints when the route is a {@link
+ * FrameHeaderFlyweight#COMPACT_MINOR_VERSION} route, 4 byte ints otherwise.
+ */
+public class BatchFlyweight {
+  /**
+   * Encodes the batch frame of {@code entryCount} entries sent along a route from {@link
+   * GroupFlyweight#encodeRoute}, {@link BroadcastFlyweight#encodeRoute} or {@link
+   * ShardFlyweight#encodeRoute}.
+   */
+  public static ByteBuf encode(ByteBufAllocator allocator, ByteBuf route, int entryCount) {
+    short minorVersion = FrameHeaderFlyweight.minorVersion(route);
+    boolean compact = LengthFlyweight.compact(minorVersion);
+    int frameLength =
+        FrameHeaderFlyweight.BYTES
+            + LengthFlyweight.size(compact, entryCount)
+            + RouteFlyweight.emptyFrameLength(route);
+
+    ByteBuf byteBuf =
+        FrameHeaderFlyweight.encodeFrameHeader(
+            allocator, FrameType.BATCH, minorVersion, frameLength);
+
+    LengthFlyweight.write(byteBuf, compact, entryCount);
+    return RouteFlyweight.writeEmptyFrame(byteBuf, route);
+  }
+
+  /** Appends an entry to the data of a batch sent along {@code route}, copying it. */
+  public static ByteBuf writeEntry(ByteBuf entries, ByteBuf route, ByteBuf metadata, ByteBuf data) {
+    boolean compact = LengthFlyweight.compact(route);
+    int metadataLength = metadata.readableBytes();
+    int dataLength = data.readableBytes();
+
+    LengthFlyweight.write(entries, compact, metadataLength)
+        .writeBytes(metadata, metadata.readerIndex(), metadataLength);
+    return LengthFlyweight.write(entries, compact, dataLength)
+        .writeBytes(data, data.readerIndex(), dataLength);
+  }
+
+  /** @return the number of bytes {@link #writeEntry} appends for the given entry */
+  public static int entryLength(ByteBuf route, ByteBuf metadata, ByteBuf data) {
+    boolean compact = LengthFlyweight.compact(route);
+    int metadataLength = metadata.readableBytes();
+    int dataLength = data.readableBytes();
+    return LengthFlyweight.size(compact, metadataLength)
+        + metadataLength
+        + LengthFlyweight.size(compact, dataLength)
+        + dataLength;
+  }
+
+  public static int entryCount(ByteBuf byteBuf) {
+    boolean compact = LengthFlyweight.compact(byteBuf);
+    return LengthFlyweight.get(byteBuf, FrameHeaderFlyweight.BYTES, compact);
+  }
+
+  /** @return the group, broadcast or shard frame the batch is routed with */
+  public static ByteBuf innerFrame(ByteBuf byteBuf) {
+    boolean compact = LengthFlyweight.compact(byteBuf);
+    int offset = FrameHeaderFlyweight.BYTES;
+    offset += LengthFlyweight.size(compact, LengthFlyweight.get(byteBuf, offset, compact));
+
+    return byteBuf.slice(offset, byteBuf.writerIndex() - offset);
+  }
+
+  /**
+   * Passes the metadata and data of every entry in {@code entries}, the data of a batch payload, to
+   * {@code consumer} as slices of {@code entries}.
+   */
+  public static void forEachEntry(
+      ByteBuf byteBuf, ByteBuf entries, BiConsumer<ByteBuf, ByteBuf> consumer) {
+    boolean compact = LengthFlyweight.compact(byteBuf);
+    int count = entryCount(byteBuf);
+    int offset = entries.readerIndex();
+    for (int i = 0; i < count; i++) {
+      int metadataLength = LengthFlyweight.get(entries, offset, compact);
+      offset += LengthFlyweight.size(compact, metadataLength);
+      ByteBuf metadata = entries.slice(offset, metadataLength);
+      offset += metadataLength;
+
+      int dataLength = LengthFlyweight.get(entries, offset, compact);
+      offset += LengthFlyweight.size(compact, dataLength);
+      ByteBuf data = entries.slice(offset, dataLength);
+      offset += dataLength;
+
+      consumer.accept(metadata, data);
+    }
+  }
+}
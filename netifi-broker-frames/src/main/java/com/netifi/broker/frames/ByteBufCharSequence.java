@@ -0,0 +1,100 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.frames;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.ByteProcessor;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * {@link CharSequence} view of UTF-8 bytes in a {@link ByteBuf}. ASCII content, which is what group
+ * names and tags almost always are, is read straight from the buffer. Anything else is decoded into
+ * a {@link String} the first time a character is needed. The view does not retain the buffer.
+ */
+final class ByteBufCharSequence implements CharSequence {
+  private static final ByteProcessor FIND_NON_ASCII = value -> value >= 0;
+
+  private static final int UNKNOWN = 0;
+  private static final int ASCII = 1;
+  private static final int DECODED = 2;
+
+  private ByteBuf byteBuf;
+  private int offset;
+  private int length;
+  private int state;
+  private String decoded;
+
+  ByteBufCharSequence wrap(ByteBuf byteBuf, int offset, int length) {
+    this.byteBuf = byteBuf;
+    this.offset = offset;
+    this.length = length;
+    this.state = UNKNOWN;
+    this.decoded = null;
+    return this;
+  }
+
+  void clear() {
+    wrap(null, 0, 0);
+  }
+
+  private boolean ascii() {
+    if (state == UNKNOWN) {
+      if (length == 0 || byteBuf.forEachByte(offset, length, FIND_NON_ASCII) == -1) {
+        state = ASCII;
+      } else {
+        decoded = byteBuf.toString(offset, length, StandardCharsets.UTF_8);
+        state = DECODED;
+      }
+    }
+    return state == ASCII;
+  }
+
+  @Override
+  public int length() {
+    return ascii() ? length : decoded.length();
+  }
+
+  @Override
+  public char charAt(int index) {
+    if (ascii()) {
+      if (index < 0 || index >= length) {
+        throw new IndexOutOfBoundsException("index: " + index + ", length: " + length);
+      }
+      return (char) byteBuf.getByte(offset + index);
+    }
+    return decoded.charAt(index);
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    if (ascii()) {
+      if (start < 0 || end > length || start > end) {
+        throw new IndexOutOfBoundsException(
+            "start: " + start + ", end: " + end + ", length: " + length);
+      }
+      return new ByteBufCharSequence().wrap(byteBuf, offset + start, end - start);
+    }
+    return decoded.subSequence(start, end);
+  }
+
+  @Override
+  public String toString() {
+    if (decoded == null) {
+      decoded = byteBuf.toString(offset, length, StandardCharsets.UTF_8);
+    }
+    return decoded;
+  }
+}
@@ -0,0 +1,39 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.frames;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+/**
+ * Pushed by the broker to a destination that announced optional features in the additional flags
+ * of its setup, with the flags of the features the broker supports on that connection, e.g. {@link
+ * DestinationSetupFlyweight#FLAG_COMPRESSION}. Brokers that predate it never send it, so a
+ * destination keeps those features off until it receives one.
+ */
+public class CapabilitiesFlyweight {
+  private CapabilitiesFlyweight() {}
+
+  public static ByteBuf encode(ByteBufAllocator allocator, short flags) {
+    return FrameHeaderFlyweight.encodeFrameHeader(
+            allocator, FrameType.CAPABILITIES, FrameHeaderFlyweight.BYTES + Short.BYTES)
+        .writeShort(flags);
+  }
+
+  public static short flags(ByteBuf byteBuf) {
+    return byteBuf.getShort(FrameHeaderFlyweight.BYTES);
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.frames;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+
+/**
+ * Assembles a frame from a buffer holding all of its own fields and the buffers of the caller,
+ * which are retained and referenced instead of copied. The fields buffer is cut into slices placed
+ * around the caller's buffers, so a frame costs one exact-size allocation whatever the size of what
+ * it carries.
+ */
+final class CompositeFlyweight {
+  private CompositeFlyweight() {}
+
+  /** Frame made of {@code fields[0, split)}, {@code content} and the rest of {@code fields}. */
+  static ByteBuf compose(ByteBufAllocator allocator, ByteBuf fields, int split, ByteBuf content) {
+    int rest = fields.writerIndex() - split;
+    if (rest == 0) {
+      return allocator.compositeBuffer(2).addComponents(true, fields, content.retain());
+    }
+
+    return allocator
+        .compositeBuffer(3)
+        .addComponents(
+            true, fields.slice(0, split), content.retain(), fields.retainedSlice(split, rest));
+  }
+
+  /**
+   * Frame made of {@code fields[0, firstSplit)}, {@code first}, {@code fields[firstSplit,
+   * secondSplit)}, {@code second} and the rest of {@code fields}.
+   */
+  static ByteBuf compose(
+      ByteBufAllocator allocator,
+      ByteBuf fields,
+      int firstSplit,
+      ByteBuf first,
+      int secondSplit,
+      ByteBuf second) {
+    int rest = fields.writerIndex() - secondSplit;
+    CompositeByteBuf composite = allocator.compositeBuffer(5);
+    composite.addComponents(
+        true,
+        fields.slice(0, firstSplit),
+        first.retain(),
+        fields.retainedSlice(firstSplit, secondSplit - firstSplit),
+        second.retain());
+    if (rest > 0) {
+      composite.addComponent(true, fields.retainedSlice(secondSplit, rest));
+    }
+    return composite;
+  }
+}
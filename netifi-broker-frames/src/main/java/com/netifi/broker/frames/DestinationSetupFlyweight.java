@@ -31,6 +31,18 @@ public class DestinationSetupFlyweight {
   private static final int ADDITIONAL_FLAGS_SIZE = Short.BYTES;
   public static final short FLAG_ENABLE_PUBLIC_ACCESS = 0b00000000_00000001;
   public static final short FLAG_ALTERNATIVE_AUTHENTICATION = 0b00000000_00000010;
+  /**
+   * The destination can send {@link FrameType#DICTIONARY} frames and routing frames whose groups
+   * and tags refer to their entries, see {@link FrameDictionary}, and does so once the broker
+   * announced the same flag in a {@link CapabilitiesFlyweight capabilities} frame.
+   */
+  public static final short FLAG_DICTIONARY = 0b00000000_00000100;
+  /**
+   * The destination can read payload data compressed by {@link
+   * FrameHeaderFlyweight#FLAG_DATA_COMPRESSED marked} frames, and sends them once the broker
+   * announced the same flag in a {@link CapabilitiesFlyweight capabilities} frame.
+   */
+  public static final short FLAG_COMPRESSION = 0b00000000_00001000;
 
   public static final long JWT_AUTHENTICATION = 0x01;
 
@@ -236,6 +248,24 @@ public class DestinationSetupFlyweight {
   }
 
   public static Tags tags(ByteBuf byteBuf) {
+    return TagsFlyweight.decode(byteBuf, tagsOffset(byteBuf), false, null);
+  }
+
+  /** Walks the tags of the frame in place, without decoding them. */
+  public static void forEachTag(ByteBuf byteBuf, TagVisitor visitor) {
+    TagsFlyweight.forEach(byteBuf, tagsOffset(byteBuf), false, null, visitor);
+  }
+
+  /**
+   * Looks up a tag by comparing {@code key} with the encoded keys, without decoding them.
+   *
+   * @return a view of the tag's value, or {@code null} if the frame has no such tag
+   */
+  public static CharSequence tag(ByteBuf byteBuf, CharSequence key) {
+    return TagsFlyweight.find(byteBuf, tagsOffset(byteBuf), false, null, key);
+  }
+
+  private static int tagsOffset(ByteBuf byteBuf) {
     int offset = FrameHeaderFlyweight.BYTES;
 
     int inetAddressLength = byteBuf.getInt(offset);
@@ -252,23 +282,6 @@ public class DestinationSetupFlyweight {
     // Additional flags
     offset += ADDITIONAL_FLAGS_SIZE;
 
-    List<Tag> tags = new ArrayList<>();
-    while (offset < byteBuf.readableBytes()) {
-      int keyLength = byteBuf.getInt(offset);
-      offset += Integer.BYTES;
-
-      String key = byteBuf.toString(offset, keyLength, StandardCharsets.UTF_8);
-      offset += keyLength;
-
-      int valueLength = byteBuf.getInt(offset);
-      offset += Integer.BYTES;
-
-      String value = byteBuf.toString(offset, valueLength, StandardCharsets.UTF_8);
-      offset += valueLength;
-
-      tags.add(Tag.of(key, value));
-    }
-
-    return Tags.of(tags);
+    return offset;
   }
 }
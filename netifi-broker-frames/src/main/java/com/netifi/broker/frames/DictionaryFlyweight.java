@@ -0,0 +1,66 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.frames;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Consecutive entries of a {@link FrameDictionary}, starting at the id {@link #firstId}. */
+public class DictionaryFlyweight {
+  public static ByteBuf encode(
+      ByteBufAllocator allocator, FrameDictionary dictionary, int fromId, int toId) {
+    int frameLength = FrameHeaderFlyweight.BYTES + Integer.BYTES;
+    for (int id = fromId; id < toId; id++) {
+      frameLength += Integer.BYTES + ByteBufUtil.utf8Bytes(dictionary.entry(id));
+    }
+
+    ByteBuf byteBuf =
+        FrameHeaderFlyweight.encodeFrameHeader(allocator, FrameType.DICTIONARY, frameLength);
+
+    byteBuf.writeInt(fromId);
+    for (int id = fromId; id < toId; id++) {
+      String entry = dictionary.entry(id);
+      int entryLength = ByteBufUtil.utf8Bytes(entry);
+      byteBuf.writeInt(entryLength);
+      ByteBufUtil.reserveAndWriteUtf8(byteBuf, entry, entryLength);
+    }
+
+    return byteBuf;
+  }
+
+  public static int firstId(ByteBuf byteBuf) {
+    return byteBuf.getInt(FrameHeaderFlyweight.BYTES);
+  }
+
+  public static List<String> entries(ByteBuf byteBuf) {
+    int offset = FrameHeaderFlyweight.BYTES + Integer.BYTES;
+
+    List<String> entries = new ArrayList<>();
+    while (offset < byteBuf.readableBytes()) {
+      int entryLength = byteBuf.getInt(offset);
+      offset += Integer.BYTES;
+
+      entries.add(byteBuf.toString(offset, entryLength, StandardCharsets.UTF_8));
+      offset += entryLength;
+    }
+
+    return entries;
+  }
+}
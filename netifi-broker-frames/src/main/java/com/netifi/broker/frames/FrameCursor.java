@@ -0,0 +1,418 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.frames;
+
+import com.netifi.common.tags.Tags;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.util.Recycler;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Reads the fields of a frame after indexing their offsets in a single pass, instead of walking the
+ * preceding fields again for every accessor like the flyweights do. Byte fields are returned as
+ * slices of the frame and text fields as {@link CharSequence} views over it, nothing is copied or
+ * decoded unless asked for. Tags are only indexed when first accessed.
+ *
+ * <p>Text fields of routing frames that refer to a {@link FrameDictionary} entry are resolved with
+ * the dictionary given to {@link #of(ByteBuf, FrameDictionary)}.
+ *
+ * <p>Cursors are pooled: get one with {@link #of(ByteBuf)} and give it back with {@link
+ * #recycle()}. A cursor does not retain the frame, and neither the cursor nor the slices and views
+ * it returned may be used once the frame is released or the cursor recycled.
+ */
+public final class FrameCursor {
+  private static final Recycler<FrameCursor> RECYCLER =
+      new Recycler<FrameCursor>() {
+        @Override
+        protected FrameCursor newObject(Handle<FrameCursor> handle) {
+          return new FrameCursor(handle);
+        }
+      };
+
+  private static final int ABSENT = -1;
+
+  private final Recycler.Handle<FrameCursor> handle;
+  private final ByteBufCharSequence group = new ByteBufCharSequence();
+  private final ByteBufCharSequence brokerId = new ByteBufCharSequence();
+  private final ByteBufCharSequence clusterId = new ByteBufCharSequence();
+  private final ByteBufCharSequence tagKey = new ByteBufCharSequence();
+  private final ByteBufCharSequence tagValue = new ByteBufCharSequence();
+
+  private FrameDictionary dictionary;
+  private ByteBuf frame;
+  private FrameType frameType;
+  private boolean compact;
+  private int groupLength;
+  private int addressOffset;
+  private int addressLength;
+  private int metadataOffset;
+  private int metadataLength;
+  private int shardKeyOffset;
+  private int shardKeyLength;
+  private int accessKeyOffset;
+  private int accessTokenOffset;
+  private int accessTokenLength;
+  private int connectionIdOffset;
+  private int additionalFlagsOffset;
+  private int innerFrameOffset;
+  private int entryCount;
+  private int tagsOffset;
+  // key offset, key length, value offset and value length of every tag, lengths of dictionary
+  // references are negative as described by LengthFlyweight
+  private int[] tagOffsets = new int[16];
+  private int tagCount;
+
+  private FrameCursor(Recycler.Handle<FrameCursor> handle) {
+    this.handle = handle;
+  }
+
+  public static FrameCursor of(ByteBuf frame) {
+    return of(frame, null);
+  }
+
+  /**
+   * @param dictionary the dictionary of the connection the frame was received on, or {@code null}
+   */
+  public static FrameCursor of(ByteBuf frame, FrameDictionary dictionary) {
+    FrameCursor cursor = RECYCLER.get();
+    cursor.dictionary = dictionary;
+    return cursor.wrap(frame);
+  }
+
+  /**
+   * Points this cursor at another frame, e.g. the inner frame of an authorization wrapper.
+   *
+   * @return this cursor
+   */
+  public FrameCursor wrap(ByteBuf frame) {
+    clear();
+    this.frame = frame;
+    this.frameType = FrameHeaderFlyweight.frameType(frame);
+    index();
+    return this;
+  }
+
+  public void recycle() {
+    clear();
+    dictionary = null;
+    handle.recycle(this);
+  }
+
+  private void clear() {
+    frame = null;
+    frameType = null;
+    compact = false;
+    groupLength = 0;
+    addressOffset = ABSENT;
+    metadataOffset = ABSENT;
+    shardKeyOffset = ABSENT;
+    accessKeyOffset = ABSENT;
+    accessTokenOffset = ABSENT;
+    connectionIdOffset = ABSENT;
+    additionalFlagsOffset = ABSENT;
+    innerFrameOffset = ABSENT;
+    entryCount = ABSENT;
+    tagsOffset = ABSENT;
+    tagCount = ABSENT;
+    group.clear();
+    brokerId.clear();
+    clusterId.clear();
+    tagKey.clear();
+    tagValue.clear();
+  }
+
+  private void index() {
+    int offset = FrameHeaderFlyweight.BYTES;
+    int length;
+    switch (frameType) {
+      case BROKER_SETUP:
+        length = frame.getInt(offset);
+        brokerId.wrap(frame, offset + Integer.BYTES, length);
+        offset += Integer.BYTES + length;
+
+        length = frame.getInt(offset);
+        clusterId.wrap(frame, offset + Integer.BYTES, length);
+        offset += Integer.BYTES + length;
+
+        accessKeyOffset = offset;
+        offset += Long.BYTES;
+
+        accessTokenLength = frame.getInt(offset);
+        accessTokenOffset = offset + Integer.BYTES;
+        break;
+      case DESTINATION_SETUP:
+        addressLength = frame.getInt(offset);
+        addressOffset = offset + Integer.BYTES;
+        offset = addressOffset + addressLength;
+
+        length = frame.getInt(offset);
+        group.wrap(frame, offset + Integer.BYTES, length);
+        offset += Integer.BYTES + length;
+
+        accessKeyOffset = offset;
+        offset += Long.BYTES;
+
+        accessTokenLength = frame.getInt(offset);
+        accessTokenOffset = offset + Integer.BYTES;
+        offset = accessTokenOffset + accessTokenLength;
+
+        connectionIdOffset = offset;
+        offset += Long.BYTES + Long.BYTES;
+
+        additionalFlagsOffset = offset;
+        tagsOffset = offset + Short.BYTES;
+        break;
+      case GROUP:
+      case BROADCAST:
+      case SHARD:
+        compact = LengthFlyweight.compact(frame);
+
+        groupLength = LengthFlyweight.getText(frame, offset, compact);
+        offset += LengthFlyweight.textSize(compact, groupLength);
+        if (groupLength >= 0) {
+          group.wrap(frame, offset, groupLength);
+          offset += groupLength;
+        }
+
+        metadataLength = LengthFlyweight.get(frame, offset, compact);
+        metadataOffset = offset + LengthFlyweight.size(compact, metadataLength);
+        offset = metadataOffset + metadataLength;
+
+        if (frameType == FrameType.SHARD) {
+          shardKeyLength = LengthFlyweight.get(frame, offset, compact);
+          shardKeyOffset = offset + LengthFlyweight.size(compact, shardKeyLength);
+          offset = shardKeyOffset + shardKeyLength;
+        }
+
+        tagsOffset = offset;
+        break;
+      case AUTHORIZATION_WRAPPER:
+        accessKeyOffset = offset;
+        innerFrameOffset = offset + Long.BYTES;
+        break;
+      case BATCH:
+        compact = LengthFlyweight.compact(frame);
+        entryCount = LengthFlyweight.get(frame, offset, compact);
+        innerFrameOffset = offset + LengthFlyweight.size(compact, entryCount);
+        break;
+      default:
+        // nothing to index, every accessor but the header ones will throw
+    }
+  }
+
+  private void indexTags() {
+    int count = 0;
+    int offset = tagsOffset;
+    int end = frame.writerIndex();
+    while (offset < end) {
+      if (tagOffsets.length < (count + 1) * 4) {
+        tagOffsets = Arrays.copyOf(tagOffsets, tagOffsets.length * 2);
+      }
+      int base = count * 4;
+
+      int keyLength = LengthFlyweight.getText(frame, offset, compact);
+      offset += LengthFlyweight.textSize(compact, keyLength);
+      tagOffsets[base] = offset;
+      tagOffsets[base + 1] = keyLength;
+      offset += Math.max(keyLength, 0);
+
+      int valueLength = LengthFlyweight.getText(frame, offset, compact);
+      offset += LengthFlyweight.textSize(compact, valueLength);
+      tagOffsets[base + 2] = offset;
+      tagOffsets[base + 3] = valueLength;
+      offset += Math.max(valueLength, 0);
+
+      count++;
+    }
+    tagCount = count;
+  }
+
+  private int check(int offset, String field) {
+    if (offset == ABSENT) {
+      throw new IllegalStateException(frameType + " frames have no " + field);
+    }
+    return offset;
+  }
+
+  public FrameType frameType() {
+    return frameType;
+  }
+
+  public short majorVersion() {
+    return FrameHeaderFlyweight.majorVersion(frame);
+  }
+
+  public short minorVersion() {
+    return FrameHeaderFlyweight.minorVersion(frame);
+  }
+
+  public boolean dataCompressed() {
+    return FrameHeaderFlyweight.dataCompressed(frame);
+  }
+
+  public ByteBuf frame() {
+    return frame;
+  }
+
+  public CharSequence group() {
+    check(tagsOffset, "group");
+    if (groupLength < 0) {
+      return FrameDictionary.resolve(dictionary, LengthFlyweight.referenceId(groupLength));
+    }
+    return group;
+  }
+
+  public CharSequence brokerId() {
+    check(frameType == FrameType.BROKER_SETUP ? 0 : ABSENT, "broker id");
+    return brokerId;
+  }
+
+  public CharSequence clusterId() {
+    check(frameType == FrameType.BROKER_SETUP ? 0 : ABSENT, "cluster id");
+    return clusterId;
+  }
+
+  /** @return the raw bytes of the address of a destination setup, empty if it has none */
+  public ByteBuf inetAddress() {
+    return frame.slice(check(addressOffset, "address"), addressLength);
+  }
+
+  public ByteBuf metadata() {
+    return frame.slice(check(metadataOffset, "metadata"), metadataLength);
+  }
+
+  public ByteBuf shardKey() {
+    return frame.slice(check(shardKeyOffset, "shard key"), shardKeyLength);
+  }
+
+  public long accessKey() {
+    return frame.getLong(check(accessKeyOffset, "access key"));
+  }
+
+  public ByteBuf accessToken() {
+    return frame.slice(check(accessTokenOffset, "access token"), accessTokenLength);
+  }
+
+  public UUID connectionId() {
+    int offset = check(connectionIdOffset, "connection id");
+    return new UUID(frame.getLong(offset), frame.getLong(offset + Long.BYTES));
+  }
+
+  public short additionalFlags() {
+    return frame.getShort(check(additionalFlagsOffset, "additional flags"));
+  }
+
+  public ByteBuf innerFrame() {
+    int offset = check(innerFrameOffset, "inner frame");
+    return frame.slice(offset, frame.writerIndex() - offset);
+  }
+
+  public int entryCount() {
+    return check(entryCount, "entry count");
+  }
+
+  public int tagCount() {
+    check(tagsOffset, "tags");
+    if (tagCount == ABSENT) {
+      indexTags();
+    }
+    return tagCount;
+  }
+
+  public ByteBuf tagKeyBytes(int index) {
+    int base = tagBase(index);
+    return bytes(tagOffsets[base], tagOffsets[base + 1]);
+  }
+
+  public ByteBuf tagValueBytes(int index) {
+    int base = tagBase(index);
+    return bytes(tagOffsets[base + 2], tagOffsets[base + 3]);
+  }
+
+  public CharSequence tagKey(int index) {
+    int base = tagBase(index);
+    return text(tagOffsets[base], tagOffsets[base + 1]);
+  }
+
+  public CharSequence tagValue(int index) {
+    int base = tagBase(index);
+    return text(tagOffsets[base + 2], tagOffsets[base + 3]);
+  }
+
+  private ByteBuf bytes(int offset, int length) {
+    if (length < 0) {
+      return Unpooled.copiedBuffer(
+          FrameDictionary.resolve(dictionary, LengthFlyweight.referenceId(length)),
+          StandardCharsets.UTF_8);
+    }
+    return frame.slice(offset, length);
+  }
+
+  private CharSequence text(int offset, int length) {
+    if (length < 0) {
+      return FrameDictionary.resolve(dictionary, LengthFlyweight.referenceId(length));
+    }
+    return new ByteBufCharSequence().wrap(frame, offset, length);
+  }
+
+  /**
+   * Walks the tags of the frame in place. Unlike {@link #tagKey(int)} and {@link #tagValue(int)}
+   * this allocates nothing: the visitor gets the same two views for every tag.
+   */
+  public void forEachTag(TagVisitor visitor) {
+    TagsFlyweight.forEach(
+        frame, check(tagsOffset, "tags"), compact, dictionary, visitor, tagKey, tagValue);
+  }
+
+  /**
+   * Looks up a tag by comparing {@code key} with the encoded keys, without decoding them.
+   *
+   * @return a view of the tag's value, or {@code null} if the frame has no such tag
+   */
+  public CharSequence tag(CharSequence key) {
+    int count = tagCount();
+    int keyBytes = ByteBufUtil.utf8Bytes(key);
+    for (int i = 0; i < count; i++) {
+      int base = i * 4;
+      if (TagsFlyweight.keyEquals(
+          frame, tagOffsets[base], tagOffsets[base + 1], dictionary, key, keyBytes)) {
+        return text(tagOffsets[base + 2], tagOffsets[base + 3]);
+      }
+    }
+    return null;
+  }
+
+  /** @return the tags of the frame, decoded into Strings */
+  public Tags tags() {
+    return TagsFlyweight.decode(frame, check(tagsOffset, "tags"), compact, dictionary);
+  }
+
+  private int tagBase(int index) {
+    if (index < 0 || index >= tagCount()) {
+      throw new IndexOutOfBoundsException("index: " + index + ", tags: " + tagCount);
+    }
+    return index * 4;
+  }
+
+  @Override
+  public String toString() {
+    return "FrameCursor{frameType=" + frameType + ", frame=" + frame + "}";
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.frames;
+
+import io.netty.buffer.ByteBuf;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Strings that repeat in every routing frame sent on a connection, such as group names and tags,
+ * numbered so that frames can refer to them by id instead of repeating them. The sender registers
+ * entries while encoding routes and sends the new ones to the other end of every connection in a
+ * {@link FrameType#DICTIONARY} frame before any frame that refers to them. The receiver applies
+ * those frames to a dictionary of its own, per connection, to resolve the references.
+ *
+ * <p>Ids are assigned in order and never reused, so a sender only has to remember how many of its
+ * entries a connection already received. The dictionary is bounded: once full, new strings are
+ * written out in full.
+ */
+public final class FrameDictionary {
+  public static final int DEFAULT_CAPACITY = 1024;
+
+  private final int capacity;
+  private final ConcurrentHashMap<String, Integer> ids;
+  private final AtomicReferenceArray<String> entries;
+  private volatile int size;
+
+  public FrameDictionary() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public FrameDictionary(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be greater than 0, got " + capacity);
+    }
+    this.capacity = capacity;
+    this.ids = new ConcurrentHashMap<>();
+    this.entries = new AtomicReferenceArray<>(capacity);
+  }
+
+  /**
+   * Returns the id of {@code entry}, adding it to the dictionary if it isn't in it yet.
+   *
+   * @return the id of the entry, or -1 if it isn't in the dictionary and the dictionary is full
+   */
+  public int register(CharSequence entry) {
+    String key = entry.toString();
+    Integer id = ids.get(key);
+    if (id != null) {
+      return id;
+    }
+
+    synchronized (this) {
+      id = ids.get(key);
+      if (id != null) {
+        return id;
+      }
+
+      int next = size;
+      if (next == capacity) {
+        return -1;
+      }
+      entries.set(next, key);
+      ids.put(key, next);
+      size = next + 1;
+      return next;
+    }
+  }
+
+  /** @return the id of {@code entry}, or -1 if it isn't in the dictionary */
+  public int id(CharSequence entry) {
+    Integer id = ids.get(entry.toString());
+    return id == null ? -1 : id;
+  }
+
+  /** Adds an entry registered by the other end of the connection. */
+  public void put(int id, String entry) {
+    if (id < 0 || id >= capacity) {
+      throw new IllegalStateException("dictionary entry " + id + " is out of bounds " + capacity);
+    }
+
+    synchronized (this) {
+      String previous = entries.get(id);
+      if (previous != null && !previous.equals(entry)) {
+        throw new IllegalStateException("dictionary entry " + id + " is already " + previous);
+      }
+      entries.set(id, entry);
+      ids.putIfAbsent(entry, id);
+      if (id >= size) {
+        size = id + 1;
+      }
+    }
+  }
+
+  /** Adds the entries of a {@link FrameType#DICTIONARY} frame. */
+  public void apply(ByteBuf dictionaryFrame) {
+    int id = DictionaryFlyweight.firstId(dictionaryFrame);
+    for (String entry : DictionaryFlyweight.entries(dictionaryFrame)) {
+      put(id++, entry);
+    }
+  }
+
+  public String entry(int id) {
+    String entry = id >= 0 && id < capacity ? entries.get(id) : null;
+    if (entry == null) {
+      throw new IllegalStateException("unknown dictionary entry " + id);
+    }
+    return entry;
+  }
+
+  /** @return one more than the highest id in the dictionary */
+  public int size() {
+    return size;
+  }
+
+  public int capacity() {
+    return capacity;
+  }
+
+  static String resolve(FrameDictionary dictionary, int id) {
+    if (dictionary == null) {
+      throw new IllegalStateException(
+          "frame refers to dictionary entry " + id + " but no dictionary was given");
+    }
+    return dictionary.entry(id);
+  }
+
+  @Override
+  public String toString() {
+    return "FrameDictionary{size=" + size + ", capacity=" + capacity + "}";
+  }
+}
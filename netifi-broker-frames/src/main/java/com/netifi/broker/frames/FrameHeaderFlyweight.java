@@ -23,6 +23,22 @@ public class FrameHeaderFlyweight {
   // Protocol Version
   public static final short MAJOR_VERSION = 0;
   public static final short MINOR_VERSION = 1;
+  /**
+   * Minor version of group, broadcast and shard frames whose length prefixes are varints instead of
+   * 4 byte ints. Every version is decoded, but this one must be opted into when encoding, as
+   * brokers that predate it can't read it.
+   */
+  public static final short COMPACT_MINOR_VERSION = 2;
+
+  /**
+   * Set in the minor version field of a group, broadcast or shard frame whose payload data is
+   * compressed. The version itself only takes the low byte of the field, and readers that predate
+   * the flag never look at the field. Frames are only marked on connections whose broker announced
+   * {@link DestinationSetupFlyweight#FLAG_COMPRESSION} in a {@link FrameType#CAPABILITIES} frame.
+   */
+  public static final short FLAG_DATA_COMPRESSED = 0b00000001_00000000;
+
+  private static final int MINOR_VERSION_MASK = 0xFF;
 
   private static final int MAJOR_VERSION_SIZE = Short.BYTES;
   private static final int MINOR_VERSION_SIZE = Short.BYTES;
@@ -48,16 +64,66 @@ public class FrameHeaderFlyweight {
     return encodeFrameHeader(allocator, MAJOR_VERSION, MINOR_VERSION, type);
   }
 
+  /**
+   * Encodes the frame header into a buffer allocated for exactly {@code frameLength} bytes, so that
+   * writing the rest of the frame never grows it.
+   *
+   * @param frameLength length of the whole frame, including this header
+   */
+  public static ByteBuf encodeFrameHeader(
+      final ByteBufAllocator allocator, final FrameType type, final int frameLength) {
+    return encodeFrameHeader(allocator, type, MINOR_VERSION, frameLength);
+  }
+
+  /**
+   * Encodes the frame header of a frame of the given minor version into a buffer allocated for
+   * exactly {@code frameLength} bytes.
+   *
+   * @param minorVersion {@link #MINOR_VERSION} or {@link #COMPACT_MINOR_VERSION}
+   */
+  public static ByteBuf encodeFrameHeader(
+      final ByteBufAllocator allocator,
+      final FrameType type,
+      final short minorVersion,
+      final int frameLength) {
+    checkMinorVersion(minorVersion);
+    return allocator
+        .buffer(frameLength)
+        .writeShort(MAJOR_VERSION)
+        .writeShort(minorVersion)
+        .writeShort(type.getEncodedType());
+  }
+
+  static short checkMinorVersion(short minorVersion) {
+    if (minorVersion != MINOR_VERSION && minorVersion != COMPACT_MINOR_VERSION) {
+      throw new IllegalArgumentException("unsupported minor version " + minorVersion);
+    }
+    return minorVersion;
+  }
+
   public static short majorVersion(ByteBuf byteBuf) {
     return byteBuf.getShort(0);
   }
 
   public static short minorVersion(ByteBuf byteBuf) {
-    return byteBuf.getShort(MAJOR_VERSION_SIZE);
+    return (short) (byteBuf.getShort(MAJOR_VERSION_SIZE) & MINOR_VERSION_MASK);
   }
 
   public static FrameType frameType(ByteBuf byteBuf) {
     short frameTypeId = byteBuf.getShort(MAJOR_VERSION_SIZE + MINOR_VERSION_SIZE);
     return FrameType.from(frameTypeId);
   }
+
+  public static boolean dataCompressed(ByteBuf byteBuf) {
+    return (byteBuf.getShort(MAJOR_VERSION_SIZE) & FLAG_DATA_COMPRESSED) != 0;
+  }
+
+  /**
+   * Marks the payload data of a frame as compressed. Only the header of the frame is written to, so
+   * frames encoded along a shared route can be marked.
+   */
+  public static ByteBuf markDataCompressed(ByteBuf byteBuf) {
+    return byteBuf.setShort(
+        MAJOR_VERSION_SIZE, byteBuf.getShort(MAJOR_VERSION_SIZE) | FLAG_DATA_COMPRESSED);
+  }
 }
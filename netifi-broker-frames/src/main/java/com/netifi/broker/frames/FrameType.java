@@ -23,7 +23,10 @@ public enum FrameType {
   GROUP(0x03),
   BROADCAST(0x04),
   SHARD(0x05),
-  AUTHORIZATION_WRAPPER(0x06);
+  AUTHORIZATION_WRAPPER(0x06),
+  DICTIONARY(0x07),
+  BATCH(0x08),
+  CAPABILITIES(0x09);
 
   private static FrameType[] typesById;
 
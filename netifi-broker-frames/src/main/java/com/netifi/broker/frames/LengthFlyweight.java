@@ -0,0 +1,132 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.frames;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Length prefixes of the variable length fields of group, broadcast and shard frames. Frames of
+ * minor version 1 use 4 byte ints. Frames of {@link FrameHeaderFlyweight#COMPACT_MINOR_VERSION}
+ * use unsigned varints, 7 bits per byte with the high bit set on every byte but the last, so that
+ * the short groups and tags of a typical request cost one byte of length each.
+ *
+ * <p>Text fields (group, tag keys and tag values) can refer to a {@link FrameDictionary} entry
+ * instead of holding text. Their length is then {@code -(id + 1)} in version 1 frames. Compact
+ * text lengths are shifted left by one bit, and the low bit is set for references, whose id takes
+ * the place of the length. The text length methods represent references as negative lengths in
+ * both versions, see {@link #reference(int)}.
+ */
+final class LengthFlyweight {
+  private static final int MAX_VAR_INT_BYTES = 5;
+
+  private LengthFlyweight() {}
+
+  static boolean compact(short minorVersion) {
+    return minorVersion >= FrameHeaderFlyweight.COMPACT_MINOR_VERSION;
+  }
+
+  static boolean compact(ByteBuf frame) {
+    return compact(FrameHeaderFlyweight.minorVersion(frame));
+  }
+
+  /** @return the number of bytes taken by the prefix of a field of {@code length} bytes */
+  static int size(boolean compact, int length) {
+    return compact ? varIntSize(length) : Integer.BYTES;
+  }
+
+  /** @return the text length standing for a reference to dictionary entry {@code id} */
+  static int reference(int id) {
+    return -id - 1;
+  }
+
+  /** @return the dictionary entry referred to by a negative text length */
+  static int referenceId(int length) {
+    return -length - 1;
+  }
+
+  static int textSize(boolean compact, int length) {
+    return compact ? varIntSize(compactText(length)) : Integer.BYTES;
+  }
+
+  static ByteBuf write(ByteBuf byteBuf, boolean compact, int length) {
+    return compact ? writeVarInt(byteBuf, length) : byteBuf.writeInt(length);
+  }
+
+  static ByteBuf writeText(ByteBuf byteBuf, boolean compact, int length) {
+    return compact ? writeVarInt(byteBuf, compactText(length)) : byteBuf.writeInt(length);
+  }
+
+  private static int compactText(int length) {
+    return length < 0 ? (referenceId(length) << 1) | 1 : length << 1;
+  }
+
+  static int get(ByteBuf byteBuf, int offset, boolean compact) {
+    return compact ? getVarInt(byteBuf, offset) : byteBuf.getInt(offset);
+  }
+
+  static int getText(ByteBuf byteBuf, int offset, boolean compact) {
+    if (!compact) {
+      return byteBuf.getInt(offset);
+    }
+
+    int value = getVarInt(byteBuf, offset);
+    return (value & 1) != 0 ? reference(value >>> 1) : value >>> 1;
+  }
+
+  /** @return the offset following the field whose length prefix starts at {@code offset} */
+  static int skip(ByteBuf byteBuf, int offset, boolean compact) {
+    int length = get(byteBuf, offset, compact);
+    return offset + size(compact, length) + length;
+  }
+
+  static int skipText(ByteBuf byteBuf, int offset, boolean compact) {
+    int length = getText(byteBuf, offset, compact);
+    return offset + textSize(compact, length) + Math.max(length, 0);
+  }
+
+  static int varIntSize(int value) {
+    if ((value & 0xFFFFFF80) == 0) {
+      return 1;
+    } else if ((value & 0xFFFFC000) == 0) {
+      return 2;
+    } else if ((value & 0xFFE00000) == 0) {
+      return 3;
+    } else if ((value & 0xF0000000) == 0) {
+      return 4;
+    }
+    return MAX_VAR_INT_BYTES;
+  }
+
+  static ByteBuf writeVarInt(ByteBuf byteBuf, int value) {
+    while ((value & 0xFFFFFF80) != 0) {
+      byteBuf.writeByte((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    return byteBuf.writeByte(value);
+  }
+
+  static int getVarInt(ByteBuf byteBuf, int offset) {
+    int value = 0;
+    for (int i = 0; i < MAX_VAR_INT_BYTES; i++) {
+      byte b = byteBuf.getByte(offset + i);
+      value |= (b & 0x7F) << (7 * i);
+      if (b >= 0) {
+        return value;
+      }
+    }
+    throw new IllegalStateException("malformed varint at offset " + offset);
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.frames;
+
+import com.netifi.common.tags.Tags;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+
+/**
+ * Encodes the parts of a group, broadcast or shard frame that only depend on where the frame is
+ * routed. A route is encoded once per destination: the bytes before the metadata (frame header and
+ * group) followed by the bytes after it (shard key and tags). Encoding a frame then only writes the
+ * metadata length and composes the route around the metadata without copying it.
+ */
+final class RouteFlyweight {
+  private static final ByteBufAllocator HEAP_ALLOCATOR = new UnpooledByteBufAllocator(false);
+
+  private RouteFlyweight() {}
+
+  static ByteBuf encodeRoute(
+      FrameType type,
+      short minorVersion,
+      CharSequence group,
+      ByteBuf shardKey,
+      Tags tags,
+      FrameDictionary dictionary) {
+    boolean compact = LengthFlyweight.compact(minorVersion);
+    ByteBuf byteBuf =
+        FrameHeaderFlyweight.encodeFrameHeader(
+            HEAP_ALLOCATOR,
+            FrameHeaderFlyweight.MAJOR_VERSION,
+            FrameHeaderFlyweight.checkMinorVersion(minorVersion),
+            type);
+
+    TagsFlyweight.writeText(byteBuf, compact, group, dictionary);
+
+    if (shardKey != null) {
+      int shardKeyLength = shardKey.readableBytes();
+      LengthFlyweight.write(byteBuf, compact, shardKeyLength)
+          .writeBytes(shardKey, shardKey.readerIndex(), shardKeyLength);
+    }
+
+    TagsFlyweight.encode(byteBuf, tags, compact, dictionary);
+
+    // the route is shared by every frame encoded with it, so it must never be freed by one of them
+    return Unpooled.unreleasableBuffer(byteBuf);
+  }
+
+  /** @return the length of the frame encoded along {@code route} with empty metadata */
+  static int emptyFrameLength(ByteBuf route) {
+    return route.readableBytes() + LengthFlyweight.size(LengthFlyweight.compact(route), 0);
+  }
+
+  /** Writes the frame encoded along {@code route} with empty metadata. */
+  static ByteBuf writeEmptyFrame(ByteBuf byteBuf, ByteBuf route) {
+    boolean compact = LengthFlyweight.compact(route);
+    int prefixLength = LengthFlyweight.skipText(route, FrameHeaderFlyweight.BYTES, compact);
+    byteBuf.writeBytes(route, 0, prefixLength);
+    LengthFlyweight.write(byteBuf, compact, 0);
+    return byteBuf.writeBytes(route, prefixLength, route.readableBytes() - prefixLength);
+  }
+
+  static ByteBuf encode(
+      ByteBufAllocator allocator, FrameType type, ByteBuf route, ByteBuf metadata) {
+    if (FrameHeaderFlyweight.frameType(route) != type) {
+      throw new IllegalArgumentException(
+          "expected a " + type + " route, got " + FrameHeaderFlyweight.frameType(route));
+    }
+
+    boolean compact = LengthFlyweight.compact(route);
+    int metadataLength = metadata.readableBytes();
+    int prefixLength = LengthFlyweight.skipText(route, FrameHeaderFlyweight.BYTES, compact);
+    int suffixLength = route.readableBytes() - prefixLength;
+    int metadataLengthSize = LengthFlyweight.size(compact, metadataLength);
+
+    ByteBuf prefix =
+        allocator
+            .buffer(prefixLength + metadataLengthSize, prefixLength + metadataLengthSize)
+            .writeBytes(route, 0, prefixLength);
+    LengthFlyweight.write(prefix, compact, metadataLength);
+
+    if (suffixLength == 0) {
+      return allocator.compositeBuffer(2).addComponents(true, prefix, metadata.retain());
+    }
+
+    return allocator
+        .compositeBuffer(3)
+        .addComponents(true, prefix, metadata.retain(), route.slice(prefixLength, suffixLength));
+  }
+}
@@ -15,14 +15,10 @@
  */
 package com.netifi.broker.frames;
 
-import com.netifi.common.tags.Tag;
 import com.netifi.common.tags.Tags;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.ByteBufUtil;
-import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.List;
 
 public class ShardFlyweight {
   public static ByteBuf encode(
@@ -31,102 +27,210 @@ public class ShardFlyweight {
       ByteBuf metadata,
       ByteBuf shardKey,
       Tags tags) {
+    return encode(allocator, FrameHeaderFlyweight.MINOR_VERSION, group, metadata, shardKey, tags);
+  }
 
-    ByteBuf byteBuf = FrameHeaderFlyweight.encodeFrameHeader(allocator, FrameType.SHARD);
-
+  /**
+   * Encodes a frame of the given minor version, see {@link
+   * FrameHeaderFlyweight#COMPACT_MINOR_VERSION}.
+   */
+  public static ByteBuf encode(
+      ByteBufAllocator allocator,
+      short minorVersion,
+      CharSequence group,
+      ByteBuf metadata,
+      ByteBuf shardKey,
+      Tags tags) {
+    boolean compact = LengthFlyweight.compact(minorVersion);
     int groupLength = ByteBufUtil.utf8Bytes(group);
-    byteBuf.writeInt(groupLength);
+    int metadataLength = metadata.readableBytes();
+    int shardKeyLength = shardKey.readableBytes();
+    int frameLength =
+        FrameHeaderFlyweight.BYTES
+            + LengthFlyweight.textSize(compact, groupLength)
+            + groupLength
+            + LengthFlyweight.size(compact, metadataLength)
+            + metadataLength
+            + LengthFlyweight.size(compact, shardKeyLength)
+            + shardKeyLength
+            + TagsFlyweight.length(tags, compact);
+
+    ByteBuf byteBuf =
+        FrameHeaderFlyweight.encodeFrameHeader(
+            allocator, FrameType.SHARD, minorVersion, frameLength);
+
+    LengthFlyweight.writeText(byteBuf, compact, groupLength);
     ByteBufUtil.reserveAndWriteUtf8(byteBuf, group, groupLength);
 
+    LengthFlyweight.write(byteBuf, compact, metadataLength)
+        .writeBytes(metadata, metadata.readerIndex(), metadataLength);
+    LengthFlyweight.write(byteBuf, compact, shardKeyLength)
+        .writeBytes(shardKey, shardKey.readerIndex(), shardKeyLength);
+
+    return TagsFlyweight.encode(byteBuf, tags, compact);
+  }
+
+  /**
+   * Same frame as {@link #encode(ByteBufAllocator, CharSequence, ByteBuf, ByteBuf, Tags)}, but the
+   * metadata and the shard key are retained and referenced from a composite buffer instead of being
+   * copied.
+   */
+  public static ByteBuf encodeComposite(
+      ByteBufAllocator allocator,
+      CharSequence group,
+      ByteBuf metadata,
+      ByteBuf shardKey,
+      Tags tags) {
+    return encodeComposite(
+        allocator, FrameHeaderFlyweight.MINOR_VERSION, group, metadata, shardKey, tags);
+  }
+
+  public static ByteBuf encodeComposite(
+      ByteBufAllocator allocator,
+      short minorVersion,
+      CharSequence group,
+      ByteBuf metadata,
+      ByteBuf shardKey,
+      Tags tags) {
+    boolean compact = LengthFlyweight.compact(minorVersion);
+    int groupLength = ByteBufUtil.utf8Bytes(group);
     int metadataLength = metadata.readableBytes();
     int shardKeyLength = shardKey.readableBytes();
-    byteBuf
-        .writeInt(metadataLength)
-        .writeBytes(metadata, metadata.readerIndex(), metadataLength)
-        .writeInt(shardKeyLength)
-        .writeBytes(shardKey, shardKey.readerIndex(), shardKeyLength);
+    int prefixLength =
+        FrameHeaderFlyweight.BYTES
+            + LengthFlyweight.textSize(compact, groupLength)
+            + groupLength
+            + LengthFlyweight.size(compact, metadataLength);
+    int shardKeyLengthOffset = prefixLength + LengthFlyweight.size(compact, shardKeyLength);
+
+    ByteBuf fields =
+        FrameHeaderFlyweight.encodeFrameHeader(
+            allocator,
+            FrameType.SHARD,
+            minorVersion,
+            shardKeyLengthOffset + TagsFlyweight.length(tags, compact));
+
+    LengthFlyweight.writeText(fields, compact, groupLength);
+    ByteBufUtil.reserveAndWriteUtf8(fields, group, groupLength);
+    LengthFlyweight.write(fields, compact, metadataLength);
+    LengthFlyweight.write(fields, compact, shardKeyLength);
+    TagsFlyweight.encode(fields, tags, compact);
+
+    return CompositeFlyweight.compose(
+        allocator, fields, prefixLength, metadata, shardKeyLengthOffset, shardKey);
+  }
 
-    for (Tag tag : tags) {
-      String key = tag.getKey();
-      String value = tag.getValue();
+  /**
+   * Encodes the group, shard key and tags of a destination once, so that frames sent to it can be
+   * encoded with {@link #encode(ByteBufAllocator, ByteBuf, ByteBuf)}. The returned buffer is not
+   * reference counted and can be kept for as long as the destination is used.
+   */
+  public static ByteBuf encodeRoute(CharSequence group, ByteBuf shardKey, Tags tags) {
+    return encodeRoute(FrameHeaderFlyweight.MINOR_VERSION, group, shardKey, tags);
+  }
 
-      int keyLength = ByteBufUtil.utf8Bytes(key);
-      byteBuf.writeInt(keyLength);
-      ByteBufUtil.reserveAndWriteUtf8(byteBuf, key, keyLength);
+  /** Encodes a route for frames of the given minor version. */
+  public static ByteBuf encodeRoute(
+      short minorVersion, CharSequence group, ByteBuf shardKey, Tags tags) {
+    return encodeRoute(minorVersion, group, shardKey, tags, null);
+  }
 
-      int valueLength = ByteBufUtil.utf8Bytes(value);
-      byteBuf.writeInt(valueLength);
-      ByteBufUtil.reserveAndWriteUtf8(byteBuf, value, valueLength);
-    }
+  /**
+   * Encodes a route whose group and tags refer to entries of {@code dictionary}, registering them
+   * if needed. Frames encoded along it must only be sent on connections that received those
+   * entries.
+   */
+  public static ByteBuf encodeRoute(
+      short minorVersion,
+      CharSequence group,
+      ByteBuf shardKey,
+      Tags tags,
+      FrameDictionary dictionary) {
+    return RouteFlyweight.encodeRoute(
+        FrameType.SHARD, minorVersion, group, shardKey, tags, dictionary);
+  }
 
-    return byteBuf;
+  /**
+   * Encodes a frame along a route from {@link #encodeRoute}. The metadata is retained and composed
+   * into the frame rather than copied.
+   */
+  public static ByteBuf encode(ByteBufAllocator allocator, ByteBuf route, ByteBuf metadata) {
+    return RouteFlyweight.encode(allocator, FrameType.SHARD, route, metadata);
   }
 
   public static String group(ByteBuf byteBuf) {
+    return group(byteBuf, null);
+  }
+
+  /** Reads the group of a frame whose group may refer to an entry of {@code dictionary}. */
+  public static String group(ByteBuf byteBuf, FrameDictionary dictionary) {
+    boolean compact = LengthFlyweight.compact(byteBuf);
     int offset = FrameHeaderFlyweight.BYTES;
 
-    int groupLength = byteBuf.getInt(offset);
-    offset += Integer.BYTES;
+    int groupLength = LengthFlyweight.getText(byteBuf, offset, compact);
+    offset += LengthFlyweight.textSize(compact, groupLength);
 
-    return byteBuf.toString(offset, groupLength, StandardCharsets.UTF_8);
+    return TagsFlyweight.readText(byteBuf, offset, groupLength, dictionary);
   }
 
   public static ByteBuf metadata(ByteBuf byteBuf) {
-    int offset = FrameHeaderFlyweight.BYTES;
-
-    int groupLength = byteBuf.getInt(offset);
-    offset += Integer.BYTES + groupLength;
+    boolean compact = LengthFlyweight.compact(byteBuf);
+    int offset = LengthFlyweight.skipText(byteBuf, FrameHeaderFlyweight.BYTES, compact);
 
-    int metadataLength = byteBuf.getInt(offset);
-    offset += Integer.BYTES;
+    int metadataLength = LengthFlyweight.get(byteBuf, offset, compact);
+    offset += LengthFlyweight.size(compact, metadataLength);
 
     return byteBuf.slice(offset, metadataLength);
   }
 
   public static ByteBuf shardKey(ByteBuf byteBuf) {
-    int offset = FrameHeaderFlyweight.BYTES;
+    boolean compact = LengthFlyweight.compact(byteBuf);
+    int offset = LengthFlyweight.skipText(byteBuf, FrameHeaderFlyweight.BYTES, compact);
+    offset = LengthFlyweight.skip(byteBuf, offset, compact);
 
-    int groupLength = byteBuf.getInt(offset);
-    offset += Integer.BYTES + groupLength;
-
-    int metadataLength = byteBuf.getInt(offset);
-    offset += Integer.BYTES + metadataLength;
-
-    int shardKeyLength = byteBuf.getInt(offset);
-    offset += Integer.BYTES;
+    int shardKeyLength = LengthFlyweight.get(byteBuf, offset, compact);
+    offset += LengthFlyweight.size(compact, shardKeyLength);
 
     return byteBuf.slice(offset, shardKeyLength);
   }
 
   public static Tags tags(ByteBuf byteBuf) {
-    int offset = FrameHeaderFlyweight.BYTES;
-
-    int groupLength = byteBuf.getInt(offset);
-    offset += Integer.BYTES + groupLength;
-
-    int metadataLength = byteBuf.getInt(offset);
-    offset += Integer.BYTES + metadataLength;
-
-    int shardKeyLength = byteBuf.getInt(offset);
-    offset += Integer.BYTES + shardKeyLength;
+    return tags(byteBuf, null);
+  }
 
-    List<Tag> tags = new ArrayList<>();
-    while (offset < byteBuf.readableBytes()) {
-      int keyLength = byteBuf.getInt(offset);
-      offset += Integer.BYTES;
+  /** Decodes the tags of a frame whose tags may refer to entries of {@code dictionary}. */
+  public static Tags tags(ByteBuf byteBuf, FrameDictionary dictionary) {
+    boolean compact = LengthFlyweight.compact(byteBuf);
+    return TagsFlyweight.decode(byteBuf, tagsOffset(byteBuf, compact), compact, dictionary);
+  }
 
-      String key = byteBuf.toString(offset, keyLength, StandardCharsets.UTF_8);
-      offset += keyLength;
+  /** Walks the tags of the frame in place, without decoding them. */
+  public static void forEachTag(ByteBuf byteBuf, TagVisitor visitor) {
+    forEachTag(byteBuf, null, visitor);
+  }
 
-      int valueLength = byteBuf.getInt(offset);
-      offset += Integer.BYTES;
+  public static void forEachTag(ByteBuf byteBuf, FrameDictionary dictionary, TagVisitor visitor) {
+    boolean compact = LengthFlyweight.compact(byteBuf);
+    TagsFlyweight.forEach(byteBuf, tagsOffset(byteBuf, compact), compact, dictionary, visitor);
+  }
 
-      String value = byteBuf.toString(offset, valueLength, StandardCharsets.UTF_8);
-      offset += valueLength;
+  /**
+   * Looks up a tag by comparing {@code key} with the encoded keys, without decoding them.
+   *
+   * @return a view of the tag's value, or {@code null} if the frame has no such tag
+   */
+  public static CharSequence tag(ByteBuf byteBuf, CharSequence key) {
+    return tag(byteBuf, null, key);
+  }
 
-      tags.add(Tag.of(key, value));
-    }
+  public static CharSequence tag(ByteBuf byteBuf, FrameDictionary dictionary, CharSequence key) {
+    boolean compact = LengthFlyweight.compact(byteBuf);
+    return TagsFlyweight.find(byteBuf, tagsOffset(byteBuf, compact), compact, dictionary, key);
+  }
 
-    return Tags.of(tags);
+  private static int tagsOffset(ByteBuf byteBuf, boolean compact) {
+    int offset = LengthFlyweight.skipText(byteBuf, FrameHeaderFlyweight.BYTES, compact);
+    offset = LengthFlyweight.skip(byteBuf, offset, compact);
+    return LengthFlyweight.skip(byteBuf, offset, compact);
   }
 }
@@ -0,0 +1,27 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.frames;
+
+/**
+ * Receives the tags of a frame as they are encoded, without decoding them into Strings. The key and
+ * value are views over the frame that are only valid for the duration of the call, use {@code
+ * toString()} to keep them.
+ */
+@FunctionalInterface
+public interface TagVisitor {
+  /** @return {@code false} to stop visiting the remaining tags */
+  boolean visit(CharSequence key, CharSequence value);
+}
@@ -0,0 +1,222 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.frames;
+
+import com.netifi.common.tags.Tag;
+import com.netifi.common.tags.Tags;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tags at the end of a frame, as length prefixed UTF-8 keys and values. The length prefixes are
+ * encoded as described by {@link LengthFlyweight}, keys and values of routes can be references to
+ * {@link FrameDictionary} entries.
+ */
+final class TagsFlyweight {
+  private TagsFlyweight() {}
+
+  static int length(Tags tags) {
+    return length(tags, false);
+  }
+
+  static int length(Tags tags, boolean compact) {
+    int length = 0;
+    for (Tag tag : tags) {
+      int keyLength = ByteBufUtil.utf8Bytes(tag.getKey());
+      length += LengthFlyweight.textSize(compact, keyLength) + keyLength;
+      int valueLength = ByteBufUtil.utf8Bytes(tag.getValue());
+      length += LengthFlyweight.textSize(compact, valueLength) + valueLength;
+    }
+    return length;
+  }
+
+  static ByteBuf encode(ByteBuf byteBuf, Tags tags) {
+    return encode(byteBuf, tags, false, null);
+  }
+
+  static ByteBuf encode(ByteBuf byteBuf, Tags tags, boolean compact) {
+    return encode(byteBuf, tags, compact, null);
+  }
+
+  static ByteBuf encode(ByteBuf byteBuf, Tags tags, boolean compact, FrameDictionary dictionary) {
+    for (Tag tag : tags) {
+      writeText(byteBuf, compact, tag.getKey(), dictionary);
+      writeText(byteBuf, compact, tag.getValue(), dictionary);
+    }
+    return byteBuf;
+  }
+
+  /**
+   * Writes a text field, as a reference if {@code text} is or can be added to the dictionary.
+   *
+   * @param dictionary the dictionary to refer to, or {@code null} to always write the text
+   */
+  static ByteBuf writeText(
+      ByteBuf byteBuf, boolean compact, CharSequence text, FrameDictionary dictionary) {
+    int id = dictionary == null ? -1 : dictionary.register(text);
+    if (id >= 0) {
+      return LengthFlyweight.writeText(byteBuf, compact, LengthFlyweight.reference(id));
+    }
+
+    int length = ByteBufUtil.utf8Bytes(text);
+    LengthFlyweight.writeText(byteBuf, compact, length);
+    ByteBufUtil.reserveAndWriteUtf8(byteBuf, text, length);
+    return byteBuf;
+  }
+
+  /** Reads a text field whose length prefix has been read already. */
+  static String readText(ByteBuf byteBuf, int offset, int length, FrameDictionary dictionary) {
+    if (length < 0) {
+      return FrameDictionary.resolve(dictionary, LengthFlyweight.referenceId(length));
+    }
+    return byteBuf.toString(offset, length, StandardCharsets.UTF_8);
+  }
+
+  static Tags decode(ByteBuf byteBuf, int offset, boolean compact, FrameDictionary dictionary) {
+    List<Tag> tags = new ArrayList<>();
+    while (offset < byteBuf.readableBytes()) {
+      int keyLength = LengthFlyweight.getText(byteBuf, offset, compact);
+      offset += LengthFlyweight.textSize(compact, keyLength);
+
+      String key = readText(byteBuf, offset, keyLength, dictionary);
+      offset += Math.max(keyLength, 0);
+
+      int valueLength = LengthFlyweight.getText(byteBuf, offset, compact);
+      offset += LengthFlyweight.textSize(compact, valueLength);
+
+      String value = readText(byteBuf, offset, valueLength, dictionary);
+      offset += Math.max(valueLength, 0);
+
+      tags.add(Tag.of(key, value));
+    }
+
+    return Tags.of(tags);
+  }
+
+  static void forEach(
+      ByteBuf byteBuf,
+      int offset,
+      boolean compact,
+      FrameDictionary dictionary,
+      TagVisitor visitor) {
+    forEach(
+        byteBuf,
+        offset,
+        compact,
+        dictionary,
+        visitor,
+        new ByteBufCharSequence(),
+        new ByteBufCharSequence());
+  }
+
+  static void forEach(
+      ByteBuf byteBuf,
+      int offset,
+      boolean compact,
+      FrameDictionary dictionary,
+      TagVisitor visitor,
+      ByteBufCharSequence keyView,
+      ByteBufCharSequence valueView) {
+    while (offset < byteBuf.readableBytes()) {
+      int keyLength = LengthFlyweight.getText(byteBuf, offset, compact);
+      offset += LengthFlyweight.textSize(compact, keyLength);
+
+      CharSequence key = view(byteBuf, offset, keyLength, dictionary, keyView);
+      offset += Math.max(keyLength, 0);
+
+      int valueLength = LengthFlyweight.getText(byteBuf, offset, compact);
+      offset += LengthFlyweight.textSize(compact, valueLength);
+
+      CharSequence value = view(byteBuf, offset, valueLength, dictionary, valueView);
+      offset += Math.max(valueLength, 0);
+
+      if (!visitor.visit(key, value)) {
+        break;
+      }
+    }
+  }
+
+  private static CharSequence view(
+      ByteBuf byteBuf,
+      int offset,
+      int length,
+      FrameDictionary dictionary,
+      ByteBufCharSequence view) {
+    if (length < 0) {
+      return FrameDictionary.resolve(dictionary, LengthFlyweight.referenceId(length));
+    }
+    return view.wrap(byteBuf, offset, length);
+  }
+
+  /** @return the value of the tag with the given key, or {@code null} if there is none */
+  static CharSequence find(
+      ByteBuf byteBuf,
+      int offset,
+      boolean compact,
+      FrameDictionary dictionary,
+      CharSequence key) {
+    int keyBytes = ByteBufUtil.utf8Bytes(key);
+    while (offset < byteBuf.readableBytes()) {
+      int keyLength = LengthFlyweight.getText(byteBuf, offset, compact);
+      offset += LengthFlyweight.textSize(compact, keyLength);
+
+      boolean found = keyEquals(byteBuf, offset, keyLength, dictionary, key, keyBytes);
+      offset += Math.max(keyLength, 0);
+
+      int valueLength = LengthFlyweight.getText(byteBuf, offset, compact);
+      offset += LengthFlyweight.textSize(compact, valueLength);
+
+      if (found) {
+        return view(byteBuf, offset, valueLength, dictionary, new ByteBufCharSequence());
+      }
+      offset += Math.max(valueLength, 0);
+    }
+
+    return null;
+  }
+
+  /**
+   * Compares an encoded key with {@code key}, whose UTF-8 length is {@code keyBytes}. ASCII keys
+   * are compared byte by byte against the frame, only other keys are decoded.
+   */
+  static boolean keyEquals(
+      ByteBuf byteBuf,
+      int offset,
+      int length,
+      FrameDictionary dictionary,
+      CharSequence key,
+      int keyBytes) {
+    if (length < 0) {
+      return FrameDictionary.resolve(dictionary, LengthFlyweight.referenceId(length))
+          .contentEquals(key);
+    }
+    if (length != keyBytes) {
+      return false;
+    }
+    if (keyBytes != key.length()) {
+      return byteBuf.toString(offset, length, StandardCharsets.UTF_8).contentEquals(key);
+    }
+    for (int i = 0; i < length; i++) {
+      if (byteBuf.getByte(offset + i) != (byte) key.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -89,4 +89,34 @@ public class AuthorizationWrapperFlyweightTest {
     Assert.assertTrue(ByteBufUtil.equals(shardKey, ShardFlyweight.shardKey(byteBuf)));
     Assert.assertEquals(tags, ShardFlyweight.tags(byteBuf));
   }
+
+  @Test
+  public void testEncodingComposite() {
+    ByteBuf metadata = Unpooled.wrappedBuffer("metadata".getBytes());
+    ByteBuf shardKey = Unpooled.wrappedBuffer("shardKey".getBytes());
+    Tags tags = Tags.of("tag", "tag");
+    ByteBuf frame =
+        ShardFlyweight.encodeComposite(ByteBufAllocator.DEFAULT, "group", metadata, shardKey, tags);
+
+    ByteBuf wrappedByteBuf =
+        AuthorizationWrapperFlyweight.encodeComposite(ByteBufAllocator.DEFAULT, ACCESS_KEY, frame);
+
+    Assert.assertTrue(
+        ByteBufUtil.equals(
+            AuthorizationWrapperFlyweight.encode(
+                ByteBufAllocator.DEFAULT, ACCESS_KEY, frame.duplicate()),
+            wrappedByteBuf));
+
+    ByteBuf byteBuf = AuthorizationWrapperFlyweight.innerFrame(wrappedByteBuf);
+
+    Assert.assertEquals(123456789L, AuthorizationWrapperFlyweight.accessKey(wrappedByteBuf));
+    Assert.assertTrue(ByteBufUtil.equals(metadata, ShardFlyweight.metadata(byteBuf)));
+    Assert.assertTrue(ByteBufUtil.equals(shardKey, ShardFlyweight.shardKey(byteBuf)));
+    Assert.assertEquals(tags, ShardFlyweight.tags(byteBuf));
+
+    frame.release();
+    wrappedByteBuf.release();
+    Assert.assertEquals(1, metadata.refCnt());
+    Assert.assertEquals(1, shardKey.refCnt());
+  }
 }
@@ -0,0 +1,81 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.frames;
+
+import com.netifi.common.tags.Tags;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BatchFlyweightTest {
+  @Test
+  public void testEncoding() {
+    Tags tags = Tags.of("com.netifi.destination", "toDestination");
+    short[] minorVersions = {
+      FrameHeaderFlyweight.MINOR_VERSION, FrameHeaderFlyweight.COMPACT_MINOR_VERSION
+    };
+    for (short minorVersion : minorVersions) {
+      ByteBuf route = GroupFlyweight.encodeRoute(minorVersion, "group", tags);
+      ByteBuf entries = Unpooled.buffer();
+      for (int i = 0; i < 3; i++) {
+        ByteBuf metadata = Unpooled.copiedBuffer("metadata-" + i, StandardCharsets.UTF_8);
+        ByteBuf data = Unpooled.copiedBuffer("data-" + i, StandardCharsets.UTF_8);
+        int length = entries.readableBytes();
+        BatchFlyweight.writeEntry(entries, route, metadata, data);
+        Assert.assertEquals(
+            BatchFlyweight.entryLength(route, metadata, data), entries.readableBytes() - length);
+      }
+
+      ByteBuf byteBuf = BatchFlyweight.encode(ByteBufAllocator.DEFAULT, route, 3);
+      Assert.assertEquals(FrameType.BATCH, FrameHeaderFlyweight.frameType(byteBuf));
+      Assert.assertEquals(minorVersion, FrameHeaderFlyweight.minorVersion(byteBuf));
+      Assert.assertEquals(3, BatchFlyweight.entryCount(byteBuf));
+
+      ByteBuf innerFrame = BatchFlyweight.innerFrame(byteBuf);
+      Assert.assertEquals(FrameType.GROUP, FrameHeaderFlyweight.frameType(innerFrame));
+      Assert.assertEquals("group", GroupFlyweight.group(innerFrame));
+      Assert.assertEquals(0, GroupFlyweight.metadata(innerFrame).readableBytes());
+      Assert.assertEquals(tags, GroupFlyweight.tags(innerFrame));
+
+      List<String> decoded = new ArrayList<>();
+      BatchFlyweight.forEachEntry(
+          byteBuf,
+          entries,
+          (metadata, data) ->
+              decoded.add(
+                  metadata.toString(StandardCharsets.UTF_8)
+                      + "/"
+                      + data.toString(StandardCharsets.UTF_8)));
+      Assert.assertEquals(3, decoded.size());
+      Assert.assertEquals("metadata-2/data-2", decoded.get(2));
+
+      FrameCursor cursor = FrameCursor.of(byteBuf);
+      try {
+        Assert.assertEquals(3, cursor.entryCount());
+        Assert.assertTrue(ByteBufUtil.equals(innerFrame, cursor.innerFrame()));
+      } finally {
+        cursor.recycle();
+        byteBuf.release();
+      }
+    }
+  }
+}
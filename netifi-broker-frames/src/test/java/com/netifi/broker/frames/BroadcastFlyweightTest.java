@@ -36,4 +36,15 @@ public class BroadcastFlyweightTest {
     Assert.assertTrue(ByteBufUtil.equals(metadata, BroadcastFlyweight.metadata(byteBuf)));
     Assert.assertEquals(tags, BroadcastFlyweight.tags(byteBuf));
   }
+
+  @Test
+  public void testEncodingWithRoute() {
+    ByteBuf metadata = Unpooled.wrappedBuffer("metadata".getBytes());
+    ByteBuf route = BroadcastFlyweight.encodeRoute("group", Tags.empty());
+    ByteBuf byteBuf = BroadcastFlyweight.encode(ByteBufAllocator.DEFAULT, route, metadata);
+
+    Assert.assertEquals("group", BroadcastFlyweight.group(byteBuf));
+    Assert.assertTrue(ByteBufUtil.equals(metadata, BroadcastFlyweight.metadata(byteBuf)));
+    Assert.assertEquals(Tags.empty(), BroadcastFlyweight.tags(byteBuf));
+  }
 }
@@ -0,0 +1,35 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.frames;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CapabilitiesFlyweightTest {
+  @Test
+  public void testEncoding() {
+    ByteBuf byteBuf =
+        CapabilitiesFlyweight.encode(
+            ByteBufAllocator.DEFAULT, DestinationSetupFlyweight.FLAG_COMPRESSION);
+
+    Assert.assertEquals(FrameType.CAPABILITIES, FrameHeaderFlyweight.frameType(byteBuf));
+    Assert.assertEquals(
+        DestinationSetupFlyweight.FLAG_COMPRESSION, CapabilitiesFlyweight.flags(byteBuf));
+    byteBuf.release();
+  }
+}
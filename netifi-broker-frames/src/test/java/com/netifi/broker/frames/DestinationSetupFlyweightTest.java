@@ -66,5 +66,8 @@ public class DestinationSetupFlyweightTest {
     Assert.assertEquals(connectionId, DestinationSetupFlyweight.connectionId(byteBuf));
     Assert.assertTrue(additionalFlags == DestinationSetupFlyweight.additionalFlags(byteBuf));
     Assert.assertEquals(tags, DestinationSetupFlyweight.tags(byteBuf));
+    Assert.assertEquals(
+        "com.netifi.destination",
+        DestinationSetupFlyweight.tag(byteBuf, "com.netifi.destination").toString());
   }
 }
@@ -0,0 +1,235 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.frames;
+
+import com.netifi.common.tags.Tags;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FrameCursorTest {
+  @Test
+  public void testShard() {
+    ByteBuf metadata = Unpooled.wrappedBuffer("metadata".getBytes());
+    ByteBuf shardKey = Unpooled.wrappedBuffer("shardKey".getBytes());
+    Tags tags = Tags.of("tag", "value", "other", "ünïcode");
+    ByteBuf byteBuf =
+        ShardFlyweight.encode(ByteBufAllocator.DEFAULT, "group", metadata, shardKey, tags);
+
+    FrameCursor cursor = FrameCursor.of(byteBuf);
+    try {
+      Assert.assertEquals(FrameType.SHARD, cursor.frameType());
+      Assert.assertEquals(FrameHeaderFlyweight.MAJOR_VERSION, cursor.majorVersion());
+      Assert.assertEquals(FrameHeaderFlyweight.MINOR_VERSION, cursor.minorVersion());
+      Assert.assertEquals("group", cursor.group().toString());
+      Assert.assertEquals(5, cursor.group().length());
+      Assert.assertEquals('r', cursor.group().charAt(1));
+      Assert.assertTrue(ByteBufUtil.equals(metadata, cursor.metadata()));
+      Assert.assertTrue(ByteBufUtil.equals(shardKey, cursor.shardKey()));
+      Assert.assertEquals(2, cursor.tagCount());
+      Assert.assertEquals("other", cursor.tagKey(0).toString());
+      Assert.assertEquals(6, cursor.tagValue(0).length());
+      Assert.assertEquals('ï', cursor.tagValue(0).charAt(2));
+      Assert.assertEquals("tag", cursor.tagKey(1).toString());
+      Assert.assertEquals(tags, cursor.tags());
+      Assert.assertEquals("value", cursor.tag("tag").toString());
+      Assert.assertEquals("ünïcode", cursor.tag("other").toString());
+      Assert.assertNull(cursor.tag("missing"));
+
+      StringBuilder visited = new StringBuilder();
+      cursor.forEachTag(
+          (key, value) -> {
+            visited.append(key).append('=').append(value).append(';');
+            return true;
+          });
+      Assert.assertEquals("other=ünïcode;tag=value;", visited.toString());
+    } finally {
+      cursor.recycle();
+      byteBuf.release();
+    }
+  }
+
+  @Test
+  public void testCompactShard() {
+    ByteBuf metadata = Unpooled.wrappedBuffer("metadata".getBytes());
+    ByteBuf shardKey = Unpooled.wrappedBuffer("shardKey".getBytes());
+    Tags tags = Tags.of("tag", "value", "other", "ünïcode");
+    ByteBuf byteBuf =
+        ShardFlyweight.encode(
+            ByteBufAllocator.DEFAULT,
+            FrameHeaderFlyweight.COMPACT_MINOR_VERSION,
+            "group",
+            metadata,
+            shardKey,
+            tags);
+
+    FrameCursor cursor = FrameCursor.of(byteBuf);
+    try {
+      Assert.assertEquals(FrameHeaderFlyweight.COMPACT_MINOR_VERSION, cursor.minorVersion());
+      Assert.assertEquals("group", cursor.group().toString());
+      Assert.assertTrue(ByteBufUtil.equals(metadata, cursor.metadata()));
+      Assert.assertTrue(ByteBufUtil.equals(shardKey, cursor.shardKey()));
+      Assert.assertEquals(2, cursor.tagCount());
+      Assert.assertEquals("ünïcode", cursor.tag("other").toString());
+      Assert.assertEquals(tags, cursor.tags());
+    } finally {
+      cursor.recycle();
+      byteBuf.release();
+    }
+  }
+  @Test
+  public void testDictionaryShard() {
+    FrameDictionary dictionary = new FrameDictionary();
+    ByteBuf metadata = Unpooled.wrappedBuffer("metadata".getBytes());
+    ByteBuf shardKey = Unpooled.wrappedBuffer("shardKey".getBytes());
+    Tags tags = Tags.of("tag", "value", "other", "ünïcode");
+    ByteBuf route =
+        ShardFlyweight.encodeRoute(
+            FrameHeaderFlyweight.COMPACT_MINOR_VERSION, "group", shardKey, tags, dictionary);
+    ByteBuf byteBuf = ShardFlyweight.encode(ByteBufAllocator.DEFAULT, route, metadata);
+
+    FrameCursor cursor = FrameCursor.of(byteBuf, dictionary);
+    try {
+      Assert.assertEquals("group", cursor.group().toString());
+      Assert.assertTrue(ByteBufUtil.equals(metadata, cursor.metadata()));
+      Assert.assertTrue(ByteBufUtil.equals(shardKey, cursor.shardKey()));
+      Assert.assertEquals(2, cursor.tagCount());
+      Assert.assertEquals("ünïcode", cursor.tag("other").toString());
+      Assert.assertEquals("value", cursor.tagValueBytes(1).toString(StandardCharsets.UTF_8));
+      Assert.assertEquals(tags, cursor.tags());
+    } finally {
+      cursor.recycle();
+      byteBuf.release();
+    }
+  }
+
+
+  @Test
+  public void testGroupWithoutTags() {
+    ByteBuf metadata = Unpooled.wrappedBuffer("metadata".getBytes());
+    ByteBuf byteBuf =
+        GroupFlyweight.encode(ByteBufAllocator.DEFAULT, "group", metadata, Tags.empty());
+
+    FrameCursor cursor = FrameCursor.of(byteBuf);
+    try {
+      Assert.assertEquals("group", cursor.group().toString());
+      Assert.assertTrue(ByteBufUtil.equals(metadata, cursor.metadata()));
+      Assert.assertEquals(0, cursor.tagCount());
+      Assert.assertEquals(Tags.empty(), cursor.tags());
+    } finally {
+      cursor.recycle();
+      byteBuf.release();
+    }
+  }
+
+  @Test
+  public void testAuthorizationWrapper() {
+    ByteBuf metadata = Unpooled.wrappedBuffer("metadata".getBytes());
+    Tags tags = Tags.of("tag", "tag");
+    ByteBuf innerFrame =
+        BroadcastFlyweight.encode(ByteBufAllocator.DEFAULT, "group", metadata, tags);
+    ByteBuf byteBuf = AuthorizationWrapperFlyweight.encode(ByteBufAllocator.DEFAULT, 1, innerFrame);
+
+    FrameCursor cursor = FrameCursor.of(byteBuf);
+    try {
+      Assert.assertEquals(FrameType.AUTHORIZATION_WRAPPER, cursor.frameType());
+      Assert.assertEquals(1, cursor.accessKey());
+      Assert.assertTrue(ByteBufUtil.equals(innerFrame, cursor.innerFrame()));
+
+      cursor.wrap(cursor.innerFrame());
+      Assert.assertEquals(FrameType.BROADCAST, cursor.frameType());
+      Assert.assertEquals("group", cursor.group().toString());
+      Assert.assertTrue(ByteBufUtil.equals(metadata, cursor.metadata()));
+      Assert.assertEquals(tags, cursor.tags());
+    } finally {
+      cursor.recycle();
+      byteBuf.release();
+      innerFrame.release();
+    }
+  }
+
+  @Test
+  public void testDestinationSetup() throws Exception {
+    InetAddress address = InetAddress.getByName("127.0.0.1");
+    byte[] accessToken = new byte[] {1, 2, 3};
+    UUID connectionId = UUID.randomUUID();
+    Tags tags = Tags.of("tag", "tag");
+    ByteBuf byteBuf =
+        DestinationSetupFlyweight.encode(
+            ByteBufAllocator.DEFAULT,
+            address,
+            "group",
+            Long.MAX_VALUE,
+            accessToken,
+            connectionId,
+            DestinationSetupFlyweight.FLAG_ENABLE_PUBLIC_ACCESS,
+            tags);
+
+    FrameCursor cursor = FrameCursor.of(byteBuf);
+    try {
+      Assert.assertArrayEquals(address.getAddress(), ByteBufUtil.getBytes(cursor.inetAddress()));
+      Assert.assertEquals("group", cursor.group().toString());
+      Assert.assertEquals(Long.MAX_VALUE, cursor.accessKey());
+      Assert.assertArrayEquals(accessToken, ByteBufUtil.getBytes(cursor.accessToken()));
+      Assert.assertEquals(connectionId, cursor.connectionId());
+      Assert.assertEquals(
+          DestinationSetupFlyweight.FLAG_ENABLE_PUBLIC_ACCESS, cursor.additionalFlags());
+      Assert.assertEquals(tags, cursor.tags());
+    } finally {
+      cursor.recycle();
+      byteBuf.release();
+    }
+  }
+
+  @Test
+  public void testBrokerSetup() {
+    ByteBuf accessToken = Unpooled.wrappedBuffer(new byte[] {1, 2, 3});
+    ByteBuf byteBuf =
+        BrokerSetupFlyweight.encode(ByteBufAllocator.DEFAULT, "broker", "cluster", 1, accessToken);
+
+    FrameCursor cursor = FrameCursor.of(byteBuf);
+    try {
+      Assert.assertEquals("broker", cursor.brokerId().toString());
+      Assert.assertEquals("cluster", cursor.clusterId().toString());
+      Assert.assertEquals(1, cursor.accessKey());
+      Assert.assertTrue(ByteBufUtil.equals(accessToken, cursor.accessToken()));
+    } finally {
+      cursor.recycle();
+      byteBuf.release();
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testMissingField() {
+    ByteBuf metadata = Unpooled.wrappedBuffer("metadata".getBytes());
+    ByteBuf byteBuf =
+        GroupFlyweight.encode(ByteBufAllocator.DEFAULT, "group", metadata, Tags.empty());
+
+    FrameCursor cursor = FrameCursor.of(byteBuf);
+    try {
+      cursor.shardKey();
+    } finally {
+      cursor.recycle();
+      byteBuf.release();
+    }
+  }
+}
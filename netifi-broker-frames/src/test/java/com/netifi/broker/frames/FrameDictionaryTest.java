@@ -0,0 +1,72 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.frames;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import java.util.Arrays;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FrameDictionaryTest {
+  @Test
+  public void testRegister() {
+    FrameDictionary dictionary = new FrameDictionary(2);
+
+    Assert.assertEquals(0, dictionary.register("group"));
+    Assert.assertEquals(1, dictionary.register("tag"));
+    Assert.assertEquals(0, dictionary.register(new StringBuilder("group")));
+    Assert.assertEquals(-1, dictionary.register("value"));
+    Assert.assertEquals(-1, dictionary.id("value"));
+    Assert.assertEquals(2, dictionary.size());
+    Assert.assertEquals("tag", dictionary.entry(1));
+  }
+
+  @Test
+  public void testApply() {
+    FrameDictionary dictionary = new FrameDictionary();
+    dictionary.register("group");
+    dictionary.register("ключ");
+    dictionary.register("value");
+
+    ByteBuf byteBuf = DictionaryFlyweight.encode(ByteBufAllocator.DEFAULT, dictionary, 1, 3);
+    Assert.assertEquals(FrameType.DICTIONARY, FrameHeaderFlyweight.frameType(byteBuf));
+    Assert.assertEquals(1, DictionaryFlyweight.firstId(byteBuf));
+    Assert.assertEquals(Arrays.asList("ключ", "value"), DictionaryFlyweight.entries(byteBuf));
+
+    FrameDictionary received = new FrameDictionary();
+    received.apply(byteBuf);
+    // applying the same entries twice is harmless
+    received.apply(byteBuf);
+    byteBuf.release();
+
+    Assert.assertEquals(3, received.size());
+    Assert.assertEquals("ключ", received.entry(1));
+    Assert.assertEquals(2, received.id("value"));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testConflictingEntry() {
+    FrameDictionary dictionary = new FrameDictionary();
+    dictionary.put(0, "group");
+    dictionary.put(0, "other");
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testUnknownEntry() {
+    new FrameDictionary().entry(0);
+  }
+}
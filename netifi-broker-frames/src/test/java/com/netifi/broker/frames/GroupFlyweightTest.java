@@ -20,6 +20,9 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.ByteBufUtil;
 import io.netty.buffer.Unpooled;
+import io.netty.util.AsciiString;
+import java.util.ArrayList;
+import java.util.List;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -36,4 +39,201 @@ public class GroupFlyweightTest {
     Assert.assertTrue(ByteBufUtil.equals(metadata, GroupFlyweight.metadata(byteBuf)));
     Assert.assertEquals(tags, GroupFlyweight.tags(byteBuf));
   }
+
+  @Test
+  public void testEncodingWithRoute() {
+    ByteBuf metadata = Unpooled.wrappedBuffer("metadata".getBytes());
+    Tags tags = Tags.of("com.netifi.destination", "toDestination");
+    ByteBuf route = GroupFlyweight.encodeRoute("group", tags);
+    ByteBuf byteBuf = GroupFlyweight.encode(ByteBufAllocator.DEFAULT, route, metadata);
+
+    Assert.assertTrue(
+        ByteBufUtil.equals(
+            GroupFlyweight.encode(ByteBufAllocator.DEFAULT, "group", metadata, tags), byteBuf));
+    Assert.assertEquals("group", GroupFlyweight.group(byteBuf));
+    Assert.assertTrue(ByteBufUtil.equals(metadata, GroupFlyweight.metadata(byteBuf)));
+    Assert.assertEquals(tags, GroupFlyweight.tags(byteBuf));
+
+    byteBuf.release();
+    Assert.assertEquals(1, metadata.refCnt());
+    Assert.assertEquals("group", GroupFlyweight.group(route));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testEncodingWithWrongRoute() {
+    ByteBuf metadata = Unpooled.wrappedBuffer("metadata".getBytes());
+    ByteBuf route = BroadcastFlyweight.encodeRoute("group", Tags.empty());
+    GroupFlyweight.encode(ByteBufAllocator.DEFAULT, route, metadata);
+  }
+
+  @Test
+  public void testEncodingComposite() {
+    ByteBuf metadata = Unpooled.wrappedBuffer("metadata".getBytes());
+    Tags tags = Tags.of("com.netifi.destination", "toDestination");
+    ByteBuf byteBuf =
+        GroupFlyweight.encodeComposite(ByteBufAllocator.DEFAULT, "group", metadata, tags);
+
+    Assert.assertTrue(
+        ByteBufUtil.equals(
+            GroupFlyweight.encode(ByteBufAllocator.DEFAULT, "group", metadata, tags), byteBuf));
+    Assert.assertEquals("group", GroupFlyweight.group(byteBuf));
+    Assert.assertTrue(ByteBufUtil.equals(metadata, GroupFlyweight.metadata(byteBuf)));
+    Assert.assertEquals(tags, GroupFlyweight.tags(byteBuf));
+
+    byteBuf.release();
+    Assert.assertEquals(1, metadata.refCnt());
+  }
+
+  @Test
+  public void testEncodingCompositeWithoutTags() {
+    ByteBuf metadata = Unpooled.wrappedBuffer("metadata".getBytes());
+    ByteBuf byteBuf =
+        GroupFlyweight.encodeComposite(ByteBufAllocator.DEFAULT, "group", metadata, Tags.empty());
+
+    Assert.assertTrue(ByteBufUtil.equals(metadata, GroupFlyweight.metadata(byteBuf)));
+    Assert.assertEquals(Tags.empty(), GroupFlyweight.tags(byteBuf));
+  }
+
+  @Test
+  public void testTagVisitor() {
+    ByteBuf metadata = Unpooled.wrappedBuffer("metadata".getBytes());
+    Tags tags = Tags.of("a", "1", "b", "2", "c", "3");
+    ByteBuf byteBuf = GroupFlyweight.encode(ByteBufAllocator.DEFAULT, "group", metadata, tags);
+
+    List<String> visited = new ArrayList<>();
+    GroupFlyweight.forEachTag(
+        byteBuf,
+        (key, value) -> {
+          visited.add(key + "=" + value);
+          return !"b".contentEquals(key);
+        });
+
+    Assert.assertEquals(2, visited.size());
+    Assert.assertEquals("a=1", visited.get(0));
+    Assert.assertEquals("b=2", visited.get(1));
+  }
+
+  @Test
+  public void testTagLookup() {
+    ByteBuf metadata = Unpooled.wrappedBuffer("metadata".getBytes());
+    Tags tags = Tags.of("region", "us-east-1", "zone", "ä", "ключ", "value");
+    ByteBuf byteBuf = GroupFlyweight.encode(ByteBufAllocator.DEFAULT, "group", metadata, tags);
+
+    Assert.assertEquals("us-east-1", GroupFlyweight.tag(byteBuf, "region").toString());
+    Assert.assertEquals(
+        "us-east-1", GroupFlyweight.tag(byteBuf, AsciiString.of("region")).toString());
+    Assert.assertEquals("ä", GroupFlyweight.tag(byteBuf, "zone").toString());
+    Assert.assertEquals("value", GroupFlyweight.tag(byteBuf, "ключ").toString());
+    Assert.assertNull(GroupFlyweight.tag(byteBuf, "regio"));
+    Assert.assertNull(GroupFlyweight.tag(byteBuf, "missing"));
+  }
+
+  @Test
+  public void testCompactEncoding() {
+    ByteBuf metadata = Unpooled.wrappedBuffer("metadata".getBytes());
+    Tags tags = Tags.of("com.netifi.destination", "toDestination", "ключ", "значение");
+    short compact = FrameHeaderFlyweight.COMPACT_MINOR_VERSION;
+    ByteBuf byteBuf =
+        GroupFlyweight.encode(ByteBufAllocator.DEFAULT, compact, "group", metadata, tags);
+
+    Assert.assertEquals(compact, FrameHeaderFlyweight.minorVersion(byteBuf));
+    Assert.assertEquals("group", GroupFlyweight.group(byteBuf));
+    Assert.assertTrue(ByteBufUtil.equals(metadata, GroupFlyweight.metadata(byteBuf)));
+    Assert.assertEquals(tags, GroupFlyweight.tags(byteBuf));
+    Assert.assertEquals("значение", GroupFlyweight.tag(byteBuf, "ключ").toString());
+
+    ByteBuf uncompact = GroupFlyweight.encode(ByteBufAllocator.DEFAULT, "group", metadata, tags);
+    // six length prefixes of one byte instead of four
+    Assert.assertEquals(uncompact.readableBytes() - 6 * 3, byteBuf.readableBytes());
+
+    Assert.assertTrue(
+        ByteBufUtil.equals(
+            byteBuf,
+            GroupFlyweight.encodeComposite(
+                ByteBufAllocator.DEFAULT, compact, "group", metadata, tags)));
+    Assert.assertTrue(
+        ByteBufUtil.equals(
+            byteBuf,
+            GroupFlyweight.encode(
+                ByteBufAllocator.DEFAULT,
+                GroupFlyweight.encodeRoute(compact, "group", tags),
+                metadata)));
+  }
+
+  @Test
+  public void testDictionaryEncoding() {
+    ByteBuf metadata = Unpooled.wrappedBuffer("metadata".getBytes());
+    Tags tags = Tags.of("com.netifi.destination", "toDestination", "ключ", "значение");
+    short[] minorVersions = {
+      FrameHeaderFlyweight.MINOR_VERSION, FrameHeaderFlyweight.COMPACT_MINOR_VERSION
+    };
+    for (short minorVersion : minorVersions) {
+      FrameDictionary dictionary = new FrameDictionary();
+      ByteBuf byteBuf =
+          GroupFlyweight.encode(
+              ByteBufAllocator.DEFAULT,
+              GroupFlyweight.encodeRoute(minorVersion, "group", tags, dictionary),
+              metadata);
+
+      Assert.assertEquals(5, dictionary.size());
+      Assert.assertEquals(0, dictionary.id("group"));
+      Assert.assertEquals("group", GroupFlyweight.group(byteBuf, dictionary));
+      Assert.assertEquals(tags, GroupFlyweight.tags(byteBuf, dictionary));
+      Assert.assertEquals("значение", GroupFlyweight.tag(byteBuf, dictionary, "ключ").toString());
+      // the metadata is found without resolving anything
+      Assert.assertTrue(ByteBufUtil.equals(metadata, GroupFlyweight.metadata(byteBuf)));
+
+      ByteBuf full =
+          GroupFlyweight.encode(ByteBufAllocator.DEFAULT, minorVersion, "group", metadata, tags);
+      Assert.assertTrue(byteBuf.readableBytes() < full.readableBytes());
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testDictionaryReferenceWithoutDictionary() {
+    ByteBuf metadata = Unpooled.wrappedBuffer("metadata".getBytes());
+    ByteBuf route =
+        GroupFlyweight.encodeRoute(
+            FrameHeaderFlyweight.MINOR_VERSION, "group", Tags.empty(), new FrameDictionary());
+    GroupFlyweight.group(GroupFlyweight.encode(ByteBufAllocator.DEFAULT, route, metadata));
+  }
+
+  @Test
+  public void testFullDictionary() {
+    FrameDictionary dictionary = new FrameDictionary(1);
+    dictionary.register("other");
+    ByteBuf metadata = Unpooled.wrappedBuffer("metadata".getBytes());
+    ByteBuf route =
+        GroupFlyweight.encodeRoute(
+            FrameHeaderFlyweight.COMPACT_MINOR_VERSION, "group", Tags.empty(), dictionary);
+    ByteBuf byteBuf = GroupFlyweight.encode(ByteBufAllocator.DEFAULT, route, metadata);
+
+    Assert.assertEquals(-1, dictionary.id("group"));
+    Assert.assertEquals("group", GroupFlyweight.group(byteBuf));
+  }
+
+  @Test
+  public void testDataCompressedMarker() {
+    ByteBuf metadata = Unpooled.wrappedBuffer("metadata".getBytes());
+    ByteBuf route = GroupFlyweight.encodeRoute("group", Tags.empty());
+    ByteBuf byteBuf =
+        FrameHeaderFlyweight.markDataCompressed(
+            GroupFlyweight.encode(ByteBufAllocator.DEFAULT, route, metadata));
+
+    Assert.assertTrue(FrameHeaderFlyweight.dataCompressed(byteBuf));
+    Assert.assertEquals(FrameType.GROUP, FrameHeaderFlyweight.frameType(byteBuf));
+    Assert.assertEquals(
+        FrameHeaderFlyweight.MINOR_VERSION, FrameHeaderFlyweight.minorVersion(byteBuf));
+    Assert.assertEquals("group", GroupFlyweight.group(byteBuf));
+    // the frame type field stays readable by brokers that predate the flag
+    Assert.assertEquals(FrameType.GROUP.getEncodedType(), byteBuf.getShort(4));
+    // the shared route is left as is
+    Assert.assertFalse(FrameHeaderFlyweight.dataCompressed(route));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnsupportedMinorVersion() {
+    ByteBuf metadata = Unpooled.wrappedBuffer("metadata".getBytes());
+    GroupFlyweight.encode(ByteBufAllocator.DEFAULT, (short) 3, "group", metadata, Tags.empty());
+  }
 }
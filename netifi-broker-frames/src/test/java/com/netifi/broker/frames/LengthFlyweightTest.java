@@ -0,0 +1,69 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.frames;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LengthFlyweightTest {
+  @Test
+  public void testVarInt() {
+    int[] values = {0, 1, 127, 128, 16_383, 16_384, 2_097_151, 2_097_152, Integer.MAX_VALUE, -1};
+    int[] sizes = {1, 1, 1, 2, 2, 3, 3, 4, 5, 5};
+    ByteBuf byteBuf = Unpooled.buffer();
+    for (int i = 0; i < values.length; i++) {
+      byteBuf.clear();
+      LengthFlyweight.writeVarInt(byteBuf, values[i]);
+
+      Assert.assertEquals(sizes[i], byteBuf.readableBytes());
+      Assert.assertEquals(sizes[i], LengthFlyweight.varIntSize(values[i]));
+      Assert.assertEquals(values[i], LengthFlyweight.getVarInt(byteBuf, 0));
+    }
+  }
+
+  @Test
+  public void testText() {
+    ByteBuf byteBuf = Unpooled.buffer();
+    LengthFlyweight.writeText(byteBuf, true, 63);
+    LengthFlyweight.writeText(byteBuf, true, 64);
+
+    Assert.assertEquals(1, LengthFlyweight.textSize(true, 63));
+    Assert.assertEquals(2, LengthFlyweight.textSize(true, 64));
+    Assert.assertEquals(63, LengthFlyweight.getText(byteBuf, 0, true));
+    Assert.assertEquals(64, LengthFlyweight.getText(byteBuf, 1, true));
+    Assert.assertEquals(1 + 63, LengthFlyweight.skipText(byteBuf, 0, true));
+  }
+
+  @Test
+  public void testTextReference() {
+    ByteBuf byteBuf = LengthFlyweight.writeVarInt(Unpooled.buffer(), 3);
+    byteBuf.writeInt(LengthFlyweight.reference(1));
+
+    Assert.assertEquals(LengthFlyweight.reference(1), LengthFlyweight.getText(byteBuf, 0, true));
+    Assert.assertEquals(LengthFlyweight.reference(1), LengthFlyweight.getText(byteBuf, 1, false));
+    Assert.assertEquals(1, LengthFlyweight.referenceId(LengthFlyweight.getText(byteBuf, 0, true)));
+    Assert.assertEquals(1, LengthFlyweight.skipText(byteBuf, 0, true));
+    Assert.assertEquals(1 + Integer.BYTES, LengthFlyweight.skipText(byteBuf, 1, false));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testMalformedVarInt() {
+    ByteBuf byteBuf = Unpooled.wrappedBuffer(new byte[] {-1, -1, -1, -1, -1, 0});
+    LengthFlyweight.getVarInt(byteBuf, 0);
+  }
+}
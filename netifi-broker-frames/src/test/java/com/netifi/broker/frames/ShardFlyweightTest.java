@@ -38,4 +38,68 @@ public class ShardFlyweightTest {
     Assert.assertTrue(ByteBufUtil.equals(shardKey, ShardFlyweight.shardKey(byteBuf)));
     Assert.assertEquals(tags, ShardFlyweight.tags(byteBuf));
   }
+
+  @Test
+  public void testEncodingWithRoute() {
+    ByteBuf metadata = Unpooled.wrappedBuffer("metadata".getBytes());
+    ByteBuf shardKey = Unpooled.wrappedBuffer("shardKey".getBytes());
+    Tags tags = Tags.of("tag", "tag");
+    ByteBuf route = ShardFlyweight.encodeRoute("group", shardKey, tags);
+    ByteBuf byteBuf = ShardFlyweight.encode(ByteBufAllocator.DEFAULT, route, metadata);
+
+    Assert.assertTrue(
+        ByteBufUtil.equals(
+            ShardFlyweight.encode(ByteBufAllocator.DEFAULT, "group", metadata, shardKey, tags),
+            byteBuf));
+    Assert.assertTrue(ByteBufUtil.equals(metadata, ShardFlyweight.metadata(byteBuf)));
+    Assert.assertTrue(ByteBufUtil.equals(shardKey, ShardFlyweight.shardKey(byteBuf)));
+    Assert.assertEquals(tags, ShardFlyweight.tags(byteBuf));
+  }
+
+  @Test
+  public void testEncodingComposite() {
+    ByteBuf metadata = Unpooled.wrappedBuffer("metadata".getBytes());
+    ByteBuf shardKey = Unpooled.wrappedBuffer("shardKey".getBytes());
+    Tags tags = Tags.of("tag", "tag");
+    ByteBuf byteBuf =
+        ShardFlyweight.encodeComposite(ByteBufAllocator.DEFAULT, "group", metadata, shardKey, tags);
+
+    Assert.assertTrue(
+        ByteBufUtil.equals(
+            ShardFlyweight.encode(ByteBufAllocator.DEFAULT, "group", metadata, shardKey, tags),
+            byteBuf));
+    Assert.assertEquals("group", ShardFlyweight.group(byteBuf));
+    Assert.assertTrue(ByteBufUtil.equals(metadata, ShardFlyweight.metadata(byteBuf)));
+    Assert.assertTrue(ByteBufUtil.equals(shardKey, ShardFlyweight.shardKey(byteBuf)));
+    Assert.assertEquals(tags, ShardFlyweight.tags(byteBuf));
+  }
+
+  @Test
+  public void testCompactEncoding() {
+    byte[] bytes = new byte[300];
+    ByteBuf metadata = Unpooled.wrappedBuffer(bytes);
+    ByteBuf shardKey = Unpooled.wrappedBuffer("shardKey".getBytes());
+    Tags tags = Tags.of("tag", "tag");
+    short compact = FrameHeaderFlyweight.COMPACT_MINOR_VERSION;
+    ByteBuf byteBuf =
+        ShardFlyweight.encode(ByteBufAllocator.DEFAULT, compact, "group", metadata, shardKey, tags);
+
+    Assert.assertEquals("group", ShardFlyweight.group(byteBuf));
+    Assert.assertTrue(ByteBufUtil.equals(metadata, ShardFlyweight.metadata(byteBuf)));
+    Assert.assertTrue(ByteBufUtil.equals(shardKey, ShardFlyweight.shardKey(byteBuf)));
+    Assert.assertEquals(tags, ShardFlyweight.tags(byteBuf));
+
+    Assert.assertTrue(
+        ByteBufUtil.equals(
+            byteBuf,
+            ShardFlyweight.encodeComposite(
+                ByteBufAllocator.DEFAULT, compact, "group", metadata, shardKey, tags)));
+    Assert.assertTrue(
+        ByteBufUtil.equals(
+            byteBuf,
+            ShardFlyweight.encode(
+                ByteBufAllocator.DEFAULT,
+                ShardFlyweight.encodeRoute(compact, "group", shardKey, tags),
+                metadata)));
+  }
 }
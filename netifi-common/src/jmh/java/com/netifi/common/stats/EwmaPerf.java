@@ -18,6 +18,7 @@ package com.netifi.common.stats;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.*;
+import java.util.function.DoubleSupplier;
 import org.openjdk.jmh.annotations.*;
 
 @BenchmarkMode(Mode.Throughput)
@@ -49,6 +50,69 @@ public class EwmaPerf {
     return input.ewma.value();
   }
 
+  @Benchmark
+  @Threads(1)
+  public double sharedInsert1(Shared shared) {
+    return shared.insert();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public double sharedInsert4(Shared shared) {
+    return shared.insert();
+  }
+
+  @Benchmark
+  @Threads(16)
+  public double sharedInsert16(Shared shared) {
+    return shared.insert();
+  }
+
+  /**
+   * One average written by every benchmark thread, as the per-connection statistics are written by
+   * every thread completing a request on that connection.
+   */
+  @State(Scope.Benchmark)
+  public static class Shared {
+    @Param({"synchronized", "concurrent", "peak"})
+    public String implementation;
+
+    DoubleSupplier insert;
+
+    @Setup
+    public void setup() {
+      switch (implementation) {
+        case "synchronized":
+          Ewma ewma = new Ewma(30, TimeUnit.SECONDS, 1.0);
+          insert =
+              () -> {
+                ewma.insert(ThreadLocalRandom.current().nextInt(1_000));
+                return ewma.value();
+              };
+          break;
+        case "concurrent":
+          ConcurrentEwma concurrentEwma = new ConcurrentEwma(30, TimeUnit.SECONDS, 1.0);
+          insert =
+              () -> {
+                concurrentEwma.insert(ThreadLocalRandom.current().nextInt(1_000));
+                return concurrentEwma.value();
+              };
+          break;
+        default:
+          PeakEwma peakEwma = new PeakEwma(30, TimeUnit.SECONDS, 1.0);
+          insert =
+              () -> {
+                peakEwma.insert(ThreadLocalRandom.current().nextInt(1_000));
+                return peakEwma.value();
+              };
+      }
+    }
+
+    double insert() {
+      return insert.getAsDouble();
+    }
+  }
+
   @State(Scope.Thread)
   public static class Input {
 
@@ -18,6 +18,7 @@ package com.netifi.common.stats;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.*;
+import java.util.function.Supplier;
 import org.openjdk.jmh.annotations.*;
 
 @BenchmarkMode(Mode.Throughput)
@@ -49,6 +50,72 @@ public class QuantilePerf {
     return input.quantile.estimation();
   }
 
+  @Benchmark
+  @Threads(1)
+  public double sharedInsert1(Shared shared) {
+    return shared.insert();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public double sharedInsert4(Shared shared) {
+    return shared.insert();
+  }
+
+  @Benchmark
+  @Threads(16)
+  public double sharedInsert16(Shared shared) {
+    return shared.insert();
+  }
+
+  /**
+   * One estimator written by every benchmark thread, comparing the synchronized estimators with
+   * their lock-free and striped replacements.
+   */
+  @State(Scope.Benchmark)
+  public static class Shared {
+    @Param({
+      "frugal",
+      "concurrentFrugal",
+      "stripedFrugal",
+      "median",
+      "concurrentMedian",
+      "latencySketch"
+    })
+    public String implementation;
+
+    Quantile quantile;
+
+    @Setup
+    public void setup() {
+      quantile = factory(implementation).get();
+    }
+
+    static Supplier<Quantile> factory(String implementation) {
+      switch (implementation) {
+        case "frugal":
+          return () -> new FrugalQuantile(0.8);
+        case "concurrentFrugal":
+          return () -> new ConcurrentFrugalQuantile(0.8);
+        case "stripedFrugal":
+          return () -> new StripedQuantile(0.8);
+        case "median":
+          return Median::new;
+        case "concurrentMedian":
+          return ConcurrentMedian::new;
+        case "latencySketch":
+          return () -> new LatencySketch(0.8);
+        default:
+          throw new IllegalArgumentException("unknown implementation " + implementation);
+      }
+    }
+
+    double insert() {
+      quantile.insert(ThreadLocalRandom.current().nextInt(1_000));
+      return quantile.estimation();
+    }
+  }
+
   @State(Scope.Thread)
   public static class Input {
 
@@ -0,0 +1,77 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.common.stats;
+
+import com.netifi.common.time.Clock;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Lock-free version of {@link Ewma}. Every insert claims the interval since the previous insert
+ * with an atomic swap of the timestamp, so concurrent inserts still split time between them exactly
+ * once. The average itself is then folded in with a CAS loop. Samples are never dropped and {@link
+ * #insert(double)} never blocks or allocates.
+ */
+public class ConcurrentEwma {
+  private static final AtomicLongFieldUpdater<ConcurrentEwma> STAMP =
+      AtomicLongFieldUpdater.newUpdater(ConcurrentEwma.class, "stamp");
+  private static final AtomicLongFieldUpdater<ConcurrentEwma> EWMA =
+      AtomicLongFieldUpdater.newUpdater(ConcurrentEwma.class, "ewma");
+
+  private final long tau;
+  private volatile long stamp;
+  private volatile long ewma; // raw bits of the current average
+
+  public ConcurrentEwma(long halfLife, TimeUnit unit, double initialValue) {
+    this.tau = Clock.TICKER.unit().convert((long) (halfLife / Math.log(2)), unit);
+    stamp = Ewma.NEVER;
+    ewma = Double.doubleToRawLongBits(initialValue);
+  }
+
+  public void insert(double x) {
+    long now = Clock.TICKER.getEpochTime();
+    long previous = STAMP.getAndSet(this, now);
+    double elapsed =
+        previous == Ewma.NEVER ? Double.POSITIVE_INFINITY : Math.max(0, now - previous);
+    double w = Math.exp(-elapsed / tau);
+
+    for (; ; ) {
+      long bits = ewma;
+      double next = w * Double.longBitsToDouble(bits) + (1.0 - w) * x;
+      if (EWMA.compareAndSet(this, bits, Double.doubleToRawLongBits(next))) {
+        return;
+      }
+    }
+  }
+
+  public void reset(double value) {
+    stamp = Ewma.NEVER;
+    ewma = Double.doubleToRawLongBits(value);
+  }
+
+  public double value() {
+    return Double.longBitsToDouble(ewma);
+  }
+
+  @Override
+  public String toString() {
+    return "ConcurrentEwma(value="
+        + value()
+        + ", age="
+        + (Clock.TICKER.getEpochTime() - stamp)
+        + ")";
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.common.stats;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Lock-free version of {@link FrugalQuantile}. The estimate is updated with a single CAS; when two
+ * threads race, the sample of the losing thread is dropped instead of retried. Frugal streaming
+ * already ignores a random share of the samples, so losing a few under contention does not change
+ * what the estimate converges to, and {@link #insert(double)} never blocks or allocates.
+ *
+ * <p>The estimate moves by steps of at least one {@code unit}, and accelerates by one unit per step
+ * in the same direction. The unit should be in the order of the resolution the samples need, e.g.
+ * a microsecond for latencies measured in nanoseconds; with a unit far below the magnitude of the
+ * samples the estimate takes a very long time to follow a shift.
+ */
+public class ConcurrentFrugalQuantile implements Quantile {
+  private static final AtomicLongFieldUpdater<ConcurrentFrugalQuantile> ESTIMATE =
+      AtomicLongFieldUpdater.newUpdater(ConcurrentFrugalQuantile.class, "estimate");
+
+  private final double quantile;
+  private final double increment;
+  private final boolean sampled;
+  private final double unit;
+  private volatile long estimate; // raw bits of the current estimate
+  private volatile int step;
+  private volatile int sign;
+
+  public ConcurrentFrugalQuantile(double quantile, double increment) {
+    this(quantile, increment, true);
+  }
+
+  public ConcurrentFrugalQuantile(double quantile) {
+    this(quantile, 1.0);
+  }
+
+  ConcurrentFrugalQuantile(double quantile, double increment, boolean sampled) {
+    this(quantile, increment, sampled, 1.0);
+  }
+
+  ConcurrentFrugalQuantile(double quantile, double increment, boolean sampled, double unit) {
+    if (unit <= 0.0) {
+      throw new IllegalArgumentException("unit must be positive, got " + unit);
+    }
+    this.quantile = quantile;
+    this.increment = increment;
+    this.sampled = sampled;
+    this.unit = unit;
+    this.estimate = Double.doubleToRawLongBits(0.0);
+    this.step = 1;
+    this.sign = 0;
+  }
+
+  public void reset() {
+    this.sign = 0;
+    this.step = 1;
+    this.estimate = Double.doubleToRawLongBits(0.0);
+  }
+
+  public double quantile() {
+    return quantile;
+  }
+
+  @Override
+  public double estimation() {
+    return Double.longBitsToDouble(estimate) * unit;
+  }
+
+  @Override
+  public void insert(double sample) {
+    // the estimate is kept in units, so that steps of 1 are steps of one unit
+    final double x = sample / unit;
+    final long bits = estimate;
+    int sign = this.sign;
+
+    if (sign == 0) {
+      if (ESTIMATE.compareAndSet(this, bits, Double.doubleToRawLongBits(x))) {
+        this.sign = 1;
+      }
+      return;
+    }
+
+    final double current = Double.longBitsToDouble(bits);
+    final double v = sampled ? ThreadLocalRandom.current().nextDouble() : 1.0;
+    int step = this.step;
+    double next;
+
+    if (x > current && v > (1 - quantile)) {
+      step += sign * increment;
+
+      if (step > 0) {
+        next = current + step;
+      } else {
+        next = current + 1;
+      }
+
+      if (next > x) {
+        step += (x - next);
+        next = x;
+      }
+
+      if (sign < 0) {
+        step = 1;
+      }
+
+      sign = 1;
+    } else if (x < current && v > quantile) {
+      step -= sign * increment;
+
+      if (step > 0) {
+        next = current - step;
+      } else {
+        next = current - 1;
+      }
+
+      if (next < x) {
+        step += (next - x);
+        next = x;
+      }
+
+      if (sign > 0) {
+        step = 1;
+      }
+
+      sign = -1;
+    } else {
+      return;
+    }
+
+    if (ESTIMATE.compareAndSet(this, bits, Double.doubleToRawLongBits(next))) {
+      this.step = step;
+      this.sign = sign;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "ConcurrentFrugalQuantile(q=" + quantile + ", v=" + estimation() + ")";
+  }
+}
@@ -0,0 +1,39 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.common.stats;
+
+/**
+ * Lock-free version of {@link Median}: like {@link ConcurrentFrugalQuantile} it updates the
+ * estimate with a single CAS, but considers every data-point instead of a random sample of them.
+ */
+public class ConcurrentMedian extends ConcurrentFrugalQuantile {
+  public ConcurrentMedian() {
+    this(1.0);
+  }
+
+  /**
+   * @param unit the smallest step of the estimate, in the unit of the samples, see {@link
+   *     ConcurrentFrugalQuantile}
+   */
+  public ConcurrentMedian(double unit) {
+    super(0.5, 1.0, false, unit);
+  }
+
+  @Override
+  public String toString() {
+    return "ConcurrentMedian(v=" + estimation() + ")";
+  }
+}
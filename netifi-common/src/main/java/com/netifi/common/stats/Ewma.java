@@ -28,19 +28,22 @@ import java.util.concurrent.TimeUnit;
  * equal to (200 - 100)/2 = 150 (half of the distance between the new and the old value)
  */
 public class Ewma {
+  static final long NEVER = Long.MIN_VALUE;
+
   private final long tau;
   private volatile long stamp;
   private volatile double ewma;
 
   public Ewma(long halfLife, TimeUnit unit, double initialValue) {
-    this.tau = Clock.DEFAULT.unit().convert((long) (halfLife / Math.log(2)), unit);
-    stamp = 0L;
+    this.tau = Clock.TICKER.unit().convert((long) (halfLife / Math.log(2)), unit);
+    stamp = NEVER;
     ewma = initialValue;
   }
 
   public synchronized void insert(double x) {
-    long now = Clock.DEFAULT.getEpochTime();
-    double elapsed = Math.max(0, now - stamp);
+    long now = Clock.TICKER.getEpochTime();
+    // the first value replaces the initial one, as if it came after an infinitely long time
+    double elapsed = stamp == NEVER ? Double.POSITIVE_INFINITY : Math.max(0, now - stamp);
     stamp = now;
 
     double w = Math.exp(-elapsed / tau);
@@ -48,7 +51,7 @@ public class Ewma {
   }
 
   public synchronized void reset(double value) {
-    stamp = 0L;
+    stamp = NEVER;
     ewma = value;
   }
 
@@ -58,6 +61,6 @@ public class Ewma {
 
   @Override
   public String toString() {
-    return "Ewma(value=" + ewma + ", age=" + (Clock.DEFAULT.getEpochTime() - stamp) + ")";
+    return "Ewma(value=" + ewma + ", age=" + (Clock.TICKER.getEpochTime() - stamp) + ")";
   }
 }
@@ -0,0 +1,261 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.common.stats;
+
+import com.netifi.common.time.Clock;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Mergeable quantile sketch with relative error guarantees.
+ *
+ * <p>Reference: Masson, Charles, Jee E. Rim, and Homin K. Lee. "DDSketch: A Fast and
+ * Fully-Mergeable Quantile Sketch with Relative-Error Guarantees." PVLDB 12.12 (2019): 2195-2205.
+ *
+ * <p>Values are counted in logarithmic buckets so that any quantile is answered within the
+ * configured relative accuracy, whatever the distribution. Two sketches with the same accuracy and
+ * range merge by adding their buckets. Values below 1 are counted as 0 and values above the maximum
+ * as the maximum, so the sketch needs a fixed ~{@code log(maxValue) / (2 * relativeAccuracy)}
+ * buckets: around 5KB with the defaults.
+ *
+ * <p>Counts decay exponentially with the configured half-life, so the sketch follows the recent
+ * distribution instead of the whole history. The decay is caught up on reads and before a sketch
+ * is merged, so the counts of a sketch that is no longer inserted into fade as well. Inserts and
+ * merges are lock-free and do not allocate.
+ */
+public class LatencySketch implements Quantile {
+  public static final double DEFAULT_RELATIVE_ACCURACY = 0.02;
+  /** 1000 seconds in nanoseconds, the unit of {@link Clock#TICKER}. */
+  public static final double DEFAULT_MAX_VALUE = 1e12;
+  public static final long DEFAULT_HALF_LIFE_SECONDS = 30;
+
+  private static final AtomicLongFieldUpdater<LatencySketch> LAST_DECAY =
+      AtomicLongFieldUpdater.newUpdater(LatencySketch.class, "lastDecay");
+
+  private final double quantile;
+  private final double relativeAccuracy;
+  private final double gamma;
+  private final double logGamma;
+  private final double maxValue;
+  private final long halfLife;
+  private final long decayInterval;
+  // raw bits of the decayed count of every bucket, the first one counts the values below 1
+  private final AtomicLongArray buckets;
+  private volatile long lastDecay;
+
+  public LatencySketch(
+      double quantile, double relativeAccuracy, double maxValue, long halfLife, TimeUnit unit) {
+    if (relativeAccuracy <= 0.0 || relativeAccuracy >= 1.0) {
+      throw new IllegalArgumentException(
+          "relativeAccuracy must be between 0 and 1, got " + relativeAccuracy);
+    }
+    if (maxValue < 1.0) {
+      throw new IllegalArgumentException("maxValue must be at least 1, got " + maxValue);
+    }
+    checkQuantile(quantile);
+    this.quantile = quantile;
+    this.relativeAccuracy = relativeAccuracy;
+    this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+    this.logGamma = Math.log(gamma);
+    this.maxValue = maxValue;
+    this.halfLife = Clock.TICKER.unit().convert(halfLife, unit);
+    this.decayInterval = Math.max(1, this.halfLife / 8);
+    this.buckets = new AtomicLongArray(2 + (int) Math.ceil(Math.log(maxValue) / logGamma));
+    this.lastDecay = Clock.TICKER.getEpochTime();
+  }
+
+  public LatencySketch(double quantile) {
+    this(
+        quantile,
+        DEFAULT_RELATIVE_ACCURACY,
+        DEFAULT_MAX_VALUE,
+        DEFAULT_HALF_LIFE_SECONDS,
+        TimeUnit.SECONDS);
+  }
+
+  public LatencySketch() {
+    this(0.5);
+  }
+
+  private static void checkQuantile(double quantile) {
+    if (quantile < 0.0 || quantile > 1.0) {
+      throw new IllegalArgumentException("quantile must be between 0 and 1, got " + quantile);
+    }
+  }
+
+  /** @return the estimation of the quantile this sketch was created for */
+  @Override
+  public double estimation() {
+    return quantile(quantile);
+  }
+
+  @Override
+  public void insert(double x) {
+    decay();
+    add(index(x), 1.0);
+  }
+
+  /**
+   * Estimates an arbitrary quantile of the values inserted so far, weighted by their age.
+   *
+   * @param quantile the quantile to estimate, between 0 and 1
+   * @return the estimated value, or 0 when the sketch is empty
+   */
+  public double quantile(double quantile) {
+    checkQuantile(quantile);
+    decay();
+    int length = buckets.length();
+    double total = 0.0;
+    for (int i = 0; i < length; i++) {
+      total += count(i);
+    }
+
+    double rank = quantile * total;
+    double cumulative = 0.0;
+    int last = -1;
+    for (int i = 0; i < length; i++) {
+      double count = count(i);
+      if (count > 0.0) {
+        cumulative += count;
+        last = i;
+        if (cumulative >= rank) {
+          return value(i);
+        }
+      }
+    }
+
+    return last < 0 ? 0.0 : value(last);
+  }
+
+  /** @return the decayed number of values in the sketch */
+  public double count() {
+    decay();
+    double total = 0.0;
+    for (int i = 0; i < buckets.length(); i++) {
+      total += count(i);
+    }
+    return total;
+  }
+
+  /**
+   * Adds the counts of another sketch to this one. Both sketches must have been created with the
+   * same relative accuracy and maximum value.
+   *
+   * @param other the sketch to merge into this one
+   */
+  public void merge(LatencySketch other) {
+    if (other.relativeAccuracy != relativeAccuracy || other.buckets.length() != buckets.length()) {
+      throw new IllegalArgumentException(
+          "cannot merge sketches with a different accuracy or range: " + this + " and " + other);
+    }
+    decay();
+    other.decay();
+    for (int i = 0; i < buckets.length(); i++) {
+      double count = other.count(i);
+      if (count > 0.0) {
+        add(i, count);
+      }
+    }
+  }
+
+  public void reset() {
+    for (int i = 0; i < buckets.length(); i++) {
+      buckets.set(i, Double.doubleToRawLongBits(0.0));
+    }
+    lastDecay = Clock.TICKER.getEpochTime();
+  }
+
+  public double relativeAccuracy() {
+    return relativeAccuracy;
+  }
+
+  public double maxValue() {
+    return maxValue;
+  }
+
+  private int index(double x) {
+    if (!(x >= 1.0)) {
+      return 0;
+    }
+    if (x >= maxValue) {
+      return buckets.length() - 1;
+    }
+    return Math.min(buckets.length() - 1, 1 + (int) Math.ceil(Math.log(x) / logGamma));
+  }
+
+  // bucket i + 1 holds the values in (gamma^(i - 1), gamma^i], this is the value in the middle of
+  // that range relative to its bounds
+  private double value(int index) {
+    if (index == 0) {
+      return 0.0;
+    }
+    return Math.min(maxValue, 2 * Math.pow(gamma, index - 1) / (gamma + 1));
+  }
+
+  private double count(int index) {
+    return Double.longBitsToDouble(buckets.get(index));
+  }
+
+  private void add(int index, double weight) {
+    for (; ; ) {
+      long bits = buckets.get(index);
+      long next = Double.doubleToRawLongBits(Double.longBitsToDouble(bits) + weight);
+      if (buckets.compareAndSet(index, bits, next)) {
+        return;
+      }
+    }
+  }
+
+  // the decay is applied in a batch by the first thread to notice that it is due. An insert racing
+  // with it may or may not be decayed, which only shifts its weight by a fraction of the interval
+  private void decay() {
+    if (halfLife <= 0) {
+      return;
+    }
+    long now = Clock.TICKER.getEpochTime();
+    long last = lastDecay;
+    long elapsed = now - last;
+    if (elapsed < decayInterval || !LAST_DECAY.compareAndSet(this, last, now)) {
+      return;
+    }
+
+    double factor = Math.pow(0.5, (double) elapsed / halfLife);
+    for (int i = 0; i < buckets.length(); i++) {
+      for (; ; ) {
+        long bits = buckets.get(i);
+        double count = Double.longBitsToDouble(bits);
+        if (count == 0.0
+            || buckets.compareAndSet(i, bits, Double.doubleToRawLongBits(count * factor))) {
+          break;
+        }
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "LatencySketch(relativeAccuracy="
+        + relativeAccuracy
+        + ", count="
+        + count()
+        + ", p50="
+        + quantile(0.5)
+        + ", p99="
+        + quantile(0.99)
+        + ")";
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.common.stats;
+
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Spreads inserts over a fixed number of independent estimators, picked by the calling thread, so
+ * that threads recording at the same time rarely touch the same estimator. Unlike {@link
+ * ConcurrentFrugalQuantile} no sample is dropped under contention. Every stripe sees a random share
+ * of the same stream and converges to the same quantile, so the estimation is the mean of the
+ * stripes that have received data.
+ */
+public class StripedQuantile implements Quantile {
+  private static final int DEFAULT_STRIPES =
+      Math.min(64, ceilingPowerOfTwo(Runtime.getRuntime().availableProcessors()));
+
+  private final Quantile[] stripes;
+  private final int mask;
+
+  public StripedQuantile(int stripes, Supplier<? extends Quantile> factory) {
+    Objects.requireNonNull(factory);
+    if (stripes <= 0) {
+      throw new IllegalArgumentException("stripes must be greater than 0, got " + stripes);
+    }
+    int size = ceilingPowerOfTwo(stripes);
+    this.stripes = new Quantile[size];
+    this.mask = size - 1;
+    for (int i = 0; i < size; i++) {
+      this.stripes[i] = factory.get();
+    }
+  }
+
+  public StripedQuantile(double quantile) {
+    this(DEFAULT_STRIPES, () -> new FrugalQuantile(quantile));
+  }
+
+  private static int ceilingPowerOfTwo(int value) {
+    return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+  }
+
+  private int index() {
+    long id = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+    return (int) (id >>> 32) & mask;
+  }
+
+  @Override
+  public double estimation() {
+    double sum = 0.0;
+    int count = 0;
+    for (Quantile stripe : stripes) {
+      double estimation = stripe.estimation();
+      if (estimation != 0.0) {
+        sum += estimation;
+        count++;
+      }
+    }
+    return count == 0 ? 0.0 : sum / count;
+  }
+
+  @Override
+  public void insert(double x) {
+    stripes[index()].insert(x);
+  }
+
+  @Override
+  public String toString() {
+    return "StripedQuantile(stripes=" + stripes.length + ", v=" + estimation() + ")";
+  }
+}
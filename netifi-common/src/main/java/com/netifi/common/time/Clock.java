@@ -30,5 +30,19 @@ public interface Clock {
     return TimeUnit.MILLISECONDS;
   }
 
+  /** Wall clock with millisecond resolution, for timestamps that are compared across hosts. */
   Clock DEFAULT = System::currentTimeMillis;
+
+  /**
+   * Monotonic clock with nanosecond resolution, for measuring elapsed time. It is not affected by
+   * adjustments of the wall clock, but its values are only meaningful within one JVM.
+   */
+  Clock MONOTONIC = MonotonicClock.INSTANCE;
+
+  /**
+   * Clock used to time requests and maintain statistics on the hot path. This is {@link #MONOTONIC}
+   * unless the {@value CoarseClock#TICK_PROPERTY} system property sets a tick in nanoseconds, in
+   * which case it is a {@link CoarseClock} over it, trading resolution for cheaper reads.
+   */
+  Clock TICKER = CoarseClock.ifConfigured(MONOTONIC);
 }
@@ -0,0 +1,84 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.common.time;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link Clock} that caches the time of another clock and refreshes it from a daemon thread every
+ * tick. Reading it is a volatile read instead of a call into the operating system, at the cost of
+ * a resolution of one tick. Useful when the time is read several times per request and requests are
+ * much longer than a tick.
+ */
+public final class CoarseClock implements Clock, AutoCloseable {
+  /** System property with the tick, in nanoseconds, of the coarse {@link Clock#TICKER}. */
+  public static final String TICK_PROPERTY = "netifi.clock.tickNanos";
+
+  private final Clock source;
+  private final long tickNanos;
+  private final Thread ticker;
+  private volatile long now;
+  private volatile boolean running;
+
+  public CoarseClock(Clock source, long tick, TimeUnit unit) {
+    this.source = Objects.requireNonNull(source);
+    this.tickNanos = unit.toNanos(tick);
+    if (tickNanos <= 0) {
+      throw new IllegalArgumentException("tick must be greater than 0, got " + tick + " " + unit);
+    }
+    this.now = source.getEpochTime();
+    this.running = true;
+    this.ticker = new Thread(this::run, "netifi-coarse-clock");
+    this.ticker.setDaemon(true);
+    this.ticker.start();
+  }
+
+  static Clock ifConfigured(Clock source) {
+    long tickNanos = Long.getLong(TICK_PROPERTY, 0L);
+    return tickNanos > 0 ? new CoarseClock(source, tickNanos, TimeUnit.NANOSECONDS) : source;
+  }
+
+  private void run() {
+    while (running) {
+      now = source.getEpochTime();
+      LockSupport.parkNanos(tickNanos);
+    }
+  }
+
+  @Override
+  public long getEpochTime() {
+    return now;
+  }
+
+  @Override
+  public TimeUnit unit() {
+    return source.unit();
+  }
+
+  /** Stops refreshing the time, the clock keeps returning the last value it read. */
+  @Override
+  public void close() {
+    running = false;
+    LockSupport.unpark(ticker);
+  }
+
+  @Override
+  public String toString() {
+    return "CoarseClock(source=" + source + ", tickNanos=" + tickNanos + ")";
+  }
+}
@@ -0,0 +1,40 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.common.time;
+
+import java.util.concurrent.TimeUnit;
+
+/** {@link Clock} backed by {@link System#nanoTime()}. */
+final class MonotonicClock implements Clock {
+  static final MonotonicClock INSTANCE = new MonotonicClock();
+
+  private MonotonicClock() {}
+
+  @Override
+  public long getEpochTime() {
+    return System.nanoTime();
+  }
+
+  @Override
+  public TimeUnit unit() {
+    return TimeUnit.NANOSECONDS;
+  }
+
+  @Override
+  public String toString() {
+    return "MonotonicClock";
+  }
+}
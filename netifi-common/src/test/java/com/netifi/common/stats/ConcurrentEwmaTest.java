@@ -0,0 +1,65 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.common.stats;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConcurrentEwmaTest {
+
+  @Test
+  public void testShouldMatchEwmaOnSingleThread() {
+    Ewma ewma = new Ewma(1, TimeUnit.MINUTES, 10.0);
+    ConcurrentEwma concurrentEwma = new ConcurrentEwma(1, TimeUnit.MINUTES, 10.0);
+    for (int i = 0; i < 1_000; i++) {
+      ewma.insert(i % 100);
+      concurrentEwma.insert(i % 100);
+    }
+
+    Assert.assertEquals(ewma.value(), concurrentEwma.value(), 1.0);
+  }
+
+  @Test
+  public void testShouldConvergeWithConcurrentWriters() throws Exception {
+    ConcurrentEwma ewma = new ConcurrentEwma(1, TimeUnit.MILLISECONDS, 0.0);
+    int threads = 4;
+    CountDownLatch latch = new CountDownLatch(threads);
+    for (int t = 0; t < threads; t++) {
+      new Thread(
+              () -> {
+                for (int i = 0; i < 100_000; i++) {
+                  ewma.insert(42.0);
+                }
+                latch.countDown();
+              })
+          .start();
+    }
+    latch.await();
+
+    Assert.assertEquals(42.0, ewma.value(), 0.001);
+  }
+
+  @Test
+  public void testShouldStartFromValueAfterReset() {
+    ConcurrentEwma ewma = new ConcurrentEwma(1, TimeUnit.SECONDS, 1.0);
+    ewma.insert(100.0);
+    ewma.reset(5.0);
+
+    Assert.assertEquals(5.0, ewma.value(), 0.0);
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.common.stats;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConcurrentFrugalQuantileTest {
+
+  @Test
+  public void testShouldConvergeLikeFrugalQuantile() {
+    ConcurrentFrugalQuantile quantile = new ConcurrentFrugalQuantile(0.8);
+    SplittableRandom random = new SplittableRandom(1);
+    for (int i = 0; i < 200_000; i++) {
+      quantile.insert(random.nextInt(1_000));
+    }
+
+    Assert.assertEquals(800.0, quantile.estimation(), 50.0);
+  }
+
+  @Test
+  public void testShouldConvergeWithConcurrentWriters() throws Exception {
+    ConcurrentFrugalQuantile quantile = new ConcurrentFrugalQuantile(0.5);
+    int threads = 4;
+    CountDownLatch latch = new CountDownLatch(threads);
+    for (int t = 0; t < threads; t++) {
+      long seed = t;
+      new Thread(
+              () -> {
+                SplittableRandom random = new SplittableRandom(seed);
+                for (int i = 0; i < 200_000; i++) {
+                  quantile.insert(random.nextInt(1_000));
+                }
+                latch.countDown();
+              })
+          .start();
+    }
+    latch.await();
+
+    Assert.assertEquals(500.0, quantile.estimation(), 50.0);
+  }
+
+  @Test
+  public void testMedianShouldFollowLatencyShiftInNanoseconds() {
+    ConcurrentMedian median = new ConcurrentMedian(1_000);
+    SplittableRandom random = new SplittableRandom(1);
+    for (int i = 0; i < 10_000; i++) {
+      median.insert(900_000 + random.nextInt(200_000));
+    }
+
+    // the latency doubles from ~1ms to ~2ms
+    for (int i = 0; i < 200; i++) {
+      median.insert(1_800_000 + random.nextInt(400_000));
+    }
+
+    Assert.assertEquals(2_000_000.0, median.estimation(), 200_000.0);
+  }
+
+  @Test
+  public void testShouldStartFromFirstValueAfterReset() {
+    ConcurrentFrugalQuantile quantile = new ConcurrentFrugalQuantile(0.5);
+    quantile.insert(100);
+    quantile.reset();
+    quantile.insert(42);
+
+    Assert.assertEquals(42.0, quantile.estimation(), 0.0);
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.common.stats;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencySketchTest {
+
+  @Test
+  public void testShouldEstimateQuantilesWithinRelativeAccuracy() {
+    LatencySketch sketch = new LatencySketch(0.99);
+    for (int i = 1; i <= 100_000; i++) {
+      sketch.insert(i);
+    }
+
+    assertRelative(50_000, sketch.quantile(0.5));
+    assertRelative(99_000, sketch.quantile(0.99));
+    assertRelative(99_900, sketch.quantile(0.999));
+    Assert.assertEquals(sketch.quantile(0.99), sketch.estimation(), 0.0);
+  }
+
+  @Test
+  public void testShouldMergeSketches() {
+    SplittableRandom random = new SplittableRandom(1);
+    LatencySketch fast = new LatencySketch();
+    LatencySketch slow = new LatencySketch();
+    for (int i = 0; i < 10_000; i++) {
+      fast.insert(100 + random.nextInt(100));
+      slow.insert(10_000 + random.nextInt(100));
+    }
+
+    fast.merge(slow);
+
+    Assert.assertEquals(20_000.0, fast.count(), 0.001);
+    assertRelative(150, fast.quantile(0.25));
+    assertRelative(10_050, fast.quantile(0.75));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testShouldNotMergeDifferentAccuracy() {
+    new LatencySketch().merge(new LatencySketch(0.5, 0.05, 1e9, 1, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testShouldForgetOldValues() throws Exception {
+    LatencySketch sketch = new LatencySketch(0.5, 0.02, 1e9, 10, TimeUnit.MILLISECONDS);
+    for (int i = 0; i < 1_000; i++) {
+      sketch.insert(100);
+    }
+    Thread.sleep(200);
+    for (int i = 0; i < 10; i++) {
+      sketch.insert(5_000);
+    }
+
+    assertRelative(5_000, sketch.quantile(0.5));
+  }
+
+  @Test
+  public void testShouldDecayIdleSketches() throws Exception {
+    LatencySketch sketch = new LatencySketch(0.5, 0.02, 1e9, 10, TimeUnit.MILLISECONDS);
+    for (int i = 0; i < 1_000; i++) {
+      sketch.insert(100);
+    }
+    Thread.sleep(100);
+
+    LatencySketch merged = new LatencySketch(0.5, 0.02, 1e9, 0, TimeUnit.SECONDS);
+    merged.merge(sketch);
+    Assert.assertTrue(sketch.count() < 100);
+    Assert.assertTrue(merged.count() < 100);
+  }
+
+  @Test
+  public void testShouldClampOutOfRangeValues() {
+    LatencySketch sketch = new LatencySketch(0.5, 0.02, 1_000, 0, TimeUnit.SECONDS);
+    Assert.assertEquals(0.0, sketch.quantile(0.5), 0.0);
+
+    sketch.insert(0.5);
+    sketch.insert(1_000_000);
+
+    Assert.assertEquals(0.0, sketch.quantile(0.0), 0.0);
+    assertRelative(1_000, sketch.quantile(1.0));
+  }
+
+  private static void assertRelative(double expected, double actual) {
+    Assert.assertEquals(expected, actual, expected * 0.02);
+  }
+}
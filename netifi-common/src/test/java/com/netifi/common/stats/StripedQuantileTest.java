@@ -0,0 +1,61 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.common.stats;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StripedQuantileTest {
+
+  @Test
+  public void testShouldConvergeWithConcurrentWriters() throws Exception {
+    StripedQuantile quantile = new StripedQuantile(0.8);
+    int threads = 4;
+    CountDownLatch latch = new CountDownLatch(threads);
+    for (int t = 0; t < threads; t++) {
+      long seed = t;
+      new Thread(
+              () -> {
+                SplittableRandom random = new SplittableRandom(seed);
+                for (int i = 0; i < 200_000; i++) {
+                  quantile.insert(random.nextInt(1_000));
+                }
+                latch.countDown();
+              })
+          .start();
+    }
+    latch.await();
+
+    Assert.assertEquals(800.0, quantile.estimation(), 50.0);
+  }
+
+  @Test
+  public void testShouldIgnoreEmptyStripes() {
+    StripedQuantile quantile = new StripedQuantile(16, ConcurrentMedian::new);
+    for (int i = 0; i < 10_000; i++) {
+      quantile.insert(250.0);
+    }
+
+    Assert.assertEquals(250.0, quantile.estimation(), 0.0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testShouldRejectNoStripes() {
+    new StripedQuantile(0, Median::new);
+  }
+}
@@ -0,0 +1,53 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.common.time;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CoarseClockTest {
+
+  @Test
+  public void testShouldAdvanceEveryTick() throws Exception {
+    try (CoarseClock clock = new CoarseClock(Clock.MONOTONIC, 1, TimeUnit.MILLISECONDS)) {
+      Assert.assertEquals(TimeUnit.NANOSECONDS, clock.unit());
+
+      long start = clock.getEpochTime();
+      Thread.sleep(100);
+      long elapsed = clock.getEpochTime() - start;
+
+      Assert.assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+  }
+
+  @Test
+  public void testShouldStopAfterClose() throws Exception {
+    CoarseClock clock = new CoarseClock(Clock.MONOTONIC, 1, TimeUnit.MILLISECONDS);
+    clock.close();
+    Thread.sleep(10);
+
+    long stopped = clock.getEpochTime();
+    Thread.sleep(50);
+
+    Assert.assertEquals(stopped, clock.getEpochTime());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testShouldRejectEmptyTick() {
+    new CoarseClock(Clock.MONOTONIC, 0, TimeUnit.MILLISECONDS);
+  }
+}
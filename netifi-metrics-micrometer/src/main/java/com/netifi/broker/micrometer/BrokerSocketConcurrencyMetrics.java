@@ -0,0 +1,57 @@
+/*
+ *    Copyright 2019 The Netifi Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netifi.broker.micrometer;
+
+import com.netifi.broker.rsocket.ConcurrencyLimitedBrokerSocket;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Publishes the current limit, the requests in flight and the rejected requests of a {@link
+ * ConcurrencyLimitedBrokerSocket}. Tag each socket with its destination group to tell them apart.
+ */
+public class BrokerSocketConcurrencyMetrics implements MeterBinder {
+  private final ConcurrencyLimitedBrokerSocket socket;
+  private final Iterable<Tag> tags;
+
+  public BrokerSocketConcurrencyMetrics(ConcurrencyLimitedBrokerSocket socket, Iterable<Tag> tags) {
+    this.socket = socket;
+    this.tags = tags;
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    Gauge.builder("netifi.client.concurrency.limit", socket, ConcurrencyLimitedBrokerSocket::limit)
+        .tags(tags)
+        .description("The number of requests that may currently be in flight")
+        .register(registry);
+
+    Gauge.builder(
+            "netifi.client.concurrency.inflight", socket, ConcurrencyLimitedBrokerSocket::inFlight)
+        .tags(tags)
+        .description("The number of requests in flight")
+        .register(registry);
+
+    FunctionCounter.builder(
+            "netifi.client.concurrency.rejected", socket, ConcurrencyLimitedBrokerSocket::rejected)
+        .tags(tags)
+        .description("The number of requests rejected because the limit was reached")
+        .register(registry);
+  }
+}